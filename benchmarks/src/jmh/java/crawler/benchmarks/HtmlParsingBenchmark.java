@@ -0,0 +1,58 @@
+package crawler.benchmarks;
+
+import crawler.utilities.HtmlPageScanner;
+import crawler.utilities.HtmlUtilities;
+import crawler.utilities.ScannedHtml;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title and links extraction over the corpus pages. The crawler calls scanned once per page,
+ * parsedTitle and parsedLinksAsText are the older per-purpose entry points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HtmlParsingBenchmark {
+    @Param({"small.html", "medium.html", "pathological.html"})
+    public String page;
+
+    private String htmlContent;
+    private char[] htmlChars;
+
+    @Setup
+    public void setUp() {
+        htmlContent = Corpus.page(page);
+        htmlChars = htmlContent.toCharArray();
+    }
+
+    @Benchmark
+    public String parsedTitle() {
+        return HtmlUtilities.parsedTitle(htmlContent);
+    }
+
+    @Benchmark
+    public Collection<String> parsedLinksAsText() {
+        return HtmlUtilities.parsedLinksAsText(htmlContent);
+    }
+
+    @Benchmark
+    public ScannedHtml scanned() {
+        return HtmlPageScanner.scanned(htmlContent);
+    }
+
+    /**
+     * What a depth-limited crawl does for the pages of the last level
+     */
+    @Benchmark
+    public boolean scannedUntilTitle() {
+        final HtmlPageScanner scanner = new HtmlPageScanner();
+        final int chunkSize = 8192;
+        for (int start = 0; start < htmlChars.length && !scanner.hasTitle(); start += chunkSize) {
+            scanner.feed(htmlChars, start, Math.min(chunkSize, htmlChars.length - start));
+        }
+        return scanner.hasTitle();
+    }
+}
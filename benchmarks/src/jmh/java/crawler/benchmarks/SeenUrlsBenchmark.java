@@ -0,0 +1,75 @@
+package crawler.benchmarks;
+
+import crawler.dedup.FingerprintSeenUrls;
+import crawler.dedup.SeenUrls;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedup of the urls discovered by a crawl. Every url is found twice, as links to the same pages are repeated.
+ * concurrentHashSet keeps whole url strings, like the set the crawler used to merge levels into.
+ * An operation fills a new set, so the score is urls per second including the growth of the set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SeenUrlsBenchmark {
+    private static final int URLS_NUMBER = 1 << 16;
+
+    @Param({"fingerprint", "fingerprintWithBloomFilter", "concurrentHashSet"})
+    public String implementation;
+
+    private String[] urls;
+
+    @Setup
+    public void setUp() {
+        urls = new String[URLS_NUMBER];
+        for (int i = 0; i < URLS_NUMBER; i++) {
+            final int id = i % (URLS_NUMBER / 2);
+            urls[i] = "https://host" + (id % 1000) + ".example.com/section/" + (id / 1000) + "/article-" + id + ".html";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS_NUMBER)
+    public long markSeen() {
+        final SeenUrls seenUrls = newSeenUrls();
+        for (String url : urls) {
+            seenUrls.markSeen(url);
+        }
+        return seenUrls.size();
+    }
+
+    private SeenUrls newSeenUrls() {
+        switch (implementation) {
+            case "fingerprint":
+                return new FingerprintSeenUrls(URLS_NUMBER / 2, false);
+            case "fingerprintWithBloomFilter":
+                return new FingerprintSeenUrls(URLS_NUMBER / 2, true);
+            default:
+                return new StringSeenUrls();
+        }
+    }
+
+    private static class StringSeenUrls implements SeenUrls {
+        private final Set<String> urls = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean markSeen(CharSequence url) {
+            return urls.add(url.toString());
+        }
+
+        @Override
+        public boolean isSeen(CharSequence url) {
+            return urls.contains(url.toString());
+        }
+
+        @Override
+        public long size() {
+            return urls.size();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package crawler.benchmarks;
+
+import crawler.utilities.HtmlUtilities;
+import crawler.utilities.UrlCanonicalizer;
+import crawler.utilities.UrlConverters;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the links of a page against the page url. Every operation resolves all links of the page,
+ * so the score is pages per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UrlResolutionBenchmark {
+    @Param({"small.html", "medium.html", "pathological.html"})
+    public String page;
+
+    private URL pageUrl;
+    private String pageUrlAsString;
+    private List<String> links;
+    private UrlCanonicalizer.Base canonicalBase;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        pageUrl = new URL("https://news.example.org/section/front/index.html");
+        pageUrlAsString = pageUrl.toExternalForm();
+        links = List.copyOf(HtmlUtilities.parsedLinksAsText(Corpus.page(page)));
+        canonicalBase = UrlCanonicalizer.DEFAULT.base(pageUrlAsString);
+    }
+
+    /**
+     * What the crawler does for every page: canonical strings, no urls
+     */
+    @Benchmark
+    public void canonicalized(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(UrlCanonicalizer.DEFAULT.resolved(canonicalBase, link));
+        }
+    }
+
+    @Benchmark
+    public void convertedToAbsoluteUrl(Blackhole blackhole) {
+        for (String link : links) {
+            try {
+                blackhole.consume(HtmlUtilities.convertedToAbsoluteUrl(link, pageUrl));
+            } catch (MalformedURLException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public void toURL(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(UrlConverters.toURL(link));
+        }
+    }
+
+    @Benchmark
+    public void relativeToAbsolute(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(UrlConverters.relativeToAbsolute(link, pageUrlAsString));
+        }
+    }
+
+    @Benchmark
+    public void withProtocol(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(UrlConverters.withProtocol(link));
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package crawler.loadtest;
+
+import crawler.ExtractedPage;
+import crawler.actions.CrawlExecutor;
+import crawler.actions.CrawlHtmlPages;
+import crawler.actions.CrawlMode;
+import crawler.actions.CrawlOptions;
+import crawler.actions.ThreadingMode;
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.dns.DnsCache;
+import crawler.fetching.HttpClientFetcher;
+import crawler.fetching.UrlConnectionFetcher;
+import crawler.frontier.ConcurrentQueueFrontier;
+import crawler.frontier.PriorityFrontier;
+import crawler.frontier.UrlScorer;
+import crawler.politeness.PolitenessPolicy;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Crawls a {@link SyntheticWeb} and reports throughput, fetch latency percentiles, peak heap and peak threads.
+ * Run with: gradle :benchmarks:loadTest --args="--pages 20000 --workers 64"
+ */
+public class LoadTest {
+    private static final String USAGE = String.join(
+            System.lineSeparator(),
+            "Synthetic web:",
+            "  --pages <number>              default 10000",
+            "  --fan-out <number>            links per page, default 10",
+            "  --page-size <bytes>           default 16384",
+            "  --latency-median <millis>     default 20",
+            "  --latency-p99 <millis>        default 200",
+            "  --error-rate <fraction>       default 0.01",
+            "  --hosts <number>              default 16",
+            "Crawler:",
+            "  --workers <number>            default 64",
+            "  --depth <number>              default 1000",
+            "  --mode level|continuous       default continuous",
+            "  --virtual-threads",
+            "  --http2",
+            "  --in-memory-frontier          keep every waiting url on the heap instead of spilling to disk",
+            "  --polite                      2 connections per host, no delay, no robots.txt",
+            "  --dns-cache                   resolve hosts in the background when urls enter the frontier",
+            "  --adaptive                    tune fetches in flight between 1 and --workers",
+            "  --best-first                  crawl the most linked urls first,",
+            "                                can't be combined with --in-memory-frontier",
+            "  --nodes <number>              split the crawl by host between that many crawler processes,",
+            "                                which take --workers, --depth, --virtual-threads and --http2");
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options;
+        try {
+            options = parsedOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        try (SyntheticWeb web = new SyntheticWeb(
+                intOption(options, "pages", 10_000),
+                intOption(options, "fan-out", 10),
+                intOption(options, "page-size", 16_384),
+                doubleOption(options, "latency-median", 20),
+                doubleOption(options, "latency-p99", 200),
+                doubleOption(options, "error-rate", 0.01),
+                intOption(options, "hosts", 16)).start()) {
+            if (intOption(options, "nodes", 1) > 1) {
+                new LoadTest().runCluster(web, options, intOption(options, "nodes", 1));
+            } else {
+                new LoadTest().run(web, options);
+            }
+        }
+    }
+
+    private void run(SyntheticWeb web, Map<String, String> options) {
+        final ThreadingMode threadingMode = options.containsKey("virtual-threads") ?
+                ThreadingMode.VIRTUAL :
+                ThreadingMode.PLATFORM;
+        final CrawlOptions crawlOptions = new CrawlOptions()
+                .withWorkersNumber(intOption(options, "workers", 64))
+                .withCrawlMode("level".equals(options.get("mode")) ?
+                                       CrawlMode.LEVEL_BY_LEVEL :
+                                       CrawlMode.CONTINUOUS_FRONTIER)
+                .withLevelTimeLimitInSeconds(Integer.MAX_VALUE)
+                .withPageFetcher(options.containsKey("http2") ? new HttpClientFetcher() : new UrlConnectionFetcher());
+        if (options.containsKey("in-memory-frontier")) {
+            crawlOptions.withFrontierFactory(ConcurrentQueueFrontier::new);
+        }
+        if (options.containsKey("best-first")) {
+            crawlOptions.withFrontierFactory(() -> new PriorityFrontier(UrlScorer.IN_LINKS));
+        }
+        if (options.containsKey("polite")) {
+            crawlOptions.withPolitenessPolicy(new PolitenessPolicy(2, 0, null));
+        }
+        final ConcurrencyLimiter concurrencyLimiter = options.containsKey("adaptive") ?
+                new ConcurrencyLimiter(1, Math.max(1, intOption(options, "workers", 64))) :
+                null;
+        crawlOptions.withConcurrencyLimiter(concurrencyLimiter);
+        final FetchLatencies latencies = new FetchLatencies();
+        final LongAdder bytesNumber = new LongAdder();
+        final Consumer<ExtractedPage> pagesConsumer = page -> {
+            latencies.add(page.fetchDurationInNanos);
+            bytesNumber.add(page.bytesNumber);
+        };
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        final int threadsNumberBefore = threads.getThreadCount();
+
+        try (CrawlExecutor crawlExecutor = new CrawlExecutor(threadingMode);
+             DnsCache dnsCache = options.containsKey("dns-cache") ? new DnsCache() : null;
+             HeapSampler heapSampler = new HeapSampler()) {
+            crawlOptions.withCrawlExecutor(crawlExecutor).withDnsCache(dnsCache);
+            final long startTime = System.nanoTime();
+            new CrawlHtmlPages(web.pageUrl(0), intOption(options, "depth", 1000), crawlOptions, pagesConsumer)
+                    .execute();
+            final double elapsedSeconds = (System.nanoTime() - startTime) * 1e-9;
+
+            final long peakHeapInBytes = heapSampler.peakUsedBytesNumber();
+            final long[] sortedLatencies = latencies.sorted();
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "web: %d pages, fan-out %d, %d bytes/page, latency median %.0f ms p99 %.0f ms, "
+                            + "error rate %.3f, %d hosts",
+                    web.pagesNumber, web.fanOut, web.pageSizeInBytes, web.medianLatencyInMillis,
+                    web.p99LatencyInMillis, web.errorRate, web.hostsNumber));
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "crawl: %d pages in %.2f s, %.1f pages/s, %.1f MB/s, %d requests, %d errors served",
+                    sortedLatencies.length, elapsedSeconds, sortedLatencies.length / elapsedSeconds,
+                    bytesNumber.sum() / elapsedSeconds / (1 << 20), web.requestsNumber(), web.errorsNumber()));
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "fetch latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms",
+                    percentileInMillis(sortedLatencies, 0.5), percentileInMillis(sortedLatencies, 0.9),
+                    percentileInMillis(sortedLatencies, 0.99), percentileInMillis(sortedLatencies, 0.999),
+                    percentileInMillis(sortedLatencies, 1)));
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "peak heap: %.1f MB, peak threads: %d (%d before the crawl, including the synthetic web)",
+                    peakHeapInBytes / (double) (1 << 20), threads.getPeakThreadCount(), threadsNumberBefore));
+            if (concurrencyLimiter != null) {
+                System.out.println("adaptive limit at the end: " + concurrencyLimiter.limit() + " fetches in flight");
+            }
+        }
+    }
+
+    /**
+     * Starts the headless crawler in several JVMs which split the hosts of the web between them.
+     * Only the synthetic web's side is measured: requests it served per second.
+     */
+    private void runCluster(SyntheticWeb web, Map<String, String> options, int nodesNumber)
+            throws IOException, InterruptedException {
+        final List<String> nodeAddresses = new ArrayList<>();
+        for (int i = 0; i < nodesNumber; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                nodeAddresses.add("127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        final String javaPath = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        final List<Process> processes = new ArrayList<>();
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < nodesNumber; i++) {
+            final List<String> command = new ArrayList<>(List.of(
+                    javaPath, "-cp", System.getProperty("java.class.path"), "crawler.Main",
+                    "--seed", web.pageUrl(0).toString(),
+                    "--cluster", String.join(",", nodeAddresses),
+                    "--node", String.valueOf(i),
+                    "--workers", String.valueOf(intOption(options, "workers", 64)),
+                    "--depth", String.valueOf(intOption(options, "depth", 1000)),
+                    "--stats-interval", "3600"));
+            for (String flag : List.of("virtual-threads", "http2")) {
+                if (options.containsKey(flag)) {
+                    command.add("--" + flag);
+                }
+            }
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (Process process : processes) {
+            process.waitFor();
+        }
+        final double elapsedSeconds = (System.nanoTime() - startTime) * 1e-9;
+        System.out.println(String.format(
+                Locale.ROOT,
+                "web: %d pages, fan-out %d, %d bytes/page, latency median %.0f ms p99 %.0f ms, "
+                        + "error rate %.3f, %d hosts",
+                web.pagesNumber, web.fanOut, web.pageSizeInBytes, web.medianLatencyInMillis,
+                web.p99LatencyInMillis, web.errorRate, web.hostsNumber));
+        System.out.println(String.format(
+                Locale.ROOT,
+                "cluster: %d nodes, %d requests in %.2f s (including JVM startup), %.1f requests/s, "
+                        + "%d errors served",
+                nodesNumber, web.requestsNumber(), elapsedSeconds, web.requestsNumber() / elapsedSeconds,
+                web.errorsNumber()));
+    }
+
+    private static double percentileInMillis(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.min(sortedValues.length - 1, Math.ceil(percentile * sortedValues.length) - 1);
+        return sortedValues[Math.max(0, index)] * 1e-6;
+    }
+
+    private static Map<String, String> parsedOptions(String[] args) {
+        final List<String> flags = List.of("virtual-threads", "http2", "in-memory-frontier", "polite", "dns-cache",
+                                           "adaptive", "best-first");
+//        Both choose the frontier of the crawl, --polite wraps whichever is chosen
+        final List<String> frontierFlags = List.of("in-memory-frontier", "best-first");
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            final String name = args[i].substring(2);
+            if (flags.contains(name)) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Option " + args[i] + " requires a value");
+            }
+        }
+        if (frontierFlags.stream().filter(options::containsKey).count() > 1) {
+            throw new IllegalArgumentException("Options --" + String.join(" and --", frontierFlags)
+                                                       + " can't be combined");
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    /**
+     * Samples the used heap, as the peaks of the memory pools are reached at different times
+     * and their sum overstates the peak. Short peaks between samples are missed
+     */
+    private static class HeapSampler implements AutoCloseable {
+        private static final long SAMPLING_PERIOD_IN_MILLIS = 10;
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakUsedBytesNumber = new AtomicLong();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        HeapSampler() {
+            scheduler.scheduleAtFixedRate(this::sample, 0, SAMPLING_PERIOD_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        long peakUsedBytesNumber() {
+            sample();
+            return peakUsedBytesNumber.get();
+        }
+
+        private void sample() {
+            peakUsedBytesNumber.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetch durations of all crawled pages, appended by many workers
+     */
+    private static class FetchLatencies {
+        private long[] latenciesInNanos = new long[1 << 16];
+        private int size = 0;
+
+        synchronized void add(long latencyInNanos) {
+            if (size == latenciesInNanos.length) {
+                latenciesInNanos = Arrays.copyOf(latenciesInNanos, latenciesInNanos.length * 2);
+            }
+            latenciesInNanos[size++] = latencyInNanos;
+        }
+
+        synchronized long[] sorted() {
+            final long[] sortedLatencies = Arrays.copyOf(latenciesInNanos, size);
+            Arrays.sort(sortedLatencies);
+            return sortedLatencies;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package crawler.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generated link graph served from loopback addresses. Page i lives on host 127.0.x.y number i % hostsNumber,
+ * links to page i + 1 (so every page is reachable from page 0) and to fanOut - 1 other pages chosen by a seeded
+ * random, so the graph is the same in every run.
+ * <p>
+ * Responses are delayed by a log-normal latency without holding a server thread, so the server doesn't limit
+ * the number of requests in flight.
+ */
+public class SyntheticWeb implements AutoCloseable {
+    private static final String PAGE_PATH = "/page/";
+
+    public final int pagesNumber;
+    public final int fanOut;
+    public final int pageSizeInBytes;
+    public final double medianLatencyInMillis;
+    public final double p99LatencyInMillis;
+    /**
+     * Fraction of requests answered with 500
+     */
+    public final double errorRate;
+    public final int hostsNumber;
+
+    private final double latencySigma;
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService handlerExecutor;
+    private final ScheduledExecutorService delayedResponses;
+    private final AtomicLong requestsNumber = new AtomicLong();
+    private final AtomicLong errorsNumber = new AtomicLong();
+    private int port;
+
+    public SyntheticWeb(int pagesNumber,
+                        int fanOut,
+                        int pageSizeInBytes,
+                        double medianLatencyInMillis,
+                        double p99LatencyInMillis,
+                        double errorRate,
+                        int hostsNumber) {
+        if (pagesNumber <= 0 || fanOut <= 0 || hostsNumber <= 0 || hostsNumber > 255 * 254) {
+            throw new IllegalArgumentException("Pages, fan-out and hosts must be positive, hosts at most " + 255 * 254);
+        }
+        this.pagesNumber = pagesNumber;
+        this.fanOut = fanOut;
+        this.pageSizeInBytes = pageSizeInBytes;
+        this.medianLatencyInMillis = medianLatencyInMillis;
+        this.p99LatencyInMillis = Math.max(p99LatencyInMillis, medianLatencyInMillis);
+        this.errorRate = errorRate;
+        this.hostsNumber = hostsNumber;
+//        z of the 99th percentile of the standard normal distribution
+        latencySigma = medianLatencyInMillis > 0 ?
+                Math.log(this.p99LatencyInMillis / medianLatencyInMillis) / 2.326 :
+                0;
+        handlerExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                                                       daemonThreads("synthetic-web"));
+        delayedResponses = Executors.newScheduledThreadPool(2, daemonThreads("synthetic-web-latency"));
+    }
+
+    /**
+     * Binds a server per host, all on the same port
+     */
+    public SyntheticWeb start() throws IOException {
+        for (int host = 0; host < hostsNumber; host++) {
+            final HttpServer server = HttpServer.create(new InetSocketAddress(hostAddress(host), port), 1024);
+            server.createContext("/", this::handle);
+            server.setExecutor(handlerExecutor);
+            server.start();
+            servers.add(server);
+            port = server.getAddress().getPort();
+        }
+        return this;
+    }
+
+    public URL pageUrl(int page) {
+        try {
+            return new URL("http", hostAddress(page % hostsNumber).getHostAddress(), port, PAGE_PATH + page);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long requestsNumber() {
+        return requestsNumber.get();
+    }
+
+    public long errorsNumber() {
+        return errorsNumber.get();
+    }
+
+    @Override
+    public void close() {
+        servers.forEach(server -> server.stop(0));
+        delayedResponses.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requestsNumber.incrementAndGet();
+        final String path = exchange.getRequestURI().getPath();
+        int page = -1;
+        if (path.startsWith(PAGE_PATH)) {
+            try {
+                page = Integer.parseInt(path.substring(PAGE_PATH.length()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        final int statusCode;
+        final byte[] body;
+        if (page < 0 || page >= pagesNumber) {
+            statusCode = 404;
+            body = new byte[0];
+        } else if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errorsNumber.incrementAndGet();
+            statusCode = 500;
+            body = new byte[0];
+        } else {
+            statusCode = 200;
+            body = pageHtml(page);
+        }
+        final long latencyInMicros = (long) (sampledLatencyInMillis() * 1000);
+        if (latencyInMicros > 0) {
+            delayedResponses.schedule(() -> respond(exchange, statusCode, body), latencyInMicros, TimeUnit.MICROSECONDS);
+        } else {
+            respond(exchange, statusCode, body);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, byte[] body) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+            out.write(body);
+        } catch (IOException ignored) {
+//            The crawler gave up on the request
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] pageHtml(int page) {
+        final StringBuilder html = new StringBuilder(pageSizeInBytes + 256);
+        html.append("<!DOCTYPE html><html><head><title>Synthetic page ").append(page).append("</title></head><body>\n");
+        final SplittableRandom random = new SplittableRandom(page);
+        for (int i = 0; i < fanOut; i++) {
+            final int target = i == 0 ? (page + 1) % pagesNumber : random.nextInt(pagesNumber);
+            final URL targetUrl = pageUrl(target);
+//            Links to the same host are relative, like on most sites
+            final String href = target % hostsNumber == page % hostsNumber ? String.valueOf(target) : targetUrl.toString();
+            html.append("<a href=\"").append(href).append("\">page ").append(target).append("</a>\n");
+        }
+        html.append("<p>");
+        while (html.length() < pageSizeInBytes - 20) {
+            html.append("lorem ipsum dolor sit amet ");
+        }
+        html.append("</p></body></html>");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private double sampledLatencyInMillis() {
+        if (medianLatencyInMillis <= 0) {
+            return 0;
+        }
+        return medianLatencyInMillis * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    private static InetAddress hostAddress(int host) {
+        try {
+            return InetAddress.getByAddress(new byte[]{127, 0, (byte) (host / 254), (byte) (host % 254 + 1)});
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        final AtomicLong threadsNumber = new AtomicLong();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadsNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
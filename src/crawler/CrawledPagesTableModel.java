@@ -0,0 +1,123 @@
+package crawler;
+
+import javax.swing.table.AbstractTableModel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only model of crawled pages. Cells are stored as UTF-8 bytes in large shared chunks with primitive
+ * offset arrays, so a row costs a few bytes more than its text and millions of rows fit in the heap.
+ * Strings are created only for the cells which are rendered. Like every Swing model, it's used on the EDT only,
+ * but a {@link #snapshot()} of it can be read from any thread.
+ */
+public class CrawledPagesTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final String[] COLUMN_NAMES = {MainFrame.TABLE_COLUMN_0, MainFrame.TABLE_COLUMN_1};
+
+    private byte[][] chunks = new byte[0][];
+    private int lastChunkSize = CHUNK_SIZE;
+    /**
+     * Chunk index in the high 32 bits, offset in the chunk in the low ones. Two cells per row
+     */
+    private long[] cellStarts = new long[2048];
+    private int[] cellLengths = new int[2048];
+    private int rowsNumber;
+
+    /**
+     * Appends rows without notifying listeners, {@link #fireAppended(int)} is called once for the whole batch.
+     */
+    public void append(String url, String title) {
+        if ((rowsNumber + 1) * COLUMN_NAMES.length > cellStarts.length) {
+            cellStarts = Arrays.copyOf(cellStarts, cellStarts.length * 2);
+            cellLengths = Arrays.copyOf(cellLengths, cellLengths.length * 2);
+        }
+        store(rowsNumber * COLUMN_NAMES.length, url);
+        store(rowsNumber * COLUMN_NAMES.length + 1, title);
+        rowsNumber++;
+    }
+
+    public void fireAppended(int appendedRowsNumber) {
+        if (appendedRowsNumber > 0) {
+            fireTableRowsInserted(rowsNumber - appendedRowsNumber, rowsNumber - 1);
+        }
+    }
+
+    public void clear() {
+        chunks = new byte[0][];
+        lastChunkSize = CHUNK_SIZE;
+        cellStarts = new long[2048];
+        cellLengths = new int[2048];
+        rowsNumber = 0;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Stored cells are never changed, appends write after them and {@link #clear()} creates new arrays,
+     * so the snapshot only keeps the current arrays. It's taken on the EDT.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(chunks, cellStarts, cellLengths, rowsNumber);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowsNumber;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public String getValueAt(int rowIndex, int columnIndex) {
+        return cellValue(chunks, cellStarts, cellLengths, rowIndex, columnIndex);
+    }
+
+    private static String cellValue(byte[][] chunks, long[] cellStarts, int[] cellLengths, int rowIndex, int columnIndex) {
+        final int cellIndex = rowIndex * COLUMN_NAMES.length + columnIndex;
+        final long start = cellStarts[cellIndex];
+        return new String(chunks[(int) (start >>> 32)], (int) start, cellLengths[cellIndex], StandardCharsets.UTF_8);
+    }
+
+    private void store(int cellIndex, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (lastChunkSize + bytes.length > CHUNK_SIZE) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = new byte[Math.max(CHUNK_SIZE, bytes.length)];
+            lastChunkSize = 0;
+        }
+        final int chunkIndex = chunks.length - 1;
+        System.arraycopy(bytes, 0, chunks[chunkIndex], lastChunkSize, bytes.length);
+        cellStarts[cellIndex] = ((long) chunkIndex << 32) | lastChunkSize;
+        cellLengths[cellIndex] = bytes.length;
+        lastChunkSize += bytes.length;
+    }
+
+    /**
+     * Rows of the model at the moment the snapshot was taken
+     */
+    public static class Snapshot {
+        private final byte[][] chunks;
+        private final long[] cellStarts;
+        private final int[] cellLengths;
+        public final int rowsNumber;
+
+        private Snapshot(byte[][] chunks, long[] cellStarts, int[] cellLengths, int rowsNumber) {
+            this.chunks = chunks;
+            this.cellStarts = cellStarts;
+            this.cellLengths = cellLengths;
+            this.rowsNumber = rowsNumber;
+        }
+
+        public String valueAt(int rowIndex, int columnIndex) {
+            return cellValue(chunks, cellStarts, cellLengths, rowIndex, columnIndex);
+        }
+    }
+}
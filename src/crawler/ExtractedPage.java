@@ -0,0 +1,51 @@
+package crawler;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * What a crawl reports about one page. The page body itself is kept only if it was asked for,
+ * so workers don't hold bodies longer than it takes to scan them.
+ */
+public class ExtractedPage {
+    public final URL url;
+    public final String title;
+    /**
+     * Canonical absolute urls of the page links, see {@link crawler.utilities.UrlCanonicalizer}.
+     * Empty for pages whose links weren't needed to go deeper and for near duplicates
+     */
+    public final List<String> links;
+    /**
+     * True if the text of the page is nearly the same as the text of a page crawled before,
+     * see {@link crawler.actions.CrawlOptions#withNearDuplicateIndex}
+     */
+    public final boolean isNearDuplicate;
+    public final int statusCode;
+    public final long bytesNumber;
+    public final long fetchStartTimeInMillis;
+    public final long fetchDurationInNanos;
+    /**
+     * Null unless keeping raw bodies is enabled
+     */
+    public final String rawBody;
+
+    public ExtractedPage(URL url,
+                         String title,
+                         List<String> links,
+                         boolean isNearDuplicate,
+                         int statusCode,
+                         long bytesNumber,
+                         long fetchStartTimeInMillis,
+                         long fetchDurationInNanos,
+                         String rawBody) {
+        this.url = url;
+        this.title = title;
+        this.links = links;
+        this.isNearDuplicate = isNearDuplicate;
+        this.statusCode = statusCode;
+        this.bytesNumber = bytesNumber;
+        this.fetchStartTimeInMillis = fetchStartTimeInMillis;
+        this.fetchDurationInNanos = fetchDurationInNanos;
+        this.rawBody = rawBody;
+    }
+}
@@ -1,8 +1,16 @@
 package crawler;
 
+import crawler.headless.HeadlessCrawler;
 
 public class Main {
+    /**
+     * Starts the GUI. With arguments the crawl is run without the GUI, see {@link crawler.headless.HeadlessConfiguration}
+     */
     public static void main(String[] args) {
-        new MainFrame();
+        if (args.length > 0) {
+            HeadlessCrawler.main(args);
+        } else {
+            new MainFrame();
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,24 +1,50 @@
 package crawler;
 
-import crawler.actions.Action;
 import crawler.actions.CrawlHtmlPages;
+import crawler.actions.CrawlExecutor;
+import crawler.actions.CrawlMode;
+import crawler.actions.CrawlOptions;
 import crawler.actions.InterruptibleAction;
+import crawler.actions.ThreadingMode;
+import crawler.checkpoint.CrawlJournal;
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.dedup.NearDuplicateIndex;
+import crawler.dns.DnsCache;
+import crawler.export.ExportFormat;
+import crawler.export.ExportSink;
+import crawler.fetching.HttpClientFetcher;
+import crawler.fetching.PageFetcher;
+import crawler.fetching.UrlConnectionFetcher;
+import crawler.frontier.PriorityFrontier;
+import crawler.frontier.SpillingFrontier;
+import crawler.frontier.UrlScorer;
+import crawler.metrics.CrawlMetrics;
+import crawler.politeness.PolitenessPolicy;
+import crawler.politeness.RobotsTxtCache;
 import crawler.statemachine.guistatemachine.Event;
 import crawler.statemachine.guistatemachine.State;
 import crawler.statemachine.guistatemachine.StateMachine;
 import crawler.statemachine.guistatemachine.Transition;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Vector;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import static crawler.statemachine.guistatemachine.Event.*;
@@ -31,19 +57,36 @@ import static crawler.utilities.WebCommunicationUtils.fetchedHtmlContent;
 public class MainFrame extends JFrame {
     public static final String TABLE_COLUMN_0 = "URL";
     public static final String TABLE_COLUMN_1 = "Title";
+    /**
+     * How often crawled pages are moved to the table
+     */
+    private static final int TABLE_REFRESH_PERIOD_IN_MILLIS = 33;
+    private static final int MAX_ROWS_PER_REFRESH = 50_000;
+    private static final int STATS_REFRESH_PERIOD_IN_MILLIS = 500;
+    private static final Path JOURNAL_DIRECTORY = Paths.get("crawl-journal");
     public final JLabel timeLimitUnitLabel;
     public final JLabel labelForTimeLimit;
     public final JTextField timeLimitTextField;
     public final JCheckBox timeLimitCheckBox;
     public final JTextField workersTextField;
     public final JLabel labelForWorkersTextField;
-    public final DefaultTableModel tableModel;
+    public final JCheckBox continuousFrontierCheckBox;
+    public final JCheckBox virtualThreadsCheckBox;
+    public final JCheckBox http2CheckBox;
+    public final JCheckBox politeCheckBox;
+    public final JCheckBox resumeCheckBox;
+    public final JCheckBox skipNearDuplicatesCheckBox;
+    public final JCheckBox adaptiveCheckBox;
+    public final JCheckBox bestFirstCheckBox;
+    public final CrawledPagesTableModel tableModel;
     public final JTable titlesTable;
     public final JScrollPane tableScrollPane;
     public final JTextField urlTextField;
     public final JLabel titleLabel;
     public final JTextField exportUrlTextField;
     public final JButton exportButton;
+    public final JCheckBox streamExportCheckBox;
+    public final JComboBox<ExportFormat> exportFormatComboBox;
     public final JTextField depthTextField;
     public final JCheckBox depthCheckBox;
     public final JLabel parsedPagesNumberLabel;
@@ -52,10 +95,44 @@ public class MainFrame extends JFrame {
     public final JLabel labelForExportUrlTextField;
     public final JToggleButton runButton;
     public final JLabel labelForParsedPagesNumberLabel;
+    public final JTextArea statsTextArea;
 
     private final StateMachine<State, Event> guiStateMachine;
+    private final Map<ThreadingMode, CrawlExecutor> sessionExecutors = new EnumMap<>(ThreadingMode.class);
+    /**
+     * Crawls run here, so the state machine can handle events while crawling. One crawl at a time
+     */
+    private final ExecutorService crawlRunner = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "crawl");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Exports are written here, neither on the EDT nor on the thread of the state machine
+     */
+    private final ExecutorService exportRunner = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "export");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final PageFetcher urlConnectionFetcher = new UrlConnectionFetcher();
+    private PageFetcher httpClientFetcher;
+    private final DnsCache dnsCache = new DnsCache();
+    /**
+     * Metrics of the current crawl, they're reset when a crawl starts
+     */
+    private final CrawlMetrics crawlMetrics = new CrawlMetrics().registeredAsMBean("gui");
 
     private CrawlConsumer currentCrawlConsumer;
+    /**
+     * Null unless the pages of the current crawl are exported while crawling
+     */
+    private ExportSink currentExportSink;
+    /**
+     * Null unless the crawl is resumable, or if the journal couldn't be opened
+     */
+    private CrawlJournal currentJournal;
+    private volatile PageRowsHandoff currentPageRowsHandoff = new PageRowsHandoff();
     private InterruptibleAction crawlingAction;
 
     public MainFrame() {
@@ -71,20 +148,61 @@ public class MainFrame extends JFrame {
                                onStartCrawling(parameters);
 
 //                               Set and execute crawling action
-                               crawlingAction = new CrawlHtmlPages(parameters.url,
-                                                                   parameters.workersNumber,
-                                                                   parameters.crawlDepth,
-                                                                   currentCrawlConsumer
+                               crawlingAction = new CrawlHtmlPages(
+                                       parameters.url,
+                                       parameters.crawlDepth,
+                                       new CrawlOptions()
+                                               .withWorkersNumber(parameters.workersNumber)
+                                               .withCrawlMode(parameters.crawlMode)
+                                               .withTimeLimitInSeconds(parameters.timeLimitInSeconds)
+                                               .withCrawlExecutor(sessionExecutor(parameters.threadingMode))
+                                               .withPageFetcher(parameters.useHttpClient ?
+                                                                        sessionHttpClientFetcher() :
+                                                                        urlConnectionFetcher)
+                                               .withPolitenessPolicy(parameters.isPolite ?
+                                                                             new PolitenessPolicy(
+                                                                                     2, 250, new RobotsTxtCache("web-crawler")) :
+                                                                             null)
+                                               .withMetrics(crawlMetrics)
+                                               .withDnsCache(dnsCache)
+                                               .withJournal(currentJournal)
+                                               .withNearDuplicateIndex(parameters.skipsNearDuplicates ?
+                                                                               new NearDuplicateIndex() :
+                                                                               null)
+                                               .withFrontierFactory(parameters.isBestFirst ?
+                                                                            () -> new PriorityFrontier(
+                                                                                    UrlScorer.IN_LINKS) :
+                                                                            SpillingFrontier::new)
+                                               .withConcurrencyLimiter(parameters.isAdaptive ?
+                                                                               new ConcurrencyLimiter(
+                                                                                       1, Math.max(1, parameters.workersNumber)) :
+                                                                               null),
+                                       currentExportSink == null ?
+                                               currentCrawlConsumer :
+                                               currentCrawlConsumer.andThen(currentExportSink)
                                )
+                                       .then(closeExportSinkAction(currentExportSink))
+                                       .then(closeJournalAction(currentJournal))
                                        .then(finishDisplayingAction());
-                               crawlingAction.execute();
+                               final InterruptibleAction crawl = crawlingAction;
+                               crawlRunner.execute(() -> {
+                                   try {
+                                       crawl.execute();
+                                   } catch (UncheckedIOException e) {
+                                       e.printStackTrace();
+                                       onFailedToStartCrawling();
+                                   }
+                               });
                            } else {
                                onFailedToStartCrawling();
                            }
                        },
 
                        new Transition<>(WAITING_TO_START_CRAWLING, FAILED_T0_START_CRAWLING, INIT),
-                       () -> System.out.println("Failed to start crawling"),
+                       () -> {
+                           System.out.println("Failed to start crawling");
+                           resetRunButton();
+                       },
 
                        new Transition<>(WAITING_TO_START_CRAWLING, CRAWLING_STARTED, DISPLAYING_CRAWLED_PAGES),
                        this::afterCrawlingStarted,
@@ -99,7 +217,8 @@ public class MainFrame extends JFrame {
                        this::onExportCrawledData,
 
                        new Transition<>(DISPLAYING_CRAWLED_PAGES, EXPORT_CRAWLED_DATA, DISPLAYING_CRAWLED_PAGES),
-                       this::onExportCrawledData));
+                       this::onExportCrawledData),
+                Set.of(EXPORT_CRAWLED_DATA));
         labelForUrlTextField = added(new JLabel("Start URL:"));
         urlTextField = added(configured(new JTextField(55), c -> c.setName("UrlTextField")));
         runButton = added(configured(new JToggleButton("Run"), c -> {
@@ -114,7 +233,15 @@ public class MainFrame extends JFrame {
             });
         }));
         labelForWorkersTextField = added(new JLabel("Workers number:"));
-        workersTextField = added(new JTextField(60));
+        workersTextField = added(new JTextField(40));
+        continuousFrontierCheckBox = added(configured(new JCheckBox("Continuous frontier"), c -> c.setSelected(true)));
+        virtualThreadsCheckBox = added(new JCheckBox("Virtual threads"));
+        http2CheckBox = added(new JCheckBox("HTTP/2 client"));
+        politeCheckBox = added(new JCheckBox("Polite (robots.txt, per-host limits)"));
+        resumeCheckBox = added(new JCheckBox("Resumable (continues the previous resumable crawl)"));
+        skipNearDuplicatesCheckBox = added(new JCheckBox("Skip near-duplicate pages"));
+        adaptiveCheckBox = added(new JCheckBox("Adapt to the server (workers number is the maximum)"));
+        bestFirstCheckBox = added(new JCheckBox("Most linked pages first"));
         labelForDepthTextField = added(new JLabel("Maximum depth:"));
         depthTextField = added(configured(new JTextField(50), c -> c.setName("DepthTextField")));
         depthCheckBox = added(configured(new JCheckBox("Enabled"), c -> {
@@ -134,16 +261,25 @@ public class MainFrame extends JFrame {
             c.setName("ExportButton");
             c.addActionListener(e -> guiStateMachine.handleEvent(EXPORT_CRAWLED_DATA));
         }));
-        tableModel = configured(new DefaultTableModel(),
-                                tableModel1 -> tableModel1.setColumnIdentifiers(new String[]{TABLE_COLUMN_0, TABLE_COLUMN_1}));
+        streamExportCheckBox = added(new JCheckBox("Export while crawling"));
+        exportFormatComboBox = added(new JComboBox<>(ExportFormat.values()));
+        tableModel = new CrawledPagesTableModel();
         titleLabel = added(configured(new JLabel(), l -> setName("TitleLabel")));
         titlesTable = configured(new JTable(tableModel), table -> {
             table.setEnabled(false);
             table.setName("TitlesTable");
         });
         tableScrollPane = added(new JScrollPane(titlesTable));
+        statsTextArea = configured(new JTextArea(10, 80), c -> {
+            c.setName("StatsTextArea");
+            c.setEditable(false);
+            c.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        });
+        added(new JScrollPane(statsTextArea));
 
         configureFrame();
+        new Timer(TABLE_REFRESH_PERIOD_IN_MILLIS, e -> refreshCrawledPages()).start();
+        new Timer(STATS_REFRESH_PERIOD_IN_MILLIS, e -> statsTextArea.setText(crawlMetrics.formatted())).start();
     }
 
     private void onFailedToStartCrawling() {
@@ -168,6 +304,51 @@ public class MainFrame extends JFrame {
         };
     }
 
+    /**
+     * Runs after the crawl has ended or was interrupted, so the export contains every page passed to the sink.
+     */
+    private InterruptibleAction closeExportSinkAction(ExportSink exportSink) {
+        return new InterruptibleAction() {
+            @Override
+            public void execute() {
+                if (exportSink != null) {
+                    try {
+                        exportSink.close();
+                        System.out.println("Exported pages: " + exportSink.exportedPagesNumber());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void interrupt() {
+            }
+        };
+    }
+
+    /**
+     * The journal files stay after the crawl, so it can be resumed by the next one
+     */
+    private InterruptibleAction closeJournalAction(CrawlJournal journal) {
+        return new InterruptibleAction() {
+            @Override
+            public void execute() {
+                if (journal != null) {
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void interrupt() {
+            }
+        };
+    }
+
     private Optional<CrawlParameters> collectedCrawlParameters() {
         URL url = null;
         int workersNumber = parseIntOrDefault(workersTextField.getText(), 10);
@@ -184,32 +365,91 @@ public class MainFrame extends JFrame {
             System.out.println("Incorrect url entered");
             e.printStackTrace();
         }
+        final CrawlMode crawlMode = continuousFrontierCheckBox.isSelected() ?
+                CrawlMode.CONTINUOUS_FRONTIER :
+                CrawlMode.LEVEL_BY_LEVEL;
+        final ThreadingMode threadingMode = virtualThreadsCheckBox.isSelected() ?
+                ThreadingMode.VIRTUAL :
+                ThreadingMode.PLATFORM;
         if (url != null && crawlDepth >= 0 && workersNumber >= 0 && timeLimit >= 0) {
-            return Optional.of(new CrawlParameters(url, workersNumber, crawlDepth, timeLimit));
+            return Optional.of(new CrawlParameters(url, workersNumber, crawlDepth, timeLimit, crawlMode, threadingMode,
+                                                   http2CheckBox.isSelected(), politeCheckBox.isSelected(),
+                                                   skipNearDuplicatesCheckBox.isSelected(),
+                                                   adaptiveCheckBox.isSelected(), bestFirstCheckBox.isSelected()));
         }
         return Optional.empty();
     }
 
+    /**
+     * Executors live as long as the frame, so threads are reused by all crawls of the session.
+     */
+    private synchronized CrawlExecutor sessionExecutor(ThreadingMode threadingMode) {
+        return sessionExecutors.computeIfAbsent(threadingMode, CrawlExecutor::new);
+    }
+
+    /**
+     * The client keeps connections alive between crawls, so it's created once.
+     */
+    private synchronized PageFetcher sessionHttpClientFetcher() {
+        if (httpClientFetcher == null) {
+            httpClientFetcher = new HttpClientFetcher();
+        }
+        return httpClientFetcher;
+    }
+
+    /**
+     * Runs on the EDT. Moves the pages which were crawled since the previous refresh to the table in one batch.
+     */
+    private void refreshCrawledPages() {
+        final PageRowsHandoff pageRowsHandoff = currentPageRowsHandoff;
+        tableModel.fireAppended(pageRowsHandoff.drainedTo(tableModel, MAX_ROWS_PER_REFRESH));
+        final String crawledPagesNumber = String.valueOf(pageRowsHandoff.crawledPagesNumber());
+        if (!crawledPagesNumber.equals(parsedPagesNumberLabel.getText())) {
+            parsedPagesNumberLabel.setText(crawledPagesNumber);
+        }
+    }
+
     private synchronized void afterCrawlingStarted() {
         runButton.setEnabled(true);
     }
 
-    private synchronized void onExportCrawledData() {
-        String exportUrl = exportUrlTextField.getText();
+    /**
+     * The rows which are still in the handoff are moved to the table and the table is copied on the EDT,
+     * then the file is written by the export thread
+     */
+    private void onExportCrawledData() {
+        exportRunner.execute(() -> {
+            final String[] exportUrl = new String[1];
+            final CrawledPagesTableModel.Snapshot[] rows = new CrawledPagesTableModel.Snapshot[1];
+            try {
+                SwingUtilities.invokeAndWait(() -> {
+                    final PageRowsHandoff pageRowsHandoff = currentPageRowsHandoff;
+                    tableModel.fireAppended(pageRowsHandoff.drainedTo(tableModel, Integer.MAX_VALUE));
+                    exportUrl[0] = exportUrlTextField.getText();
+                    rows[0] = tableModel.snapshot();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (InvocationTargetException e) {
+                e.printStackTrace();
+                return;
+            }
+            exported(rows[0], exportUrl[0]);
+        });
+    }
 
+    private static void exported(CrawledPagesTableModel.Snapshot rows, String exportUrl) {
         try (var bw = new BufferedWriter(new FileWriter(exportUrl))) {
-            final var iterator = tableModel.getDataVector().iterator();
-            while (iterator.hasNext()) {
-                var vector = iterator.next();
-                final String odd = vector.elementAt(0).toString();
-                final String even = vector.elementAt(1).toString();
-                bw.write(odd);
+            for (int i = 0; i < rows.rowsNumber; i++) {
+                bw.write(rows.valueAt(i, 0));
                 bw.newLine();
-                bw.write(even);
-                if (iterator.hasNext())
+                bw.write(rows.valueAt(i, 1));
+                if (i < rows.rowsNumber - 1)
                     bw.newLine();
             }
-        } catch (IOException ignored) {
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -217,6 +457,11 @@ public class MainFrame extends JFrame {
         runButton.setSelected(false);
     }
 
+    private synchronized void resetRunButton() {
+        runButton.setSelected(false);
+        runButton.setEnabled(true);
+    }
+
     private synchronized void onInterruptCrawling() {
         deselectButton();
         currentCrawlConsumer.stopConsuming();
@@ -225,7 +470,7 @@ public class MainFrame extends JFrame {
 
     private void configureFrame() {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(750, 800);
+        setSize(750, 980);
         setLocationRelativeTo(null);
         setTitle("Web crawler");
         setLayout(new FlowLayout(FlowLayout.LEFT));
@@ -243,24 +488,47 @@ public class MainFrame extends JFrame {
     }
 
     private void onStartCrawling(CrawlParameters crawlParameters) {
-        try {
-//                Update title
-            this.titleLabel.setText(parsedTitle(fetchedHtmlContent(establishedCustomConnection(crawlParameters.url))));
-        } catch (IOException e) {
-            e.printStackTrace();
+//            Update title. It's fetched before the crawl, not by the state machine, as it can take a while
+        crawlRunner.execute(() -> {
+            try {
+                final String title = parsedTitle(fetchedHtmlContent(establishedCustomConnection(crawlParameters.url)));
+                SwingUtilities.invokeLater(() -> titleLabel.setText(title));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+//            Reset the table and the number of parsed pages on the EDT. Rows of the new crawl wait in their own handoff
+        final PageRowsHandoff pageRowsHandoff = new PageRowsHandoff();
+        crawlMetrics.reset();
+        SwingUtilities.invokeLater(() -> {
+            tableModel.clear();
+            currentPageRowsHandoff = pageRowsHandoff;
+            parsedPagesNumberLabel.setText("0");
+        });
+
+//            Open the export file if pages are exported while crawling
+        currentExportSink = null;
+        if (streamExportCheckBox.isSelected()) {
+            try {
+                currentExportSink = new ExportSink(Paths.get(exportUrlTextField.getText()),
+                                                   (ExportFormat) exportFormatComboBox.getSelectedItem());
+            } catch (IOException | InvalidPathException e) {
+                e.printStackTrace();
+            }
         }
-//            Update tableModel
-        this.tableModel.setDataVector(new Vector<>(), new Vector<>(java.util.List.of(
-                MainFrame.TABLE_COLUMN_0, MainFrame.TABLE_COLUMN_1)));
 
-//            Reset number of parsed pages
-        parsedPagesNumberLabel.setText("0");
+//            Log the progress of a resumable crawl, so it can be resumed if it's interrupted
+        currentJournal = null;
+        if (resumeCheckBox.isSelected()) {
+            try {
+                currentJournal = new CrawlJournal(JOURNAL_DIRECTORY, true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
 //            Set consumer
-        currentCrawlConsumer = new CrawlConsumer(
-                guiStateMachine, tableModel, parsedPagesNumberLabel,
-                new TimeChecker(crawlParameters.timeLimitInSeconds,
-                                () -> guiStateMachine.handleEvent(INTERRUPT_CRAWLING)));
+        currentCrawlConsumer = new CrawlConsumer(guiStateMachine, pageRowsHandoff);
     }
 }
 
@@ -269,54 +537,29 @@ interface Configuration<T> {
     void executeFor(T component);
 }
 
-class UrlWithPageTitle {
-    public final URL url;
-    public final String pageTitle;
-
-    public UrlWithPageTitle(URL url, String pageTitle) {
-        this.url = url;
-        this.pageTitle = pageTitle;
-    }
-}
-
-class CrawlConsumer implements Consumer<HtmlContentWithUrl> {
+/**
+ * Called by crawler workers. It never touches Swing components: pages are handed off to the EDT.
+ */
+class CrawlConsumer implements Consumer<ExtractedPage> {
     private final StateMachine<State, Event> guiStateMachine;
-    private final DefaultTableModel tableModel;
-    private final JLabel parsedPagesNumberLabel;
-    private final TimeChecker timeChecker;
+    private final PageRowsHandoff pageRowsHandoff;
+    private final AtomicBoolean noResultsWereDisplayedYet = new AtomicBoolean(true);
 
-    private boolean stopConsuming = false;
-    private boolean noResultsWereDisplayedYet = true;
+    private volatile boolean stopConsuming = false;
 
-    public CrawlConsumer(StateMachine<State, Event> guiStateMachine,
-                         DefaultTableModel tableModel,
-                         JLabel parsedPagesNumberLabel,
-                         TimeChecker timeChecker) {
+    public CrawlConsumer(StateMachine<State, Event> guiStateMachine, PageRowsHandoff pageRowsHandoff) {
         this.guiStateMachine = guiStateMachine;
-        this.tableModel = tableModel;
-        this.parsedPagesNumberLabel = parsedPagesNumberLabel;
-        this.timeChecker = timeChecker;
+        this.pageRowsHandoff = pageRowsHandoff;
     }
 
     @Override
-    public void accept(HtmlContentWithUrl htmlContentWithUrl) {
-        synchronized (this) {
-            if (!stopConsuming) {
-//                Update gui
-                var urlWithPageTitle = new UrlWithPageTitle(htmlContentWithUrl.url,
-                                                            parsedTitle(htmlContentWithUrl.htmlContent));
-                tableModel.addRow(new Vector<>(java.util.List.of(
-                        urlWithPageTitle.url.toString(), urlWithPageTitle.pageTitle)));
-                final String numberAsString = parsedPagesNumberLabel.getText();
-                final int crawledPagesNumber = parseIntOrDefault(numberAsString, 0) + 1;
-                parsedPagesNumberLabel.setText(String.valueOf(crawledPagesNumber));
-//                Send CRAWLING_STARTED if it wasn't sent
-                if (noResultsWereDisplayedYet) {
-                    noResultsWereDisplayedYet = false;
-                    guiStateMachine.handleEvent(CRAWLING_STARTED);
-                }
-//                Run timer which will interrupt crawling if the time is up
-                timeChecker.execute();
+    public void accept(ExtractedPage extractedPage) {
+        if (!stopConsuming) {
+//            Update gui
+            pageRowsHandoff.add(new UrlWithPageTitle(extractedPage.url, extractedPage.title));
+//            Send CRAWLING_STARTED if it wasn't sent
+            if (noResultsWereDisplayedYet.compareAndSet(true, false)) {
+                guiStateMachine.handleEvent(CRAWLING_STARTED);
             }
         }
     }
@@ -331,33 +574,35 @@ class CrawlParameters {
     final int workersNumber;
     final int crawlDepth;
     final int timeLimitInSeconds;
-
-    public CrawlParameters(URL url, int workersNumber, int crawlDepth, int timeLimitInSeconds) {
+    final CrawlMode crawlMode;
+    final ThreadingMode threadingMode;
+    final boolean useHttpClient;
+    final boolean isPolite;
+    final boolean skipsNearDuplicates;
+    final boolean isAdaptive;
+    final boolean isBestFirst;
+
+    public CrawlParameters(URL url,
+                           int workersNumber,
+                           int crawlDepth,
+                           int timeLimitInSeconds,
+                           CrawlMode crawlMode,
+                           ThreadingMode threadingMode,
+                           boolean useHttpClient,
+                           boolean isPolite,
+                           boolean skipsNearDuplicates,
+                           boolean isAdaptive,
+                           boolean isBestFirst) {
         this.url = url;
         this.workersNumber = workersNumber;
         this.crawlDepth = crawlDepth;
         this.timeLimitInSeconds = timeLimitInSeconds;
-    }
-}
-
-class TimeChecker implements Action {
-    private final int timeLimitInSeconds;
-    private final Action onTimeIsUp;
-    long startTime = -1;
-
-
-    public TimeChecker(int timeLimitInSeconds, Action onTimeIsUp) {
-        this.timeLimitInSeconds = timeLimitInSeconds;
-        this.onTimeIsUp = onTimeIsUp;
-    }
-
-    @Override
-    public void execute() {
-        if (startTime == -1) {
-            startTime = System.currentTimeMillis();
-        }
-        if ((System.currentTimeMillis() - startTime) * 0.001 > timeLimitInSeconds) {
-            onTimeIsUp.execute();
-        }
+        this.crawlMode = crawlMode;
+        this.threadingMode = threadingMode;
+        this.useHttpClient = useHttpClient;
+        this.isPolite = isPolite;
+        this.skipsNearDuplicates = skipsNearDuplicates;
+        this.isAdaptive = isAdaptive;
+        this.isBestFirst = isBestFirst;
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package crawler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free handoff of crawled pages from workers to the EDT. Workers only enqueue, the EDT drains
+ * the queue in batches at a fixed rate. One handoff is used for one crawl.
+ */
+public class PageRowsHandoff {
+    private final Queue<UrlWithPageTitle> rows = new ConcurrentLinkedQueue<>();
+    private final AtomicLong crawledPagesNumber = new AtomicLong();
+
+    public void add(UrlWithPageTitle row) {
+        rows.offer(row);
+        crawledPagesNumber.incrementAndGet();
+    }
+
+    public long crawledPagesNumber() {
+        return crawledPagesNumber.get();
+    }
+
+    /**
+     * @return number of appended rows
+     */
+    public int drainedTo(CrawledPagesTableModel tableModel, int maxRowsNumber) {
+        int drainedRowsNumber = 0;
+        UrlWithPageTitle row;
+        while (drainedRowsNumber < maxRowsNumber && (row = rows.poll()) != null) {
+            tableModel.append(row.url.toString(), row.pageTitle);
+            drainedRowsNumber++;
+        }
+        return drainedRowsNumber;
+    }
+}
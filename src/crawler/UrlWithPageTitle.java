@@ -0,0 +1,13 @@
+package crawler;
+
+import java.net.URL;
+
+class UrlWithPageTitle {
+    public final URL url;
+    public final String pageTitle;
+
+    public UrlWithPageTitle(URL url, String pageTitle) {
+        this.url = url;
+        this.pageTitle = pageTitle;
+    }
+}
@@ -0,0 +1,73 @@
+package crawler.actions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor which is meant to live for the whole session and to be shared between crawls.
+ * Threads aren't limited by the executor itself: callers decide how many actions run at the same time.
+ */
+public class CrawlExecutor implements AutoCloseable {
+    private final ExecutorService executorService;
+    private final ThreadingMode threadingMode;
+
+    public CrawlExecutor(ThreadingMode requestedThreadingMode) {
+        ExecutorService virtualThreadsExecutor = null;
+        if (requestedThreadingMode == ThreadingMode.VIRTUAL) {
+            virtualThreadsExecutor = newVirtualThreadPerTaskExecutor();
+            if (virtualThreadsExecutor == null) {
+                System.out.println("Virtual threads are not available, platform threads are used instead");
+            }
+        }
+        if (virtualThreadsExecutor != null) {
+            this.executorService = virtualThreadsExecutor;
+            this.threadingMode = ThreadingMode.VIRTUAL;
+        } else {
+            this.executorService = Executors.newCachedThreadPool(new CrawlThreadFactory());
+            this.threadingMode = ThreadingMode.PLATFORM;
+        }
+    }
+
+    public Future<?> submit(Action action) {
+        return executorService.submit(action::execute);
+    }
+
+    /**
+     * @return mode which is actually used. It can differ from the requested one
+     */
+    public ThreadingMode threadingMode() {
+        return threadingMode;
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so that the project still compiles and runs on older JDKs.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ignored) {
+        }
+        return null;
+    }
+
+    private static class CrawlThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadsNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "crawl-worker-" + threadsNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
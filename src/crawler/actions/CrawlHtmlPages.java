@@ -1,113 +1,699 @@
 package crawler.actions;
 
-import crawler.HtmlContentWithUrl;
-import crawler.utilities.HtmlUtilities;
-import crawler.utilities.WebCommunicationUtils;
+import crawler.ExtractedPage;
+import crawler.checkpoint.CrawlJournal;
+import crawler.cluster.CrawlShard;
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.concurrency.LimitedFetcher;
+import crawler.dedup.NearDuplicateIndex;
+import crawler.dedup.SeenUrls;
+import crawler.dns.DnsCache;
+import crawler.fetching.FetchTimings;
+import crawler.fetching.FetchedPage;
+import crawler.fetching.PageFetcher;
+import crawler.frontier.DnsPrefetchingFrontier;
+import crawler.frontier.Frontier;
+import crawler.frontier.UrlWithDepth;
+import crawler.metrics.CrawlMetrics;
+import crawler.metrics.CrawlStage;
+import crawler.politeness.PoliteFrontier;
+import crawler.politeness.PolitenessPolicy;
+import crawler.utilities.HtmlPageScanner;
+import crawler.utilities.ScannedHtml;
+import crawler.utilities.UrlCanonicalizer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
-import static crawler.utilities.WebCommunicationUtils.establishedCustomConnection;
-
 /**
  * Action that fetches pages and sends them to the consumer.
  * It can be interrupted during the fetching process. It won't go deeper level after an interruption.
+ * In the {@link CrawlMode#CONTINUOUS_FRONTIER} mode workers stop taking new urls after an interruption.
+ * An interruption aborts the fetches in flight, and the crawl returns within the stop timeout even if some
+ * workers are still stuck. The time limit of the crawl interrupts it the same way.
  */
 public class CrawlHtmlPages implements InterruptibleAction {
-    private final URL seedUrl;
-    private final Integer workersNumber;
+    private static final long IDLE_WORKER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int LEVEL_BATCH_SIZE = 10_000;
+    private static final long DNS_TIMEOUT_IN_MILLIS = 10_000;
+    private static final long WORKER_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<URL> seedUrls;
     private final Integer crawlDepth;
-    private final Consumer<HtmlContentWithUrl> newlyFetchedPageConsumer;
-    private boolean shouldStopCrawling = false;
+    private final CrawlOptions options;
+    private final Consumer<ExtractedPage> newlyFetchedPageConsumer;
+    private final CrawlMetrics metrics;
+    private final PageFetcher pageFetcher;
+    /**
+     * Null if the progress isn't logged
+     */
+    private final CrawlJournal journal;
+    /**
+     * Null unless the crawl is split between processes
+     */
+    private final CrawlShard shard;
+    private volatile boolean shouldStopCrawling = false;
+    private final AtomicBoolean isInterrupted = new AtomicBoolean(false);
+    /**
+     * When the workers which are still running after an interruption are given up, in {@link System#nanoTime()}
+     */
+    private volatile long stopDeadline;
+    /**
+     * Batch of the level which is crawled right now, null in the {@link CrawlMode#CONTINUOUS_FRONTIER} mode
+     */
+    private volatile InParallel currentBatch;
+    /**
+     * Frontiers which are crawled right now, null before and after crawling
+     */
+    private volatile Frontier currentFrontier;
+    private volatile Frontier nextLevelFrontier;
 
     public CrawlHtmlPages(URL seedUrl,
                           Integer workersNumber,
                           Integer crawlDepth,
-                          Consumer<HtmlContentWithUrl> newlyFetchedPageConsumer) {
-        this.seedUrl = seedUrl;
-        this.workersNumber = workersNumber;
+                          Consumer<ExtractedPage> newlyFetchedPageConsumer) {
+        this(seedUrl, crawlDepth, new CrawlOptions().withWorkersNumber(workersNumber), newlyFetchedPageConsumer);
+    }
+
+    public CrawlHtmlPages(URL seedUrl,
+                          Integer crawlDepth,
+                          CrawlOptions options,
+                          Consumer<ExtractedPage> newlyFetchedPageConsumer) {
+        this(List.of(seedUrl), crawlDepth, options, newlyFetchedPageConsumer);
+    }
+
+    /**
+     * Crawls from all the seeds at once. Seeds are the urls of depth 0
+     */
+    public CrawlHtmlPages(List<URL> seedUrls,
+                          Integer crawlDepth,
+                          CrawlOptions options,
+                          Consumer<ExtractedPage> newlyFetchedPageConsumer) {
+        this.seedUrls = List.copyOf(seedUrls);
         this.crawlDepth = crawlDepth;
+        this.options = options;
         this.newlyFetchedPageConsumer = newlyFetchedPageConsumer;
+        this.metrics = options.metrics();
+        this.pageFetcher = options.concurrencyLimiter() != null ?
+                new LimitedFetcher(options.pageFetcher(), options.concurrencyLimiter()) :
+                options.pageFetcher();
+        this.journal = options.journal();
+        this.shard = options.shard();
     }
 
     @Override
     public void execute() {
+        metrics.trackFrontierSize(this::frontierSize);
+        final ConcurrencyLimiter concurrencyLimiter = options.concurrencyLimiter();
+        metrics.trackConcurrencyLimit(concurrencyLimiter != null ? concurrencyLimiter::limit : () -> 0);
+        final CrawlExecutor crawlExecutor = options.crawlExecutor() != null ?
+                options.crawlExecutor() :
+                new CrawlExecutor(ThreadingMode.PLATFORM);
+        final ScheduledExecutorService deadlineScheduler = options.timeLimitInSeconds() != Integer.MAX_VALUE ?
+                scheduledDeadline(options.timeLimitInSeconds()) :
+                null;
         try {
-            final Set<String> handledUrls = new HashSet<>();
+            if (options.crawlMode() == CrawlMode.CONTINUOUS_FRONTIER || shard != null) {
+                crawlContinuously(crawlExecutor);
+            } else {
+                crawlLevelByLevel(crawlExecutor);
+            }
+        } finally {
+            if (deadlineScheduler != null) {
+                deadlineScheduler.shutdownNow();
+            }
+            if (crawlExecutor != options.crawlExecutor()) {
+                crawlExecutor.close();
+            }
+        }
+    }
 
-            handledUrls.add(seedUrl.toString());
-            Collection<URL> seedUrls = List.of(seedUrl);
-            List<List<URL>> collectedListsOfUrlsInCurrentIteration = Collections.synchronizedList(new ArrayList<>());
+    private ScheduledExecutorService scheduledDeadline(int timeLimitInSeconds) {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "crawl-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.schedule(() -> {
+            System.out.println("Time limit reached, stopping the crawl");
+            interrupt();
+        }, timeLimitInSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
 
-            for (int i = 0; i < crawlDepth && !shouldStopCrawling && seedUrls.size() > 0; i++) {
-//                Configure actions
+    /**
+     * Number of urls waiting to be crawled. It's approximate while crawling
+     */
+    public int frontierSize() {
+        final Frontier frontier = currentFrontier;
+        final Frontier nextLevel = nextLevelFrontier;
+        return (frontier != null ? frontier.size() : 0) + (nextLevel != null ? nextLevel.size() : 0);
+    }
+
+    private void crawlLevelByLevel(CrawlExecutor crawlExecutor) {
+        final SeenUrls seenUrls = options.seenUrlsFactory().get();
+        Frontier currentLevelUrls = newFrontier();
+        currentFrontier = currentLevelUrls;
+        try {
+            final List<UrlWithDepth> recoveredUrls = recoveredUrls(seenUrls);
+//            A resumed crawl continues from the shallowest level which isn't crawled yet
+            int firstDepth = 0;
+            if (recoveredUrls == null) {
+                offeredSeeds(seenUrls, currentLevelUrls);
+            } else if (!recoveredUrls.isEmpty()) {
+                firstDepth = recoveredUrls.stream().mapToInt(urlWithDepth -> urlWithDepth.depth).min().getAsInt();
+                offerRecoveredUrls(recoveredUrls, firstDepth, currentLevelUrls);
+            }
+
+            for (int i = firstDepth; i < crawlDepth && !shouldStopCrawling && currentLevelUrls.size() > 0; i++) {
                 final boolean isLastDepthLevel = (i == crawlDepth - 1);
-                final List<Action> configuredActions =
-                        seedUrls.stream()
-                                .map(url -> (Action) () -> {
-                                    String htmlContent = fetchedHtmlContent(url);
-                                    if (!htmlContent.isBlank())
-                                        newlyFetchedPageConsumer.accept(new HtmlContentWithUrl(htmlContent, url));
-                                    if (!isLastDepthLevel) {
-                                        collectedListsOfUrlsInCurrentIteration.add(
-                                                parsedAbsoluteUrls(url, htmlContent));
-                                    }
-                                })
-                                .collect(toList(seedUrls.size()));
-//                Execute actions
-                new InParallel(configuredActions,
-                               workersNumber,
-                               10,
-                               TimeUnit.SECONDS)
-                        .execute();
-//                Update seed urls and handled urls
-                final Map<String, URL> newSeedUrlsMap = collectedListsOfUrlsInCurrentIteration
-                        .stream()
-                        .flatMap(Collection::stream)
-                        .filter(url -> !handledUrls.contains(url.toString()))
-                        .collect(Collectors.toMap(URL::toString, url -> url, (url, url2) -> url));
-                seedUrls = newSeedUrlsMap.values();
-                handledUrls.addAll(newSeedUrlsMap.keySet());
+                final Frontier nextLevelUrls = newFrontier();
+                nextLevelFrontier = nextLevelUrls;
+                if (recoveredUrls != null) {
+                    offerRecoveredUrls(recoveredUrls, i + 1, nextLevelUrls);
+                }
+//                Execute the level in batches, so only one batch of actions is kept in memory.
+//                A polite frontier hands out nothing while all its hosts wait, then the next batch is waited for
+                while (!shouldStopCrawling && currentLevelUrls.size() > 0) {
+                    final List<Action> configuredActions = nextBatchOfActions(
+                            currentLevelUrls, isLastDepthLevel, seenUrls, nextLevelUrls);
+                    if (configuredActions.isEmpty()) {
+                        LockSupport.parkNanos(IDLE_WORKER_PARK_NANOS);
+                        continue;
+                    }
+                    final InParallel batch = new InParallel(configuredActions,
+                                                            crawlExecutor,
+                                                            options.workersNumber(),
+                                                            options.levelTimeLimitInSeconds(),
+                                                            TimeUnit.SECONDS,
+                                                            options.timedOutActionsConsumer());
+                    currentBatch = batch;
+//                    An interruption could have missed the batch
+                    if (shouldStopCrawling) {
+                        batch.stopWithin(Math.max(0, stopDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                    batch.execute();
+                    currentBatch = null;
+                }
+//                Fetches which started after the interruption weren't aborted yet
+                if (shouldStopCrawling) {
+                    pageFetcher.abortInFlight();
+                }
+                if (nextLevelUrls instanceof PoliteFrontier) {
+                    ((PoliteFrontier) nextLevelUrls).continuedFrom((PoliteFrontier) currentLevelUrls);
+                }
+                currentLevelUrls.close();
+                currentLevelUrls = nextLevelUrls;
+                currentFrontier = nextLevelUrls;
+                nextLevelFrontier = null;
             }
         } catch (NumberFormatException e) {
             e.printStackTrace();
+        } finally {
+            currentLevelUrls.close();
+            currentFrontier = null;
+            nextLevelFrontier = null;
         }
     }
 
-    private List<URL> parsedAbsoluteUrls(URL originalAbsoluteUrl, String htmlContent) {
-        return HtmlUtilities.parsedLinksAsText(htmlContent)
-                .stream()
-                .map(urlAsString -> {
+    private List<Action> nextBatchOfActions(Frontier currentLevelUrls,
+                                            boolean isLastDepthLevel,
+                                            SeenUrls seenUrls,
+                                            Frontier nextLevelUrls) {
+        final List<Action> actions = new ArrayList<>(Math.min(LEVEL_BATCH_SIZE, currentLevelUrls.size()));
+        UrlWithDepth urlWithDepth;
+        while (actions.size() < LEVEL_BATCH_SIZE && (urlWithDepth = currentLevelUrls.poll()) != null) {
+            final UrlWithDepth polledUrl = urlWithDepth;
+            final URL url = urlWithDepth.url;
+            final int nextDepth = urlWithDepth.depth + 1;
+            actions.add(new Action() {
+                @Override
+                public void execute() {
+//                    Actions of the batch which haven't started yet are skipped after an interruption
+                    if (shouldStopCrawling) {
+                        return;
+                    }
                     try {
-                        return HtmlUtilities.convertedToAbsoluteUrl(urlAsString, originalAbsoluteUrl);
-                    } catch (MalformedURLException ignored) {
+                        crawled();
+                    } finally {
+                        currentLevelUrls.completed(polledUrl);
+                    }
+                }
+
+                private void crawled() {
+                    final ExtractedPage page = crawledPage(url, !isLastDepthLevel);
+                    if (page != null) {
+//                        Dedup right here, so that nothing has to be merged after the level
+                        final long dedupStartTime = System.nanoTime();
+                        for (String link : page.links) {
+                            final URL newUrl;
+                            if (!seenUrls.markSeen(link)) {
+                                nextLevelUrls.rediscovered(link);
+                            } else if ((newUrl = parsedUrl(link)) != null) {
+                                offer(nextLevelUrls, new UrlWithDepth(newUrl, nextDepth));
+                            }
+                        }
+                        metrics.record(CrawlStage.DEDUP, System.nanoTime() - dedupStartTime);
+                    }
+//                    A page which wasn't crawled, or whose links were dropped because of an interruption,
+//                    is crawled again on resume
+                    if (journal != null && page != null && !shouldStopCrawling) {
+                        journal.completed(url.toString());
                     }
-                    return null;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+                }
+
+                @Override
+                public String toString() {
+                    return "FetchPage " + url;
+                }
+            });
+        }
+        return actions;
+    }
+
+    private void crawlContinuously(CrawlExecutor crawlExecutor) {
+        if (crawlDepth <= 0) {
+            return;
+        }
+        final SeenUrls seenUrls = options.seenUrlsFactory().get();
+        final List<UrlWithDepth> recoveredUrls = recoveredUrls(seenUrls);
+        final Frontier frontier = newFrontier();
+        if (recoveredUrls != null) {
+            recoveredUrls.forEach(frontier::offer);
+        }
+//        Number of urls which are either waiting in the frontier or being crawled right now
+        final AtomicInteger pendingUrlsNumber = new AtomicInteger(recoveredUrls != null ?
+                                                                          recoveredUrls.size() :
+                                                                          offeredSeeds(seenUrls, frontier));
+        currentFrontier = frontier;
+        if (shard != null) {
+            shard.start(shardListener(frontier, seenUrls, pendingUrlsNumber));
+        }
+
+        final int workersNumber = Math.max(1, options.workersNumber());
+        final List<Future<?>> workers = new ArrayList<>(workersNumber);
+        for (int i = 0; i < workersNumber; i++) {
+            workers.add(crawlExecutor.submit(() -> crawlFromFrontier(frontier, seenUrls, pendingUrlsNumber)));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                awaitedWorker(worker);
+            }
+        } catch (TimeoutException e) {
+//            Fetches which started after the interruption weren't aborted yet
+            pageFetcher.abortInFlight();
+            final long stuckWorkersNumber = workers.stream().filter(worker -> !worker.isDone()).count();
+            workers.forEach(worker -> worker.cancel(true));
+            System.out.println("Stopped without waiting for " + stuckWorkersNumber + " workers");
+        } catch (InterruptedException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            e.printStackTrace();
+        } finally {
+            frontier.close();
+            currentFrontier = null;
+        }
     }
 
-    private String fetchedHtmlContent(URL url) {
-        final URLConnection connection;
+    /**
+     * Waits in slices, so the stop timeout is noticed while waiting
+     *
+     * @throws TimeoutException if the crawl was interrupted and the worker is still running after the stop timeout
+     */
+    private void awaitedWorker(Future<?> worker) throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            try {
+                worker.get(WORKER_WAIT_SLICE_NANOS, TimeUnit.NANOSECONDS);
+                return;
+            } catch (TimeoutException e) {
+                if (shouldStopCrawling && isInterrupted.get() && stopDeadline - System.nanoTime() <= 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Frontier of the options, which prefetches the hosts of offered urls and applies the politeness policy
+     */
+    private Frontier newFrontier() {
+        final Frontier frontier = options.dnsCache() != null ?
+                new DnsPrefetchingFrontier(options.frontierFactory().get(), options.dnsCache()) :
+                options.frontierFactory().get();
+        return options.politenessPolicy() != null ?
+                new PoliteFrontier(frontier, options.politenessPolicy(), options.concurrencyLimiter()) :
+                frontier;
+    }
+
+    /**
+     * @return number of distinct seeds which were offered
+     */
+    private int offeredSeeds(SeenUrls seenUrls, Frontier frontier) {
+        int offeredSeedsNumber = 0;
+        for (URL seedUrl : seedUrls) {
+            final String seenKey = seenKey(seedUrl.toString());
+//            Every process gets all seeds and crawls the ones of its shard
+            if ((shard == null || shard.owns(seenKey)) && seenUrls.markSeen(seenKey)) {
+                offer(frontier, new UrlWithDepth(seedUrl, 0));
+                offeredSeedsNumber++;
+            }
+        }
+        return offeredSeedsNumber;
+    }
+
+    /**
+     * Logs the url before it's offered, so it's in the journal before its page can be logged as crawled
+     */
+    private void offer(Frontier frontier, UrlWithDepth urlWithDepth) {
+        if (journal != null) {
+            journal.added(urlWithDepth.url.toString(), urlWithDepth.depth);
+        }
+        frontier.offer(urlWithDepth);
+    }
+
+    /**
+     * Marks the urls of the previous crawl in the journal as seen. Without a previous crawl, starts the journal
+     * of this one.
+     *
+     * @return urls which weren't crawled by the previous crawl, null if there's no previous crawl to resume
+     * @throws UncheckedIOException if the journal can't be read or written, or it's of a crawl with other
+     *                              seed urls or depth. The crawl isn't started then, as the urls read so far
+     *                              are already marked as seen
+     */
+    private List<UrlWithDepth> recoveredUrls(SeenUrls seenUrls) {
+        if (journal == null) {
+            return null;
+        }
+        final List<String> journaledSeedUrls = seedUrls.stream().map(URL::toString).collect(Collectors.toList());
+        if (!journal.hasPreviousCrawl()) {
+            try {
+                journal.started(journaledSeedUrls, crawlDepth);
+            } catch (IOException e) {
+                throw new UncheckedIOException("The journal couldn't be written", e);
+            }
+            return null;
+        }
+        final List<UrlWithDepth> pendingUrls = new ArrayList<>();
         try {
-            connection = establishedCustomConnection(url);
-            return WebCommunicationUtils.fetchedHtmlContent(connection);
+            journal.recovered(journaledSeedUrls, crawlDepth, new CrawlJournal.RecoveryListener() {
+                @Override
+                public void crawled(String url) {
+                    seenUrls.markSeen(seenKey(url));
+                }
+
+                @Override
+                public void pending(String url, int depth) {
+                    final URL parsedUrl;
+                    if (seenUrls.markSeen(seenKey(url)) && depth < crawlDepth && (parsedUrl = parsedUrl(url)) != null) {
+                        pendingUrls.add(new UrlWithDepth(parsedUrl, depth));
+                    }
+                }
+            });
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("The previous crawl couldn't be resumed: " + e.getMessage(), e);
         }
-        return "";
+        System.out.println("Resuming the crawl with " + pendingUrls.size() + " pending urls, "
+                                   + seenUrls.size() + " seen urls");
+        return pendingUrls;
     }
 
-    private static <T> Collector<T, ?, List<T>> toList(int size) {
-        return Collectors.toCollection(() -> new ArrayList<>(size));
+    private static void offerRecoveredUrls(List<UrlWithDepth> recoveredUrls, int depth, Frontier frontier) {
+        for (UrlWithDepth recoveredUrl : recoveredUrls) {
+            if (recoveredUrl.depth == depth) {
+                frontier.offer(recoveredUrl);
+            }
+        }
+    }
+
+    private String seenKey(String url) {
+        final String canonicalUrl = options.urlCanonicalizer().canonicalized(url);
+        return canonicalUrl != null ? canonicalUrl : url;
+    }
+
+    /**
+     * Urls forwarded by other processes are deduplicated and added to the frontier like the local ones
+     */
+    private CrawlShard.Listener shardListener(Frontier frontier,
+                                              SeenUrls seenUrls,
+                                              AtomicInteger pendingUrlsNumber) {
+        return new CrawlShard.Listener() {
+            @Override
+            public void received(String url, int depth) {
+                final URL parsedUrl;
+                if (!shouldStopCrawling
+                        && depth < crawlDepth
+                        && seenUrls.markSeen(url)
+                        && (parsedUrl = parsedUrl(url)) != null) {
+                    pendingUrlsNumber.incrementAndGet();
+                    offer(frontier, new UrlWithDepth(parsedUrl, depth));
+                }
+            }
+
+            @Override
+            public boolean isIdle() {
+                return shouldStopCrawling || pendingUrlsNumber.get() == 0;
+            }
+
+            @Override
+            public void stopRequested() {
+                shouldStopCrawling = true;
+            }
+        };
+    }
+
+    /**
+     * Worker loop. Takes urls from the frontier until it's empty and no other worker can add anything to it.
+     * With a shard it also waits until every process is done, as other processes can still forward urls.
+     */
+    private void crawlFromFrontier(Frontier frontier, SeenUrls seenUrls, AtomicInteger pendingUrlsNumber) {
+        while (!shouldStopCrawling) {
+            final UrlWithDepth next = frontier.poll();
+            if (next == null) {
+                if (pendingUrlsNumber.get() == 0 && (shard == null || shard.isCrawlFinished())) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_WORKER_PARK_NANOS);
+                continue;
+            }
+            try {
+                final int nextDepth = next.depth + 1;
+                final ExtractedPage page = crawledPage(next.url, nextDepth < crawlDepth);
+                if (page != null && !shouldStopCrawling) {
+                    final long dedupStartTime = System.nanoTime();
+                    for (String link : page.links) {
+                        final URL url;
+                        if (!seenUrls.markSeen(link)) {
+                            frontier.rediscovered(link);
+                            continue;
+                        }
+                        if (shard != null && !shard.owns(link)) {
+                            shard.forward(link, nextDepth);
+                        } else if ((url = parsedUrl(link)) != null) {
+                            pendingUrlsNumber.incrementAndGet();
+                            offer(frontier, new UrlWithDepth(url, nextDepth));
+                        }
+                    }
+                    metrics.record(CrawlStage.DEDUP, System.nanoTime() - dedupStartTime);
+                }
+//                A page which wasn't crawled, or whose links were dropped because of an interruption,
+//                is crawled again on resume
+                if (journal != null && page != null && !shouldStopCrawling) {
+                    journal.completed(next.url.toString());
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                frontier.completed(next);
+                pendingUrlsNumber.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Fetches and scans the page, sends it to the consumer if it's a non-empty html page.
+     * Links are resolved only if they're needed and the page isn't a near duplicate of a crawled page.
+     *
+     * @return null if the page isn't allowed by robots.txt, its host can't be resolved or it couldn't be fetched
+     */
+    private ExtractedPage crawledPage(URL url, boolean areLinksNeeded) {
+        if (!isAllowedByRobotsTxt(url) || !isHostResolved(url) || shouldStopCrawling) {
+            return null;
+        }
+        final long fetchStartTimeInMillis = System.currentTimeMillis();
+        final long fetchStartTime = System.nanoTime();
+        final FetchedPage page = fetchedPage(url, areLinksNeeded);
+        if (page == null) {
+            return null;
+        }
+        final long fetchDurationInNanos = System.nanoTime() - fetchStartTime;
+        recordFetchTimings(page);
+        final ScannedHtml scannedHtml = scannedHtml(page);
+        final boolean isNearDuplicate = areLinksNeeded && isNearDuplicate(scannedHtml);
+//        Stages which are skipped aren't recorded, so their zero durations don't skew the latencies
+        List<String> links = List.of();
+        if (areLinksNeeded && !isNearDuplicate) {
+            final long resolutionStartTime = System.nanoTime();
+            links = canonicalLinks(url, scannedHtml);
+            metrics.record(CrawlStage.URL_RESOLUTION, System.nanoTime() - resolutionStartTime);
+        }
+        final ExtractedPage extractedPage = new ExtractedPage(
+                url,
+                scannedHtml.title,
+                links,
+                isNearDuplicate,
+                page.statusCode,
+                page.bytesNumber,
+                fetchStartTimeInMillis,
+                fetchDurationInNanos,
+                options.keepsRawBodies() ? page.htmlContent : null);
+        metrics.recordPage(page.bytesNumber);
+        if (FetchedPage.isHtml(page.contentType) && page.bytesNumber > 0) {
+            final long deliveryStartTime = System.nanoTime();
+            newlyFetchedPageConsumer.accept(extractedPage);
+            metrics.record(CrawlStage.CONSUMER_DELIVERY, System.nanoTime() - deliveryStartTime);
+        }
+        return extractedPage;
+    }
+
+    /**
+     * Scanning is done while downloading, so it's subtracted from the download
+     */
+    private void recordFetchTimings(FetchedPage page) {
+        final FetchTimings timings = page.timings;
+        metrics.record(CrawlStage.CONNECT, timings.connectDurationInNanos);
+        metrics.record(CrawlStage.TIME_TO_FIRST_BYTE, timings.timeToFirstByteInNanos);
+        if (timings.downloadDurationInNanos >= 0 && timings.scanDurationInNanos >= 0) {
+            metrics.record(CrawlStage.DOWNLOAD, timings.downloadDurationInNanos - timings.scanDurationInNanos);
+        } else {
+            metrics.record(CrawlStage.DOWNLOAD, timings.downloadDurationInNanos);
+        }
+        if (page.scannedHtml != null) {
+            metrics.record(CrawlStage.LINK_PARSING, timings.scanDurationInNanos);
+        }
+    }
+
+    /**
+     * Only pages scanned to the end are fingerprinted, so pages whose links weren't needed aren't checked
+     */
+    private boolean isNearDuplicate(ScannedHtml scannedHtml) {
+        final NearDuplicateIndex nearDuplicateIndex = options.nearDuplicateIndex();
+        return nearDuplicateIndex != null
+                && scannedHtml.textFingerprint != 0
+                && !nearDuplicateIndex.markSeen(scannedHtml.textFingerprint);
+    }
+
+    /**
+     * Waits for the prefetched lookup, so a host which can't be resolved doesn't cost a connection attempt.
+     * If the lookup takes too long, the page is fetched anyway and the JDK resolves the host itself
+     */
+    private boolean isHostResolved(URL url) {
+        final DnsCache dnsCache = options.dnsCache();
+        if (dnsCache == null) {
+            return true;
+        }
+        final long lookupStartTime = System.nanoTime();
+        try {
+            dnsCache.resolved(url.getHost(), DNS_TIMEOUT_IN_MILLIS);
+            return true;
+        } catch (UnknownHostException e) {
+            metrics.recordError(e);
+            return false;
+        } finally {
+            metrics.record(CrawlStage.DNS, System.nanoTime() - lookupStartTime);
+        }
+    }
+
+    private boolean isAllowedByRobotsTxt(URL url) {
+        final PolitenessPolicy politenessPolicy = options.politenessPolicy();
+        return politenessPolicy == null
+                || politenessPolicy.robotsTxtCache == null
+                || politenessPolicy.robotsTxtCache.rulesFor(url).isAllowed(url);
+    }
+
+    /**
+     * Links are resolved against the base href if the page has it. Links which can't be crawled are dropped.
+     */
+    private List<String> canonicalLinks(URL pageUrl, ScannedHtml scannedHtml) {
+        final UrlCanonicalizer canonicalizer = options.urlCanonicalizer();
+        UrlCanonicalizer.Base base = canonicalizer.base(pageUrl.toString());
+        if (base == null) {
+            return List.of();
+        }
+        if (scannedHtml.baseHref != null) {
+            final String baseHref = canonicalizer.resolved(base, scannedHtml.baseHref);
+            if (baseHref != null) {
+                base = canonicalizer.base(baseHref);
+            }
+        }
+        final List<String> links = new ArrayList<>(scannedHtml.links.size());
+        for (String link : scannedHtml.links) {
+            final String canonicalLink = canonicalizer.resolved(base, link);
+            if (canonicalLink != null) {
+                links.add(canonicalLink);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Urls are created only for links which weren't seen yet
+     *
+     * @return null if the canonical url isn't accepted by {@link URL}
+     */
+    private static URL parsedUrl(String canonicalUrl) {
+        try {
+            return new URL(canonicalUrl);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * If links aren't needed, the fetcher may stop downloading once the title is found.
+     *
+     * @return null if the page couldn't be fetched
+     */
+    private FetchedPage fetchedPage(URL url, boolean areLinksNeeded) {
+        try {
+            return pageFetcher
+                    .fetch(url, areLinksNeeded ? scanner -> false : HtmlPageScanner::hasTitle, options.keepsRawBodies())
+                    .join();
+        } catch (CompletionException | CancellationException e) {
+//            Failures are only counted, the metrics summarize them by type. Fetches aborted by an interruption
+//            aren't errors
+            if (!shouldStopCrawling) {
+                metrics.recordError(e);
+            }
+        }
+        return null;
+    }
+
+    private ScannedHtml scannedHtml(FetchedPage page) {
+        if (page.scannedHtml != null) {
+            return page.scannedHtml;
+        }
+        final long scanStartTime = System.nanoTime();
+        final ScannedHtml scannedHtml = HtmlPageScanner.scanned(page.htmlContent);
+        metrics.record(CrawlStage.LINK_PARSING, System.nanoTime() - scanStartTime);
+        return scannedHtml;
     }
 
     @Override
@@ -115,8 +701,23 @@ public class CrawlHtmlPages implements InterruptibleAction {
         return "FetchData";
     }
 
+    /**
+     * Stops handing out urls and aborts the fetches in flight. Only the first call counts
+     */
     @Override
     public void interrupt() {
+        if (!isInterrupted.compareAndSet(false, true)) {
+            return;
+        }
+        stopDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.stopTimeoutInSeconds());
         shouldStopCrawling = true;
+        final InParallel batch = currentBatch;
+        if (batch != null) {
+            batch.stopWithin(options.stopTimeoutInSeconds(), TimeUnit.SECONDS);
+        }
+        pageFetcher.abortInFlight();
+        if (shard != null) {
+            shard.stopCrawl();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package crawler.actions;
+
+public enum CrawlMode {
+    /**
+     * Every depth level is fetched in parallel and the next level starts only when the whole previous one is done.
+     */
+    LEVEL_BY_LEVEL,
+    /**
+     * Discovered urls are put into a shared frontier right away and workers never wait for each other.
+     */
+    CONTINUOUS_FRONTIER
+}
@@ -0,0 +1,279 @@
+package crawler.actions;
+
+import crawler.checkpoint.CrawlJournal;
+import crawler.cluster.CrawlShard;
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.dedup.FingerprintSeenUrls;
+import crawler.dedup.NearDuplicateIndex;
+import crawler.dedup.SeenUrls;
+import crawler.dns.DnsCache;
+import crawler.fetching.PageFetcher;
+import crawler.frontier.Frontier;
+import crawler.frontier.SpillingFrontier;
+import crawler.metrics.CrawlMetrics;
+import crawler.politeness.PolitenessPolicy;
+import crawler.fetching.UrlConnectionFetcher;
+import crawler.utilities.UrlCanonicalizer;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Optional settings of {@link CrawlHtmlPages}. Every setting has a default value, so only the needed ones can be set.
+ */
+public class CrawlOptions {
+    private int workersNumber = 10;
+    private CrawlMode crawlMode = CrawlMode.LEVEL_BY_LEVEL;
+    private CrawlExecutor crawlExecutor;
+    private int levelTimeLimitInSeconds = 10;
+    private int timeLimitInSeconds = Integer.MAX_VALUE;
+    private int stopTimeoutInSeconds = 5;
+    private Consumer<Action> timedOutActionsConsumer = action -> System.out.println("Timed out: " + action);
+    private PageFetcher pageFetcher = new UrlConnectionFetcher();
+    private Supplier<SeenUrls> seenUrlsFactory = FingerprintSeenUrls::new;
+    private Supplier<Frontier> frontierFactory = SpillingFrontier::new;
+    private PolitenessPolicy politenessPolicy;
+    private boolean keepsRawBodies = false;
+    private CrawlMetrics metrics = new CrawlMetrics();
+    private UrlCanonicalizer urlCanonicalizer = UrlCanonicalizer.DEFAULT;
+    private DnsCache dnsCache;
+    private CrawlJournal journal;
+    private CrawlShard shard;
+    private NearDuplicateIndex nearDuplicateIndex;
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    public CrawlOptions withWorkersNumber(int workersNumber) {
+        this.workersNumber = workersNumber;
+        return this;
+    }
+
+    public CrawlOptions withCrawlMode(CrawlMode crawlMode) {
+        this.crawlMode = crawlMode;
+        return this;
+    }
+
+    /**
+     * @param crawlExecutor executor which is shared between crawls. It isn't closed after crawling.
+     *                      If it's not set, a new executor is created for every crawl
+     */
+    public CrawlOptions withCrawlExecutor(CrawlExecutor crawlExecutor) {
+        this.crawlExecutor = crawlExecutor;
+        return this;
+    }
+
+    /**
+     * @param levelTimeLimitInSeconds how long one batch of a depth level may take
+     *                                in the {@link CrawlMode#LEVEL_BY_LEVEL} mode
+     */
+    public CrawlOptions withLevelTimeLimitInSeconds(int levelTimeLimitInSeconds) {
+        this.levelTimeLimitInSeconds = levelTimeLimitInSeconds;
+        return this;
+    }
+
+    /**
+     * @param timeLimitInSeconds deadline of the whole crawl. When it passes, the crawl is stopped
+     *                           like by {@link CrawlHtmlPages#interrupt()}
+     */
+    public CrawlOptions withTimeLimitInSeconds(int timeLimitInSeconds) {
+        this.timeLimitInSeconds = timeLimitInSeconds;
+        return this;
+    }
+
+    /**
+     * @param stopTimeoutInSeconds how long fetches which are still running after a stop may take,
+     *                             before the crawl returns without them
+     */
+    public CrawlOptions withStopTimeoutInSeconds(int stopTimeoutInSeconds) {
+        this.stopTimeoutInSeconds = stopTimeoutInSeconds;
+        return this;
+    }
+
+    public CrawlOptions withTimedOutActionsConsumer(Consumer<Action> timedOutActionsConsumer) {
+        this.timedOutActionsConsumer = timedOutActionsConsumer;
+        return this;
+    }
+
+    public CrawlOptions withPageFetcher(PageFetcher pageFetcher) {
+        this.pageFetcher = pageFetcher;
+        return this;
+    }
+
+    /**
+     * @param seenUrlsFactory creates an empty seen-set for every crawl
+     */
+    public CrawlOptions withSeenUrlsFactory(Supplier<SeenUrls> seenUrlsFactory) {
+        this.seenUrlsFactory = seenUrlsFactory;
+        return this;
+    }
+
+    /**
+     * @param frontierFactory creates an empty frontier for a crawl (or for every depth level
+     *                        in the {@link CrawlMode#LEVEL_BY_LEVEL} mode). Frontiers are closed when they're not needed.
+     *                        By default urls beyond the first 100 000 waiting ones are spilled to disk,
+     *                        see {@link SpillingFrontier}
+     */
+    public CrawlOptions withFrontierFactory(Supplier<Frontier> frontierFactory) {
+        this.frontierFactory = frontierFactory;
+        return this;
+    }
+
+    /**
+     * @param politenessPolicy per-host limits. If it's set, frontiers of the factory are wrapped
+     *                         in a {@link crawler.politeness.PoliteFrontier} in both modes, and urls disallowed
+     *                         by robots.txt are skipped
+     */
+    public CrawlOptions withPolitenessPolicy(PolitenessPolicy politenessPolicy) {
+        this.politenessPolicy = politenessPolicy;
+        return this;
+    }
+
+    /**
+     * @param keepsRawBodies if it's true, every {@link crawler.ExtractedPage} carries the whole page body
+     */
+    public CrawlOptions withRawBodies(boolean keepsRawBodies) {
+        this.keepsRawBodies = keepsRawBodies;
+        return this;
+    }
+
+    /**
+     * @param metrics where the stage latencies and counters of the crawl are recorded
+     */
+    public CrawlOptions withMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param urlCanonicalizer resolves links and makes the keys urls are deduplicated by,
+     *                         e.g. one which sorts query parameters
+     */
+    public CrawlOptions withUrlCanonicalizer(UrlCanonicalizer urlCanonicalizer) {
+        this.urlCanonicalizer = urlCanonicalizer;
+        return this;
+    }
+
+    /**
+     * @param dnsCache if it's set, hosts are prefetched when their urls enter a frontier and workers skip
+     *                 urls of hosts which can't be resolved. It isn't closed after the crawl
+     */
+    public CrawlOptions withDnsCache(DnsCache dnsCache) {
+        this.dnsCache = dnsCache;
+        return this;
+    }
+
+    /**
+     * @param journal where the progress of the crawl is logged. If the journal holds a previous crawl,
+     *                the crawl resumes it instead of starting from the seeds. If the previous crawl can't be read,
+     *                the crawl fails with an {@link java.io.UncheckedIOException}. It isn't closed after the crawl
+     */
+    public CrawlOptions withJournal(CrawlJournal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * @param shard part of a crawl which is split between processes. If it's set, only the hosts of the shard
+     *              are crawled, the other urls are forwarded to their owners, and the crawl runs in the
+     *              {@link CrawlMode#CONTINUOUS_FRONTIER} mode until every process is done
+     */
+    public CrawlOptions withShard(CrawlShard shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    /**
+     * @param nearDuplicateIndex if it's set, links of pages whose text is nearly the same as the text of a page
+     *                           crawled before aren't followed. Such pages are still sent to the consumer,
+     *                           marked as near duplicates
+     */
+    public CrawlOptions withNearDuplicateIndex(NearDuplicateIndex nearDuplicateIndex) {
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        return this;
+    }
+
+    /**
+     * @param concurrencyLimiter if it's set, fetches wait for it and the workers number is only the upper bound
+     *                           of fetches in flight, so it should be at least the limiter's maximum.
+     *                           Its per-host limits are used by the polite frontier
+     */
+    public CrawlOptions withConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    public int workersNumber() {
+        return workersNumber;
+    }
+
+    public CrawlMode crawlMode() {
+        return crawlMode;
+    }
+
+    public CrawlExecutor crawlExecutor() {
+        return crawlExecutor;
+    }
+
+    public int levelTimeLimitInSeconds() {
+        return levelTimeLimitInSeconds;
+    }
+
+    public int timeLimitInSeconds() {
+        return timeLimitInSeconds;
+    }
+
+    public int stopTimeoutInSeconds() {
+        return stopTimeoutInSeconds;
+    }
+
+    public Consumer<Action> timedOutActionsConsumer() {
+        return timedOutActionsConsumer;
+    }
+
+    public PageFetcher pageFetcher() {
+        return pageFetcher;
+    }
+
+    public Supplier<SeenUrls> seenUrlsFactory() {
+        return seenUrlsFactory;
+    }
+
+    public Supplier<Frontier> frontierFactory() {
+        return frontierFactory;
+    }
+
+    public PolitenessPolicy politenessPolicy() {
+        return politenessPolicy;
+    }
+
+    public boolean keepsRawBodies() {
+        return keepsRawBodies;
+    }
+
+    public CrawlMetrics metrics() {
+        return metrics;
+    }
+
+    public UrlCanonicalizer urlCanonicalizer() {
+        return urlCanonicalizer;
+    }
+
+    public DnsCache dnsCache() {
+        return dnsCache;
+    }
+
+    public CrawlJournal journal() {
+        return journal;
+    }
+
+    public CrawlShard shard() {
+        return shard;
+    }
+
+    public NearDuplicateIndex nearDuplicateIndex() {
+        return nearDuplicateIndex;
+    }
+
+    public ConcurrencyLimiter concurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+}
@@ -1,40 +1,138 @@
 package crawler.actions;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
+/**
+ * Executes actions using at most threadsNumber threads at the same time.
+ * Actions which haven't finished within the time limit are cancelled and reported to the timedOutActionsConsumer.
+ * After {@link #stopWithin} no more actions are started and the running ones get at most the given time.
+ */
 public class InParallel implements Action {
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private final Collection<Action> actions;
-    private final ExecutorService executorService;
+    private final CrawlExecutor executor;
+    private final boolean ownsExecutor;
+    private final int threadsNumber;
     private final int timeLimit;
     private final TimeUnit timeUnit;
+    private final Consumer<Action> timedOutActionsConsumer;
+    private volatile boolean isStopped = false;
+    private volatile long stopDeadline;
 
     public InParallel(Collection<Action> actionsToExecute, int threadsNumber, int timeLimit, TimeUnit timeUnit) {
+        this(actionsToExecute, new CrawlExecutor(ThreadingMode.PLATFORM), true, threadsNumber, timeLimit, timeUnit,
+             action -> System.out.println("Timed out: " + action));
+    }
+
+    public InParallel(Collection<Action> actionsToExecute,
+                      CrawlExecutor executor,
+                      int threadsNumber,
+                      int timeLimit,
+                      TimeUnit timeUnit,
+                      Consumer<Action> timedOutActionsConsumer) {
+        this(actionsToExecute, executor, false, threadsNumber, timeLimit, timeUnit, timedOutActionsConsumer);
+    }
+
+    private InParallel(Collection<Action> actionsToExecute,
+                       CrawlExecutor executor,
+                       boolean ownsExecutor,
+                       int threadsNumber,
+                       int timeLimit,
+                       TimeUnit timeUnit,
+                       Consumer<Action> timedOutActionsConsumer) {
         this.actions = actionsToExecute;
-        this.executorService = Executors.newFixedThreadPool(threadsNumber);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.threadsNumber = Math.max(1, threadsNumber);
         this.timeLimit = timeLimit;
         this.timeUnit = timeUnit;
+        this.timedOutActionsConsumer = timedOutActionsConsumer;
     }
 
     @Override
     public void execute() {
+        final Queue<Action> notStartedActions = new ConcurrentLinkedQueue<>(actions);
+        final Set<Action> runningActions = ConcurrentHashMap.newKeySet();
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(threadsNumber, actions.size()); i++) {
+            futures.add(executor.submit(() -> {
+                Action action;
+                while (!isStopped
+                        && !Thread.currentThread().isInterrupted()
+                        && (action = notStartedActions.poll()) != null) {
+                    runningActions.add(action);
+                    try {
+                        action.execute();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    } finally {
+                        runningActions.remove(action);
+                    }
+                }
+            }));
+        }
         try {
-            final Set<Callable<Void>> callables = actions.stream()
-                    .map(action ->
-                                 (Callable<Void>) () -> {
-                                     action.execute();
-                                     return null;
-                                 })
-                    .collect(Collectors.toSet());
-            executorService.invokeAll(callables, timeLimit, timeUnit);
-            executorService.shutdown();
+            final long deadline = System.nanoTime() + timeUnit.toNanos(timeLimit);
+            for (Future<?> future : futures) {
+                awaited(future, deadline);
+            }
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(true));
+            runningActions.forEach(timedOutActionsConsumer);
+//            Actions skipped because of a stop didn't time out
+            if (!isStopped) {
+                notStartedActions.forEach(timedOutActionsConsumer);
+            }
         } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
             e.printStackTrace();
+        } finally {
+            if (ownsExecutor) {
+                executor.close();
+            }
+        }
+    }
+
+    /**
+     * Can be called from any thread, also before the actions are executed
+     */
+    public void stopWithin(long timeout, TimeUnit timeoutUnit) {
+        stopDeadline = System.nanoTime() + timeoutUnit.toNanos(timeout);
+        isStopped = true;
+    }
+
+    /**
+     * Waits in slices, so a stop is noticed while waiting
+     */
+    private void awaited(Future<?> future, long deadline) throws InterruptedException,
+                                                                 ExecutionException,
+                                                                 TimeoutException {
+        while (true) {
+            final long currentDeadline = isStopped && stopDeadline - deadline < 0 ? stopDeadline : deadline;
+            final long remainingNanos = currentDeadline - System.nanoTime();
+            if (remainingNanos <= 0 && !future.isDone()) {
+                throw new TimeoutException();
+            }
+            try {
+                future.get(Math.max(0, Math.min(remainingNanos, WAIT_SLICE_NANOS)), TimeUnit.NANOSECONDS);
+                return;
+            } catch (TimeoutException e) {
+//                Check the deadline again
+            }
         }
     }
 }
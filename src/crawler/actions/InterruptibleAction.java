@@ -8,8 +8,12 @@ public interface InterruptibleAction extends Action {
         return new InterruptibleAction() {
             @Override
             public void execute() {
-                prev.execute();
-                next.execute();
+//                The next actions usually release what the previous ones used, so they run after a failure as well
+                try {
+                    prev.execute();
+                } finally {
+                    next.execute();
+                }
             }
 
             @Override
@@ -0,0 +1,9 @@
+package crawler.actions;
+
+public enum ThreadingMode {
+    PLATFORM,
+    /**
+     * One virtual thread per task. Requires a JDK with virtual threads, otherwise {@link #PLATFORM} is used.
+     */
+    VIRTUAL
+}
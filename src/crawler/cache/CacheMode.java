@@ -0,0 +1,12 @@
+package crawler.cache;
+
+public enum CacheMode {
+    /**
+     * Cached pages are revalidated with conditional requests, changed and new pages are fetched and cached
+     */
+    REVALIDATE,
+    /**
+     * Only cached pages are crawled, nothing is sent over the network
+     */
+    REPLAY
+}
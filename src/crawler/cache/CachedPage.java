@@ -0,0 +1,92 @@
+package crawler.cache;
+
+import crawler.fetching.FetchTimings;
+import crawler.fetching.FetchedPage;
+import crawler.fetching.Validators;
+import crawler.utilities.ScannedHtml;
+
+import java.net.URL;
+
+/**
+ * Response metadata and the scanned content of a page as it's kept in the {@link PageCache}
+ */
+public class CachedPage {
+    /**
+     * Canonical url, the key of the cache
+     */
+    public final String url;
+    public final int statusCode;
+    public final String contentType;
+    public final Validators validators;
+    /**
+     * Hash of the body if it's kept, otherwise of the title and the links
+     */
+    public final long contentHash;
+    public final long bytesNumber;
+    public final long fetchTimeInMillis;
+    /**
+     * False if reading of the page was stopped early, so its links may be incomplete
+     */
+    public final boolean isComplete;
+    public final ScannedHtml scannedHtml;
+    /**
+     * Null unless the body was kept when the page was fetched
+     */
+    public final String body;
+
+    public CachedPage(String url,
+                      int statusCode,
+                      String contentType,
+                      Validators validators,
+                      long contentHash,
+                      long bytesNumber,
+                      long fetchTimeInMillis,
+                      boolean isComplete,
+                      ScannedHtml scannedHtml,
+                      String body) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.validators = validators;
+        this.contentHash = contentHash;
+        this.bytesNumber = bytesNumber;
+        this.fetchTimeInMillis = fetchTimeInMillis;
+        this.isComplete = isComplete;
+        this.scannedHtml = scannedHtml;
+        this.body = body;
+    }
+
+    public FetchedPage fetchedPage(URL url, FetchTimings timings) {
+        return new FetchedPage(url,
+                               statusCode,
+                               contentType,
+                               body != null ? body : "",
+                               scannedHtml,
+                               bytesNumber,
+                               !isComplete,
+                               timings,
+                               validators);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-16 chars
+     */
+    static long contentHash(String body, ScannedHtml scannedHtml) {
+        long hash = 0xcbf29ce484222325L;
+        if (body != null) {
+            return hashed(hash, body);
+        }
+        hash = hashed(hash, scannedHtml.title);
+        for (String link : scannedHtml.links) {
+            hash = hashed(hash, link);
+        }
+        return hash;
+    }
+
+    private static long hashed(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xffff) * 0x100000001b3L;
+    }
+}
@@ -0,0 +1,135 @@
+package crawler.cache;
+
+import crawler.fetching.FetchTimings;
+import crawler.fetching.FetchedPage;
+import crawler.fetching.PageFetcher;
+import crawler.fetching.Validators;
+import crawler.utilities.HtmlPageScanner;
+import crawler.utilities.ScannedHtml;
+import crawler.utilities.UrlCanonicalizer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Fetcher which keeps html pages in a {@link PageCache}. A cached page is revalidated with its ETag and
+ * Last-Modified, and if the server answers 304 Not Modified, the cached title and links are used.
+ * In the {@link CacheMode#REPLAY} mode pages come only from the cache.
+ */
+public class CachingFetcher implements PageFetcher {
+    private final PageFetcher fetcher;
+    private final PageCache cache;
+    private final CacheMode mode;
+    private final LongAdder notModifiedPagesNumber = new LongAdder();
+    private final LongAdder savedBytesNumber = new LongAdder();
+    private final LongAdder missesNumber = new LongAdder();
+
+    public CachingFetcher(PageFetcher fetcher, PageCache cache, CacheMode mode) {
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.mode = mode;
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url) {
+        return fetch(url, scanner -> false, true);
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url, Predicate<HtmlPageScanner> hasEnough, boolean isBodyNeeded) {
+        final String key = cacheKey(url);
+        final CachedPage cachedPage = cache.cached(key);
+        if (mode == CacheMode.REPLAY) {
+            if (cachedPage == null) {
+                missesNumber.increment();
+                return CompletableFuture.failedFuture(new IOException("Not in the page cache: " + url));
+            }
+            return CompletableFuture.completedFuture(cachedPage.fetchedPage(url, FetchTimings.UNKNOWN));
+        }
+//        A copy without all links or without the body can't stand in for the page
+        final boolean isUsable = cachedPage != null
+                && cachedPage.isComplete
+                && (cachedPage.body != null || !isBodyNeeded);
+        if (!isUsable) {
+            missesNumber.increment();
+        }
+        return fetcher.fetch(url, hasEnough, isBodyNeeded, isUsable ? cachedPage.validators : Validators.NONE)
+                .thenApply(page -> {
+                    if (isUsable && page.statusCode == FetchedPage.NOT_MODIFIED_STATUS_CODE) {
+                        notModifiedPagesNumber.increment();
+                        savedBytesNumber.add(cachedPage.bytesNumber);
+                        return cachedPage.fetchedPage(url, page.timings);
+                    }
+                    if (page.statusCode == 200 && FetchedPage.isHtml(page.contentType)) {
+                        final CachedPage newCachedPage = cachedPage(key, page);
+                        if (!isSameCopy(cachedPage, newCachedPage)) {
+                            cache.store(newCachedPage);
+                        }
+                    }
+                    return page;
+                });
+    }
+
+    public long notModifiedPagesNumber() {
+        return notModifiedPagesNumber.sum();
+    }
+
+    /**
+     * Bytes the cached copies of not modified pages had when they were downloaded
+     */
+    public long savedBytesNumber() {
+        return savedBytesNumber.sum();
+    }
+
+    public long missesNumber() {
+        return missesNumber.sum();
+    }
+
+    @Override
+    public void abortInFlight() {
+        fetcher.abortInFlight();
+    }
+
+    @Override
+    public String toString() {
+        return fetcher + " with a page cache";
+    }
+
+    private static String cacheKey(URL url) {
+        final String canonicalUrl = UrlCanonicalizer.DEFAULT.canonicalized(url.toString());
+        return canonicalUrl != null ? canonicalUrl : url.toString();
+    }
+
+    /**
+     * Servers which don't support conditional requests send the same page again, it isn't stored twice
+     */
+    private static boolean isSameCopy(CachedPage cachedPage, CachedPage newCachedPage) {
+        return cachedPage != null
+                && cachedPage.isComplete == newCachedPage.isComplete
+                && cachedPage.contentHash == newCachedPage.contentHash
+                && (cachedPage.body == null) == (newCachedPage.body == null)
+                && Objects.equals(cachedPage.validators.etag, newCachedPage.validators.etag)
+                && Objects.equals(cachedPage.validators.lastModified, newCachedPage.validators.lastModified);
+    }
+
+    private static CachedPage cachedPage(String key, FetchedPage page) {
+        final ScannedHtml scannedHtml = page.scannedHtml != null ?
+                page.scannedHtml :
+                HtmlPageScanner.scanned(page.htmlContent);
+        final String body = page.htmlContent.isEmpty() ? null : page.htmlContent;
+        return new CachedPage(key,
+                              page.statusCode,
+                              page.contentType,
+                              page.validators,
+                              CachedPage.contentHash(body, scannedHtml),
+                              page.bytesNumber,
+                              System.currentTimeMillis(),
+                              !page.isTruncated,
+                              scannedHtml,
+                              body);
+    }
+}
@@ -0,0 +1,312 @@
+package crawler.cache;
+
+import crawler.fetching.Validators;
+import crawler.utilities.ScannedHtml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Pages of previous crawls kept on disk by their canonical url, so a recrawl can revalidate them instead of
+ * downloading them again. Pages are appended to segment files, a newer copy of a page replaces the older one
+ * in the in-memory index. The index is rebuilt from the segments when the cache is opened, a record which
+ * was cut off by a crash is dropped.
+ * <p>
+ * Safe to be used by many workers: reads are positional, appends are serialized.
+ */
+public class PageCache implements AutoCloseable {
+    public static final long SEGMENT_SIZE_IN_BYTES = 64L << 20;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    /**
+     * Version 1 records don't have the text fingerprint
+     */
+    private static final byte RECORD_VERSION = 2;
+    private static final int SEGMENT_INDEX_SHIFT = 40;
+
+    private final Path directory;
+    private final List<FileChannel> segments = new ArrayList<>();
+    /**
+     * Segment index in the high bits, record offset in the low bits
+     */
+    private final Map<String, Long> recordPositions = new ConcurrentHashMap<>();
+    private FileChannel currentSegment;
+    private long currentSegmentSize;
+    private boolean isClosed = false;
+
+    /**
+     * Opens the cache in the directory, it's created if it doesn't exist
+     */
+    public PageCache(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        final List<Path> segmentPaths = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                                                                    SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            paths.forEach(segmentPaths::add);
+        }
+        segmentPaths.sort(null);
+        try {
+            for (Path segmentPath : segmentPaths) {
+                final FileChannel segment = FileChannel.open(segmentPath, READ, WRITE);
+                segments.add(segment);
+                final long validSize = indexedSegment(segment, segments.size() - 1);
+                if (validSize < segment.size()) {
+                    System.out.println("Dropping a broken tail of " + segmentPath);
+                    segment.truncate(validSize);
+                }
+            }
+            if (segments.isEmpty()) {
+                addSegment();
+            } else {
+                currentSegment = segments.get(segments.size() - 1);
+                currentSegmentSize = currentSegment.size();
+            }
+        } catch (IOException e) {
+            closeSegments();
+            throw e;
+        }
+    }
+
+    /**
+     * @return null if the page isn't cached or can't be read
+     */
+    public CachedPage cached(String url) {
+        final Long position = recordPositions.get(url);
+        if (position == null) {
+            return null;
+        }
+        final FileChannel segment;
+        synchronized (this) {
+            segment = segments.get((int) (position >>> SEGMENT_INDEX_SHIFT));
+        }
+        try {
+            final ByteBuffer record = readRecord(segment, position & ((1L << SEGMENT_INDEX_SHIFT) - 1));
+            return record != null ? decoded(record) : null;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public synchronized void store(CachedPage page) {
+        if (isClosed) {
+            return;
+        }
+        try {
+            final byte[] payload = encoded(page);
+            final int recordSize = RECORD_HEADER_SIZE + payload.length;
+            if (currentSegmentSize > 0 && currentSegmentSize + recordSize > SEGMENT_SIZE_IN_BYTES) {
+                addSegment();
+            }
+            final ByteBuffer record = ByteBuffer.allocate(recordSize);
+            record.putInt(payload.length).putInt(checksum(payload, 0, payload.length)).put(payload).flip();
+            final long offset = currentSegmentSize;
+            while (record.hasRemaining()) {
+                currentSegment.write(record, currentSegmentSize + record.position());
+            }
+            currentSegmentSize += recordSize;
+            recordPositions.put(page.url, ((long) (segments.size() - 1) << SEGMENT_INDEX_SHIFT) | offset);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int size() {
+        return recordPositions.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            currentSegment.force(false);
+        } finally {
+            closeSegments();
+        }
+    }
+
+    private void addSegment() throws IOException {
+        final Path segmentPath = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segments.size(),
+                                                                 SEGMENT_SUFFIX));
+        if (currentSegment != null) {
+            currentSegment.force(false);
+        }
+        currentSegment = FileChannel.open(segmentPath, CREATE, READ, WRITE);
+        currentSegment.truncate(0);
+        currentSegmentSize = 0;
+        segments.add(currentSegment);
+    }
+
+    private void closeSegments() throws IOException {
+        IOException failure = null;
+        for (FileChannel segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Adds the records of the segment to the index
+     *
+     * @return size of the segment up to the first broken record
+     */
+    private long indexedSegment(FileChannel segment, int segmentIndex) throws IOException {
+        final long segmentSize = segment.size();
+        long offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= segmentSize) {
+            final ByteBuffer record = readRecord(segment, offset);
+            if (record == null) {
+                break;
+            }
+            final int recordSize = RECORD_HEADER_SIZE + record.remaining();
+            record.get();
+            recordPositions.put(string(record), ((long) segmentIndex << SEGMENT_INDEX_SHIFT) | offset);
+            offset += recordSize;
+        }
+        return offset;
+    }
+
+    /**
+     * @return payload of the record or null if it's cut off or its checksum doesn't match
+     */
+    private static ByteBuffer readRecord(FileChannel segment, long offset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(segment, header, offset)) {
+            return null;
+        }
+        final int payloadSize = header.getInt(0);
+        if (payloadSize < 0 || offset + RECORD_HEADER_SIZE + payloadSize > segment.size()) {
+            return null;
+        }
+        final ByteBuffer payload = ByteBuffer.allocate(payloadSize);
+        if (!readFully(segment, payload, offset + RECORD_HEADER_SIZE)
+                || checksum(payload.array(), 0, payloadSize) != header.getInt(Integer.BYTES)) {
+            return null;
+        }
+        return payload.flip();
+    }
+
+    private static boolean readFully(FileChannel segment, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (segment.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The url comes first, so the index can be rebuilt without decoding the rest
+     */
+    private static byte[] encoded(CachedPage page) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(RECORD_VERSION);
+            writeString(output, page.url);
+            output.writeInt(page.statusCode);
+            writeString(output, page.contentType);
+            writeString(output, page.validators.etag);
+            writeString(output, page.validators.lastModified);
+            output.writeLong(page.contentHash);
+            output.writeLong(page.bytesNumber);
+            output.writeLong(page.fetchTimeInMillis);
+            output.writeBoolean(page.isComplete);
+            writeString(output, page.scannedHtml.title);
+            writeString(output, page.scannedHtml.baseHref);
+            writeString(output, page.scannedHtml.canonicalHref);
+            output.writeLong(page.scannedHtml.textFingerprint);
+            output.writeInt(page.scannedHtml.links.size());
+            for (String link : page.scannedHtml.links) {
+                writeString(output, link);
+            }
+            writeString(output, page.body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CachedPage decoded(ByteBuffer record) {
+        final byte version = record.get();
+        if (version != RECORD_VERSION && version != 1) {
+            throw new IllegalStateException("Unknown page cache record version");
+        }
+        final String url = string(record);
+        final int statusCode = record.getInt();
+        final String contentType = string(record);
+        final Validators validators = new Validators(string(record), string(record));
+        final long contentHash = record.getLong();
+        final long bytesNumber = record.getLong();
+        final long fetchTimeInMillis = record.getLong();
+        final boolean isComplete = record.get() != 0;
+        final String title = string(record);
+        final String baseHref = string(record);
+        final String canonicalHref = string(record);
+        final long textFingerprint = version >= 2 ? record.getLong() : 0;
+        final int linksNumber = record.getInt();
+        final List<String> links = new ArrayList<>(linksNumber);
+        for (int i = 0; i < linksNumber; i++) {
+            links.add(string(record));
+        }
+        final String body = string(record);
+        final ScannedHtml scannedHtml = new ScannedHtml(title, links, baseHref, canonicalHref, textFingerprint);
+        return new CachedPage(url, statusCode, contentType, validators, contentHash, bytesNumber,
+                              fetchTimeInMillis, isComplete, scannedHtml, body);
+    }
+
+    /**
+     * Length -1 stands for null
+     */
+    private static void writeString(DataOutputStream output, String s) throws IOException {
+        if (s == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String string(ByteBuffer record) {
+        final int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final String s = new String(record.array(), record.arrayOffset() + record.position(), length,
+                                    StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return s;
+    }
+}
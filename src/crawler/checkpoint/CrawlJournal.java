@@ -0,0 +1,479 @@
+package crawler.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Write-ahead log of a crawl: every url which enters the frontier and every url which has been crawled.
+ * The log is flushed every second and compacted into a snapshot of the crawled and the pending urls
+ * every snapshot interval, so a crawl which was interrupted or crashed can be resumed
+ * by {@link #recovered(RecoveryListener)} without fetching the crawled pages again.
+ * <p>
+ * Records are appended in the order the crawl makes them, and a page is logged as crawled only after
+ * its links were logged, so any prefix of the log is a consistent state. A record which was cut off
+ * by a crash ends the log.
+ * <p>
+ * Files of the directory: snapshot.dat and journal-N.log. The snapshot holds the seed urls and the depth
+ * of the crawl, so only the same crawl is resumed, and the number of the first log which isn't in it yet,
+ * so logs are replayed over it even if compaction was interrupted.
+ */
+public class CrawlJournal implements AutoCloseable {
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_IN_SECONDS = 60;
+    private static final long FLUSH_INTERVAL_IN_MILLIS = 1000;
+    private static final String SNAPSHOT_FILE_NAME = "snapshot.dat";
+    private static final String LOG_PREFIX = "journal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x43524a53;
+    /**
+     * Version 2 added the seed urls and the depth
+     */
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /**
+     * Url which entered the frontier: depth, url
+     */
+    private static final byte ADDED = 'A';
+    /**
+     * Url which has been crawled: url
+     */
+    private static final byte COMPLETED = 'C';
+    private static final byte END_OF_SNAPSHOT = 'E';
+
+    private final Path directory;
+    private final boolean hasPreviousCrawl;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Held while the logs are read, so compaction doesn't delete them meanwhile
+     */
+    private final Object compactionLock = new Object();
+    private long logNumber;
+    private DataOutputStream log;
+    private long recordsNumberSinceCompaction = 0;
+    private boolean isClosed = false;
+    /**
+     * Null until the crawl is started or recovered
+     */
+    private List<String> seedUrls;
+    private int maxDepth;
+
+    /**
+     * @param resumes if it's false, the journal of a previous crawl in the directory is deleted
+     */
+    public CrawlJournal(Path directory, boolean resumes) throws IOException {
+        this(directory, resumes, DEFAULT_SNAPSHOT_INTERVAL_IN_SECONDS);
+    }
+
+    public CrawlJournal(Path directory, boolean resumes, long snapshotIntervalInSeconds) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        final List<Long> logNumbers = logNumbers();
+        if (!resumes) {
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE_NAME));
+            for (long number : logNumbers) {
+                Files.deleteIfExists(logPath(number));
+            }
+            logNumbers.clear();
+        }
+        this.hasPreviousCrawl = !logNumbers.isEmpty() || Files.exists(directory.resolve(SNAPSHOT_FILE_NAME));
+        this.logNumber = logNumbers.isEmpty() ? 0 : logNumbers.get(logNumbers.size() - 1) + 1;
+        this.log = openedLog(logNumber);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "crawl-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush,
+                                         FLUSH_INTERVAL_IN_MILLIS,
+                                         FLUSH_INTERVAL_IN_MILLIS,
+                                         TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::compact,
+                                         snapshotIntervalInSeconds,
+                                         snapshotIntervalInSeconds,
+                                         TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return true if the journal was opened to resume and a previous crawl left its state in the directory
+     */
+    public boolean hasPreviousCrawl() {
+        return hasPreviousCrawl;
+    }
+
+    /**
+     * Starts the journal of a new crawl by writing a snapshot with its seed urls and depth
+     */
+    public void started(List<String> seedUrls, int maxDepth) throws IOException {
+        synchronized (compactionLock) {
+            final long firstLogNumber;
+            synchronized (this) {
+                this.seedUrls = List.copyOf(seedUrls);
+                this.maxDepth = maxDepth;
+                firstLogNumber = logNumber;
+            }
+            replaceSnapshot(firstLogNumber, snapshot -> {
+            });
+        }
+    }
+
+    public synchronized void added(String url, int depth) {
+        if (isClosed) {
+            return;
+        }
+        try {
+            log.writeByte(ADDED);
+            log.writeInt(depth);
+            writeString(log, url);
+            recordsNumberSinceCompaction++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void completed(String url) {
+        if (isClosed) {
+            return;
+        }
+        try {
+            log.writeByte(COMPLETED);
+            writeString(log, url);
+            recordsNumberSinceCompaction++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the state of the previous crawl. Urls which were crawled are reported as seen,
+     * urls which were waiting in the frontier are reported as pending in the order they were added.
+     *
+     * @throws IOException if the journal can't be read or the previous crawl had other seed urls or depth.
+     *                     Nothing is reported then
+     */
+    public void recovered(List<String> seedUrls, int maxDepth, RecoveryListener listener) throws IOException {
+        synchronized (compactionLock) {
+            final Path snapshotPath = directory.resolve(SNAPSHOT_FILE_NAME);
+            if (!Files.exists(snapshotPath)) {
+                throw new IOException("No snapshot of the previous crawl in " + directory);
+            }
+            final SnapshotHeader header;
+            try (DataInputStream snapshot = openedSnapshot(snapshotPath)) {
+                header = readHeader(snapshot, snapshotPath);
+            }
+            if (!header.seedUrls.equals(seedUrls) || header.maxDepth != maxDepth) {
+                throw new IOException("The journal in " + directory + " is of the crawl of " + header.seedUrls
+                                              + " to depth " + header.maxDepth);
+            }
+            synchronized (this) {
+                this.seedUrls = header.seedUrls;
+                this.maxDepth = header.maxDepth;
+            }
+            final Map<String, Integer> pendingUrls = new LinkedHashMap<>();
+            final long firstLogNumber = readSnapshot(snapshotPath, listener::crawled, pendingUrls::put);
+            final long currentLogNumber;
+            synchronized (this) {
+                currentLogNumber = logNumber;
+            }
+            for (long number : logNumbers()) {
+                if (number >= firstLogNumber && number < currentLogNumber) {
+                    readLog(logPath(number), pendingUrls, listener::crawled);
+                }
+            }
+            pendingUrls.forEach(listener::pending);
+        }
+    }
+
+    /**
+     * Writes what's buffered and stops taking snapshots. The files stay, so the crawl can be resumed.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            log.close();
+        }
+    }
+
+    private synchronized void flush() {
+        if (isClosed) {
+            return;
+        }
+        try {
+            log.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts a new log and merges the previous ones into the snapshot. Crawled urls of the snapshot are
+     * streamed, only the pending urls and the urls crawled since the last snapshot are kept in memory.
+     */
+    private void compact() {
+        synchronized (compactionLock) {
+            compactLogs();
+        }
+    }
+
+    private void compactLogs() {
+        final long newLogNumber;
+        synchronized (this) {
+            if (isClosed || recordsNumberSinceCompaction == 0 || seedUrls == null) {
+                return;
+            }
+            recordsNumberSinceCompaction = 0;
+            try {
+                final DataOutputStream newLog = openedLog(logNumber + 1);
+                log.close();
+                log = newLog;
+                newLogNumber = ++logNumber;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        final Path snapshotPath = directory.resolve(SNAPSHOT_FILE_NAME);
+        try {
+            replaceSnapshot(newLogNumber, snapshot -> {
+                final Map<String, Integer> pendingUrls = new LinkedHashMap<>();
+                final Set<String> crawledUrls = new HashSet<>();
+                final long firstLogNumber = readSnapshot(snapshotPath,
+                                                         url -> writeCompleted(snapshot, url),
+                                                         pendingUrls::put);
+                for (long number : logNumbers()) {
+                    if (number >= firstLogNumber && number < newLogNumber) {
+                        readLog(logPath(number), pendingUrls, crawledUrls::add);
+                    }
+                }
+                for (String url : crawledUrls) {
+                    writeCompleted(snapshot, url);
+                }
+                for (Map.Entry<String, Integer> pendingUrl : pendingUrls.entrySet()) {
+                    snapshot.writeByte(ADDED);
+                    snapshot.writeInt(pendingUrl.getValue());
+                    writeString(snapshot, pendingUrl.getKey());
+                }
+            });
+            for (long number : logNumbers()) {
+                if (number < newLogNumber) {
+                    Files.deleteIfExists(logPath(number));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the header and the records of a new snapshot next to the current one, then replaces it
+     */
+    private void replaceSnapshot(long firstLogNumber, SnapshotRecordsWriter recordsWriter) throws IOException {
+        final List<String> seedUrls;
+        final int maxDepth;
+        synchronized (this) {
+            seedUrls = this.seedUrls;
+            maxDepth = this.maxDepth;
+        }
+        final Path newSnapshotPath = directory.resolve(SNAPSHOT_FILE_NAME + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(newSnapshotPath.toFile());
+             DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            snapshot.writeInt(SNAPSHOT_MAGIC);
+            snapshot.writeInt(SNAPSHOT_VERSION);
+            snapshot.writeInt(maxDepth);
+            snapshot.writeInt(seedUrls.size());
+            for (String seedUrl : seedUrls) {
+                writeString(snapshot, seedUrl);
+            }
+            snapshot.writeLong(firstLogNumber);
+            recordsWriter.write(snapshot);
+            snapshot.writeByte(END_OF_SNAPSHOT);
+            snapshot.flush();
+            file.getFD().sync();
+        }
+        Files.move(newSnapshotPath, directory.resolve(SNAPSHOT_FILE_NAME),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return number of the first log which isn't in the snapshot, 0 if there's no snapshot
+     */
+    private static long readSnapshot(Path path,
+                                     StringConsumer crawledUrlsConsumer,
+                                     ObjIntConsumer<String> pendingUrlsConsumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (DataInputStream snapshot = openedSnapshot(path)) {
+            final long firstLogNumber = readHeader(snapshot, path).firstLogNumber;
+            byte type;
+            while ((type = snapshot.readByte()) != END_OF_SNAPSHOT) {
+                if (type == COMPLETED) {
+                    crawledUrlsConsumer.accept(readString(snapshot));
+                } else if (type == ADDED) {
+                    final int depth = snapshot.readInt();
+                    pendingUrlsConsumer.accept(readString(snapshot), depth);
+                } else {
+                    throw new IOException("Broken crawl snapshot: " + path);
+                }
+            }
+            return firstLogNumber;
+        }
+    }
+
+    private static DataInputStream openedSnapshot(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+
+    private static SnapshotHeader readHeader(DataInputStream snapshot, Path path) throws IOException {
+        if (snapshot.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a crawl snapshot: " + path);
+        }
+        final int version = snapshot.readInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported version " + version + " of the crawl snapshot: " + path);
+        }
+        final int maxDepth = snapshot.readInt();
+        final int seedUrlsNumber = snapshot.readInt();
+        if (seedUrlsNumber < 0) {
+            throw new IOException("Broken crawl snapshot: " + path);
+        }
+        final List<String> seedUrls = new ArrayList<>();
+        for (int i = 0; i < seedUrlsNumber; i++) {
+            seedUrls.add(readString(snapshot));
+        }
+        return new SnapshotHeader(List.copyOf(seedUrls), maxDepth, snapshot.readLong());
+    }
+
+    /**
+     * Applies the log to the pending urls. Crawled urls are removed from them and reported.
+     */
+    private static void readLog(Path path,
+                                Map<String, Integer> pendingUrls,
+                                StringConsumer crawledUrlsConsumer) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream log = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            while (true) {
+                final int type = log.read();
+                if (type == ADDED) {
+                    final int depth = log.readInt();
+                    pendingUrls.put(readString(log), depth);
+                } else if (type == COMPLETED) {
+                    final String url = readString(log);
+                    pendingUrls.remove(url);
+                    crawledUrlsConsumer.accept(url);
+                } else {
+                    if (type != -1) {
+                        System.out.println("Ignoring the broken end of " + path);
+                    }
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("Ignoring the cut off end of " + path);
+        }
+    }
+
+    private void writeCompleted(DataOutputStream snapshot, String url) throws IOException {
+        snapshot.writeByte(COMPLETED);
+        writeString(snapshot, url);
+    }
+
+    private DataOutputStream openedLog(long number) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logPath(number).toFile(), true),
+                                                             1 << 16));
+    }
+
+    private Path logPath(long number) {
+        return directory.resolve(String.format("%s%09d%s", LOG_PREFIX, number, LOG_SUFFIX));
+    }
+
+    /**
+     * @return numbers of the logs in the directory in ascending order
+     */
+    private List<Long> logNumbers() throws IOException {
+        final List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path path : paths) {
+                final String fileName = path.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(
+                            fileName.substring(LOG_PREFIX.length(), fileName.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static void writeString(DataOutputStream output, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Broken string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface StringConsumer {
+        void accept(String s) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface SnapshotRecordsWriter {
+        void write(DataOutputStream snapshot) throws IOException;
+    }
+
+    private static class SnapshotHeader {
+        private final List<String> seedUrls;
+        private final int maxDepth;
+        private final long firstLogNumber;
+
+        SnapshotHeader(List<String> seedUrls, int maxDepth, long firstLogNumber) {
+            this.seedUrls = seedUrls;
+            this.maxDepth = maxDepth;
+            this.firstLogNumber = firstLogNumber;
+        }
+    }
+
+    public interface RecoveryListener {
+        void crawled(String url);
+
+        /**
+         * @param depth depth the url was added to the frontier with
+         */
+        void pending(String url, int depth);
+    }
+}
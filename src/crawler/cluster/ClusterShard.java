@@ -0,0 +1,606 @@
+package crawler.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shard of a crawl which is split between processes connected over TCP. Hosts are assigned to processes
+ * by a {@link ConsistentHashRing}, urls of other hosts are sent to their owners in batches.
+ * Every process keeps its own seen-set and frontier.
+ * <p>
+ * The end of the crawl is detected by the first process with the four-counter method: it asks everyone
+ * for their state and the numbers of urls they've sent and received. If every process is idle, as many urls
+ * were received as were sent, and two rounds in a row report the same numbers, no url is on its way
+ * and nobody can become busy again. A url is counted as sent once it's written to the socket
+ * and as received once it's handed to the crawl. Every sub-batch carries a sequence number of its sender,
+ * so a batch which is written again after a reconnect is dropped by the receiver instead of being counted twice.
+ */
+public class ClusterShard implements CrawlShard, AutoCloseable {
+    private static final int MAGIC = 0x43524c53;
+    private static final byte URLS = 'U';
+    private static final byte PROBE = 'P';
+    private static final byte REPORT = 'R';
+    private static final byte FINISHED = 'F';
+    private static final byte STOP = 'S';
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long BATCH_DELAY_IN_MILLIS = 5;
+    private static final long PROBE_PERIOD_IN_MILLIS = 100;
+    private static final long PROBE_TIMEOUT_IN_MILLIS = 2000;
+    private static final int CONNECT_TIMEOUT_IN_MILLIS = 1000;
+    private static final long CONNECT_RETRY_DELAY_IN_MILLIS = 200;
+    private static final long CLOSE_TIMEOUT_IN_MILLIS = 2000;
+
+    private final List<InetSocketAddress> nodeAddresses;
+    private final int nodeIndex;
+    private final ConsistentHashRing ring;
+    private final ServerSocket serverSocket;
+    /**
+     * Null at the index of this node
+     */
+    private final PeerSender[] senders;
+    /**
+     * Sequence numbers of the sub-batches received from each node, null at the index of this node
+     */
+    private final ReceivedBatches[] receivedBatches;
+    private final List<Socket> acceptedSockets = new CopyOnWriteArrayList<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final LongAdder sentUrlsNumber = new LongAdder();
+    private final LongAdder receivedUrlsNumber = new LongAdder();
+    /**
+     * Batches which were read but aren't handed to the crawl yet
+     */
+    private final AtomicInteger processedBatchesNumber = new AtomicInteger();
+    private volatile Listener listener;
+    private volatile boolean isStopRequested = false;
+    private volatile boolean isFinished = false;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Reports of the current round, collected by the first node
+     */
+    private final Object roundLock = new Object();
+    private long roundNumber = 0;
+    private NodeReport[] roundReports;
+    private int roundReportsNumber;
+
+    /**
+     * Binds the port of this node. Connections to the other nodes are made in the background
+     * and retried until they're up, so the nodes can be started in any order.
+     *
+     * @param nodeAddresses addresses of all nodes, the same list in every process
+     * @param nodeIndex     index of this process in the list
+     */
+    public ClusterShard(List<InetSocketAddress> nodeAddresses, int nodeIndex) throws IOException {
+        if (nodeIndex < 0 || nodeIndex >= nodeAddresses.size()) {
+            throw new IllegalArgumentException("Node index " + nodeIndex + " isn't in the list of "
+                                                       + nodeAddresses.size() + " nodes");
+        }
+        this.nodeAddresses = List.copyOf(nodeAddresses);
+        this.nodeIndex = nodeIndex;
+        this.ring = new ConsistentHashRing(nodeAddresses.size());
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(nodeAddresses.get(nodeIndex).getPort()));
+        this.senders = new PeerSender[nodeAddresses.size()];
+        this.receivedBatches = new ReceivedBatches[nodeAddresses.size()];
+        for (int i = 0; i < senders.length; i++) {
+            if (i != nodeIndex) {
+                receivedBatches[i] = new ReceivedBatches();
+                senders[i] = new PeerSender(nodeAddresses.get(i));
+                daemonThread(senders[i], "cluster-sender-" + i).start();
+            }
+        }
+        daemonThread(this::acceptConnections, "cluster-acceptor").start();
+        if (nodeIndex == 0) {
+            daemonThread(this::detectFinish, "cluster-termination").start();
+        }
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        started.countDown();
+        if (isStopRequested) {
+            listener.stopRequested();
+        }
+    }
+
+    @Override
+    public boolean owns(String url) {
+        return ring.ownerOfUrl(url) == nodeIndex;
+    }
+
+    @Override
+    public void forward(String url, int depth) {
+        final int owner = ring.ownerOfUrl(url);
+        if (owner != nodeIndex) {
+            senders[owner].send(url, depth);
+        }
+    }
+
+    @Override
+    public boolean isCrawlFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public void stopCrawl() {
+        broadcast(new byte[]{STOP});
+    }
+
+    public int nodesNumber() {
+        return nodeAddresses.size();
+    }
+
+    public long sentUrlsNumber() {
+        return sentUrlsNumber.sum();
+    }
+
+    public long receivedUrlsNumber() {
+        return receivedUrlsNumber.sum();
+    }
+
+    /**
+     * Sends what's queued and closes the connections
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_IN_MILLIS;
+        for (PeerSender sender : senders) {
+            if (sender != null) {
+                sender.closeAfterSending(deadline);
+            }
+        }
+        serverSocket.close();
+        for (Socket socket : acceptedSockets) {
+            socket.close();
+        }
+    }
+
+    private void broadcast(byte[] message) {
+        for (PeerSender sender : senders) {
+            if (sender != null) {
+                sender.sendControl(message);
+            }
+        }
+    }
+
+    /**
+     * The counters are read before and after the state, so the report is what the node was at one instant
+     */
+    private NodeReport report() {
+        final long sentBefore = sentUrlsNumber.sum();
+        final long receivedBefore = receivedUrlsNumber.sum();
+        final Listener currentListener = listener;
+        boolean isIdle = currentListener != null && processedBatchesNumber.get() == 0 && currentListener.isIdle();
+        for (PeerSender sender : senders) {
+            isIdle &= sender == null || sender.isIdle();
+        }
+        final long sent = sentUrlsNumber.sum();
+        final long received = receivedUrlsNumber.sum();
+        return new NodeReport(isIdle && sent == sentBefore && received == receivedBefore, sent, received);
+    }
+
+    /**
+     * Runs on the first node until the crawl is finished
+     */
+    private void detectFinish() {
+        long[] previousCounters = null;
+        try {
+            while (!isClosed && !isFinished) {
+                Thread.sleep(PROBE_PERIOD_IN_MILLIS);
+                final NodeReport[] reports = roundReports();
+                if (reports == null) {
+                    previousCounters = null;
+                    continue;
+                }
+                boolean areAllIdle = true;
+                long sent = 0;
+                long received = 0;
+                final long[] counters = new long[2 * reports.length];
+                for (int i = 0; i < reports.length; i++) {
+                    areAllIdle &= reports[i].isIdle;
+                    sent += reports[i].sentUrlsNumber;
+                    received += reports[i].receivedUrlsNumber;
+                    counters[2 * i] = reports[i].sentUrlsNumber;
+                    counters[2 * i + 1] = reports[i].receivedUrlsNumber;
+                }
+                if (!areAllIdle || sent != received) {
+                    previousCounters = null;
+                } else if (Arrays.equals(counters, previousCounters)) {
+                    broadcast(new byte[]{FINISHED});
+                    isFinished = true;
+                } else {
+                    previousCounters = counters;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return reports of all nodes or null if some node didn't answer in time
+     */
+    private NodeReport[] roundReports() throws InterruptedException {
+        final long round;
+        synchronized (roundLock) {
+            round = ++roundNumber;
+            roundReports = new NodeReport[nodeAddresses.size()];
+            roundReports[nodeIndex] = report();
+            roundReportsNumber = 1;
+        }
+        broadcast(encoded(output -> {
+            output.writeByte(PROBE);
+            output.writeLong(round);
+        }));
+        final long deadline = System.currentTimeMillis() + PROBE_TIMEOUT_IN_MILLIS;
+        synchronized (roundLock) {
+            long remainingMillis;
+            while (roundReportsNumber < roundReports.length
+                    && (remainingMillis = deadline - System.currentTimeMillis()) > 0
+                    && !isClosed) {
+                roundLock.wait(remainingMillis);
+            }
+            return roundReportsNumber == roundReports.length ? roundReports : null;
+        }
+    }
+
+    private void acceptConnections() {
+        while (!isClosed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                acceptedSockets.add(socket);
+                daemonThread(() -> readMessages(socket), "cluster-receiver").start();
+            } catch (IOException e) {
+                if (!isClosed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void readMessages(Socket socket) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            if (input.readInt() != MAGIC) {
+                System.out.println("Closing a connection which isn't from a crawler node: " + socket);
+                return;
+            }
+            final int senderIndex = input.readInt();
+            int type;
+            while ((type = input.read()) != -1) {
+                if (type == URLS) {
+                    receivedUrls(input, senderIndex);
+                } else if (type == PROBE) {
+                    final long round = input.readLong();
+                    final NodeReport report = report();
+                    senders[senderIndex].sendControl(encoded(output -> {
+                        output.writeByte(REPORT);
+                        output.writeLong(round);
+                        output.writeBoolean(report.isIdle);
+                        output.writeLong(report.sentUrlsNumber);
+                        output.writeLong(report.receivedUrlsNumber);
+                    }));
+                } else if (type == REPORT) {
+                    final long round = input.readLong();
+                    final NodeReport report = new NodeReport(input.readBoolean(), input.readLong(), input.readLong());
+                    synchronized (roundLock) {
+                        if (round == roundNumber && roundReports[senderIndex] == null) {
+                            roundReports[senderIndex] = report;
+                            roundReportsNumber++;
+                            roundLock.notifyAll();
+                        }
+                    }
+                } else if (type == FINISHED) {
+                    isFinished = true;
+                } else if (type == STOP) {
+                    isStopRequested = true;
+                    final Listener currentListener = listener;
+                    if (currentListener != null) {
+                        currentListener.stopRequested();
+                    }
+                } else {
+                    throw new IOException("Unknown message type " + type + " from node " + senderIndex);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+//            The other node has closed the connection
+        } catch (IOException e) {
+            if (!isClosed) {
+                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The whole batch is read before it's handed to the crawl, so a batch is either received or not.
+     * A batch which was already received on a broken connection is read and dropped.
+     */
+    private void receivedUrls(DataInputStream input, int senderIndex) throws IOException, InterruptedException {
+        final long sequenceNumber = input.readLong();
+        final int urlsNumber = input.readInt();
+        final String[] urls = new String[urlsNumber];
+        final int[] depths = new int[urlsNumber];
+        for (int i = 0; i < urlsNumber; i++) {
+            depths[i] = input.readInt();
+            urls[i] = readString(input);
+        }
+        if (!receivedBatches[senderIndex].isNew(sequenceNumber)) {
+            return;
+        }
+        started.await();
+        processedBatchesNumber.incrementAndGet();
+        try {
+            for (int i = 0; i < urlsNumber; i++) {
+                listener.received(urls[i], depths[i]);
+            }
+            receivedUrlsNumber.add(urlsNumber);
+        } finally {
+            processedBatchesNumber.decrementAndGet();
+        }
+    }
+
+    private static byte[] encoded(MessageEncoder encoder) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            encoder.encode(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream output, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Broken string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Thread daemonThread(Runnable runnable, String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    private interface MessageEncoder {
+        void encode(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Sequence numbers received from one node. A reader of a broken connection may still be handing
+     * its last batches to the crawl while the new connection brings them again, so the numbers
+     * can arrive out of order.
+     */
+    private static class ReceivedBatches {
+        /**
+         * Every sequence number up to this one is received
+         */
+        private long lastContiguousNumber = 0;
+        private final Set<Long> numbersAfterGap = new HashSet<>();
+
+        /**
+         * @return true if the sub-batch with this number wasn't received before
+         */
+        synchronized boolean isNew(long sequenceNumber) {
+            if (sequenceNumber <= lastContiguousNumber || !numbersAfterGap.add(sequenceNumber)) {
+                return false;
+            }
+            while (numbersAfterGap.remove(lastContiguousNumber + 1)) {
+                lastContiguousNumber++;
+            }
+            return true;
+        }
+    }
+
+    private static class NodeReport {
+        final boolean isIdle;
+        final long sentUrlsNumber;
+        final long receivedUrlsNumber;
+
+        NodeReport(boolean isIdle, long sentUrlsNumber, long receivedUrlsNumber) {
+            this.isIdle = isIdle;
+            this.sentUrlsNumber = sentUrlsNumber;
+            this.receivedUrlsNumber = receivedUrlsNumber;
+        }
+    }
+
+    /**
+     * Connection to another node. Urls are queued and written by its own thread in batches,
+     * so workers never wait for the network. Control messages are written before the next batch.
+     */
+    private class PeerSender implements Runnable {
+        private final InetSocketAddress address;
+        private List<String> urls = new ArrayList<>();
+        private List<Integer> depths = new ArrayList<>();
+        private List<byte[]> controlMessages = new ArrayList<>();
+        private boolean isWriting = false;
+        private int writtenUrlsNumber = 0;
+        private boolean isClosing = false;
+        private long nextSequenceNumber = 1;
+        private Socket socket;
+        private DataOutputStream output;
+
+        PeerSender(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        synchronized void send(String url, int depth) {
+            urls.add(url);
+            depths.add(depth);
+            if (urls.size() == 1 || urls.size() >= MAX_BATCH_SIZE) {
+                notifyAll();
+            }
+        }
+
+        synchronized void sendControl(byte[] message) {
+            controlMessages.add(message);
+            notifyAll();
+        }
+
+        /**
+         * @return true if no url is queued or being written
+         */
+        synchronized boolean isIdle() {
+            return urls.isEmpty() && writtenUrlsNumber == 0;
+        }
+
+        void closeAfterSending(long deadline) throws IOException {
+            synchronized (this) {
+                isClosing = true;
+                notifyAll();
+                long remainingMillis;
+                while ((isWriting || !urls.isEmpty() || !controlMessages.isEmpty())
+                        && (remainingMillis = deadline - System.currentTimeMillis()) > 0) {
+                    try {
+                        wait(remainingMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            final Socket currentSocket = socket;
+            if (currentSocket != null) {
+                currentSocket.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final List<String> batchUrls;
+                    final List<Integer> batchDepths;
+                    final List<byte[]> batchControlMessages;
+                    synchronized (this) {
+                        while (urls.isEmpty() && controlMessages.isEmpty() && !isClosing) {
+                            wait();
+                        }
+                        if (urls.isEmpty() && controlMessages.isEmpty()) {
+                            return;
+                        }
+//                        Let a batch fill up unless something else is waiting
+                        if (controlMessages.isEmpty() && urls.size() < MAX_BATCH_SIZE && !isClosing) {
+                            wait(BATCH_DELAY_IN_MILLIS);
+                        }
+                        batchUrls = urls;
+                        batchDepths = depths;
+                        batchControlMessages = controlMessages;
+                        urls = new ArrayList<>();
+                        depths = new ArrayList<>();
+                        controlMessages = new ArrayList<>();
+                        isWriting = true;
+                        writtenUrlsNumber = batchUrls.size();
+                    }
+                    try {
+                        written(batchUrls, batchDepths, batchControlMessages);
+                    } finally {
+                        synchronized (this) {
+                            isWriting = false;
+                            writtenUrlsNumber = 0;
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Reconnects and writes everything again if the connection breaks. Sub-batches keep their
+         * sequence numbers when they're written again, so the receiver drops the ones it has already got.
+         */
+        private void written(List<String> batchUrls,
+                             List<Integer> batchDepths,
+                             List<byte[]> batchControlMessages) throws InterruptedException {
+            final long firstSequenceNumber = nextSequenceNumber;
+            nextSequenceNumber += (batchUrls.size() + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE;
+            while (true) {
+                try {
+                    if (output == null) {
+                        connect();
+                    }
+                    for (byte[] message : batchControlMessages) {
+                        output.write(message);
+                    }
+                    for (int from = 0; from < batchUrls.size(); from += MAX_BATCH_SIZE) {
+                        final int to = Math.min(batchUrls.size(), from + MAX_BATCH_SIZE);
+                        output.writeByte(URLS);
+                        output.writeLong(firstSequenceNumber + from / MAX_BATCH_SIZE);
+                        output.writeInt(to - from);
+                        for (int i = from; i < to; i++) {
+                            output.writeInt(batchDepths.get(i));
+                            writeString(output, batchUrls.get(i));
+                        }
+                    }
+                    output.flush();
+                    sentUrlsNumber.add(batchUrls.size());
+                    return;
+                } catch (IOException e) {
+                    output = null;
+                    if (isClosed) {
+                        return;
+                    }
+                    System.out.println("Connection to " + address + " failed, reconnecting: " + e);
+                    Thread.sleep(CONNECT_RETRY_DELAY_IN_MILLIS);
+                }
+            }
+        }
+
+        private void connect() throws IOException, InterruptedException {
+            while (true) {
+                final Socket newSocket = new Socket();
+                try {
+                    newSocket.setTcpNoDelay(true);
+                    newSocket.connect(address, CONNECT_TIMEOUT_IN_MILLIS);
+                    socket = newSocket;
+                    output = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream(), 1 << 16));
+                    output.writeInt(MAGIC);
+                    output.writeInt(nodeIndex);
+                    return;
+                } catch (IOException e) {
+                    newSocket.close();
+                    if (isClosed) {
+                        throw e;
+                    }
+                    Thread.sleep(CONNECT_RETRY_DELAY_IN_MILLIS);
+                }
+            }
+        }
+    }
+}
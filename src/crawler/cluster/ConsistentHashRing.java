@@ -0,0 +1,74 @@
+package crawler.cluster;
+
+import crawler.dedup.UrlFingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Assigns hosts to nodes. Every node has many points on the ring, so hosts are spread evenly,
+ * and adding a node moves only about 1/n of the hosts.
+ */
+public class ConsistentHashRing {
+    public static final int DEFAULT_POINTS_PER_NODE = 128;
+
+    private final long[] points;
+    private final int[] pointOwners;
+
+    public ConsistentHashRing(int nodesNumber) {
+        this(nodesNumber, DEFAULT_POINTS_PER_NODE);
+    }
+
+    public ConsistentHashRing(int nodesNumber, int pointsPerNode) {
+        if (nodesNumber <= 0 || pointsPerNode <= 0) {
+            throw new IllegalArgumentException("The ring needs at least one node and one point per node");
+        }
+        final long[][] ownedPoints = new long[nodesNumber * pointsPerNode][];
+        for (int node = 0; node < nodesNumber; node++) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                ownedPoints[node * pointsPerNode + point] =
+                        new long[]{UrlFingerprint.of("node-" + node + "#" + point), node};
+            }
+        }
+        Arrays.sort(ownedPoints, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[ownedPoints.length];
+        pointOwners = new int[ownedPoints.length];
+        for (int i = 0; i < ownedPoints.length; i++) {
+            points[i] = ownedPoints[i][0];
+            pointOwners[i] = (int) ownedPoints[i][1];
+        }
+    }
+
+    /**
+     * @return index of the node which owns the host: the owner of the first point at or after the host's hash
+     */
+    public int ownerOf(CharSequence host) {
+        final int index = Arrays.binarySearch(points, UrlFingerprint.of(host));
+        final int pointIndex = index >= 0 ? index : -index - 1;
+        return pointOwners[pointIndex == points.length ? 0 : pointIndex];
+    }
+
+    /**
+     * @return index of the node which owns the host of the url. The url is expected to be absolute and lowercase
+     * like the ones of {@link crawler.utilities.UrlCanonicalizer}
+     */
+    public int ownerOfUrl(String url) {
+        return ownerOf(host(url));
+    }
+
+    static String host(String url) {
+        final int schemeEnd = url.indexOf("://");
+        final int authorityStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < url.length() && "/?#".indexOf(url.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        final int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        int hostEnd = authorityEnd;
+        final int bracketEnd = url.lastIndexOf(']', authorityEnd - 1);
+        final int portStart = url.lastIndexOf(':', authorityEnd - 1);
+        if (portStart > bracketEnd && portStart >= Math.max(hostStart, authorityStart)) {
+            hostEnd = portStart;
+        }
+        return url.substring(Math.max(hostStart, authorityStart), hostEnd);
+    }
+}
@@ -0,0 +1,49 @@
+package crawler.cluster;
+
+/**
+ * Part of a crawl which is split between processes. Each process crawls the hosts it owns
+ * and forwards the urls of other hosts to their owners.
+ */
+public interface CrawlShard {
+    /**
+     * Called by the crawl once its frontier is ready. Urls received before that wait for it.
+     */
+    void start(Listener listener);
+
+    /**
+     * @param url canonical url
+     */
+    boolean owns(String url);
+
+    /**
+     * Sends the url to the process which owns it
+     */
+    void forward(String url, int depth);
+
+    /**
+     * @return true once every process is idle and no url is on its way between them
+     */
+    boolean isCrawlFinished();
+
+    /**
+     * Asks every process to stop crawling
+     */
+    void stopCrawl();
+
+    interface Listener {
+        /**
+         * Called with urls which other processes forwarded to this one
+         */
+        void received(String url, int depth);
+
+        /**
+         * @return true if the process has nothing to crawl or has stopped crawling
+         */
+        boolean isIdle();
+
+        /**
+         * Called when another process asked to stop crawling
+         */
+        void stopRequested();
+    }
+}
@@ -0,0 +1,98 @@
+package crawler.concurrency;
+
+import java.util.Arrays;
+
+/**
+ * Limit of requests in flight tuned the way TCP tunes its congestion window. Completed requests are judged
+ * in windows of about limit requests, which is about one round trip of everything in flight:
+ * <ul>
+ *     <li>if too many requests of the window were dropped (timeouts, resets, 429, 503), the limit is cut by 30%</li>
+ *     <li>else if the 90th percentile latency is more than twice the usual one, the limit is cut by 10%</li>
+ *     <li>else if the limit was reached during the window, it grows: it doubles until the first cut
+ *     (slow start) and then grows by 1</li>
+ * </ul>
+ * The usual latency is the lowest 90th percentile seen, it creeps up by 2% a window, so a server which
+ * became slower for good is not punished forever.
+ * <p>
+ * Thread-safe.
+ */
+public class AimdLimit {
+    private static final int MIN_WINDOW_SAMPLES_NUMBER = 20;
+    private static final double MAX_DROP_RATE = 0.05;
+    private static final double DROP_BACKOFF_RATIO = 0.7;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_CREEP_RATIO = 1.02;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long[] windowLatencies;
+    private double limit;
+    private boolean isSlowStart = true;
+    private int windowSamplesNumber;
+    private int windowDropsNumber;
+    private boolean wasLimitReached;
+    private long baselineLatencyInNanos = Long.MAX_VALUE;
+
+    /**
+     * The limit starts from the minimum
+     */
+    public AimdLimit(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be 1 <= min <= max: " + minLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = minLimit;
+        this.windowLatencies = new long[Math.max(MIN_WINDOW_SAMPLES_NUMBER, maxLimit)];
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * @param inFlightNumber requests in flight when this one was sent, including it
+     * @param isDropped      if the request failed in a way which tells the server is overloaded
+     */
+    public synchronized void onSample(long latencyInNanos, int inFlightNumber, boolean isDropped) {
+        windowLatencies[windowSamplesNumber++] = latencyInNanos;
+        if (isDropped) {
+            windowDropsNumber++;
+        }
+        if (inFlightNumber >= (int) limit) {
+            wasLimitReached = true;
+        }
+        if (windowSamplesNumber >= Math.min(windowLatencies.length,
+                                            Math.max(MIN_WINDOW_SAMPLES_NUMBER, (int) limit))) {
+            closeWindow();
+        }
+    }
+
+    private void closeWindow() {
+        Arrays.sort(windowLatencies, 0, windowSamplesNumber);
+        final long p90LatencyInNanos = windowLatencies[(int) (windowSamplesNumber * 0.9)];
+        if (windowDropsNumber > windowSamplesNumber * MAX_DROP_RATE) {
+            decrease(DROP_BACKOFF_RATIO);
+        } else if (baselineLatencyInNanos != Long.MAX_VALUE
+                && p90LatencyInNanos > baselineLatencyInNanos * LATENCY_TOLERANCE) {
+            decrease(LATENCY_BACKOFF_RATIO);
+        } else if (wasLimitReached) {
+            limit = Math.min(maxLimit, isSlowStart ? limit * 2 : limit + 1);
+        }
+//        Latencies of a window with drops are those of failures, they don't tell the usual latency
+        if (windowDropsNumber == 0) {
+            baselineLatencyInNanos = baselineLatencyInNanos == Long.MAX_VALUE ?
+                    p90LatencyInNanos :
+                    Math.min(p90LatencyInNanos, (long) (baselineLatencyInNanos * BASELINE_CREEP_RATIO));
+        }
+        windowSamplesNumber = 0;
+        windowDropsNumber = 0;
+        wasLimitReached = false;
+    }
+
+    private void decrease(double ratio) {
+        isSlowStart = false;
+        limit = Math.max(minLimit, limit * ratio);
+    }
+}
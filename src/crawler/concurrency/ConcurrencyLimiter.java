@@ -0,0 +1,143 @@
+package crawler.concurrency;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets through as many fetches at once as the crawl-wide {@link AimdLimit} allows. Optionally keeps
+ * an {@link AimdLimit} per host as well, which a per-host frontier can consult before handing out a url
+ * (see {@link crawler.politeness.PoliteFrontier}): waiting here for a busy host would block urls of other hosts.
+ * A limiter serves one crawl: once {@link #abort()} is called, no more fetches are let through.
+ */
+public class ConcurrencyLimiter {
+    private static final int MAX_TRACKED_HOSTS_NUMBER = 100_000;
+
+    private final AimdLimit limit;
+    private final int maxConnectionsPerHost;
+    private final Map<String, HostState> hostStates = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition isBelowLimit = lock.newCondition();
+    private int inFlightNumber;
+    private boolean isAborted;
+
+    /**
+     * Only the number of fetches of the whole crawl is limited
+     */
+    public ConcurrencyLimiter(int minLimit, int maxLimit) {
+        this(minLimit, maxLimit, 0);
+    }
+
+    /**
+     * @param maxConnectionsPerHost upper bound of the per-host limits, 0 if hosts aren't limited separately
+     */
+    public ConcurrencyLimiter(int minLimit, int maxLimit, int maxConnectionsPerHost) {
+        this.limit = new AimdLimit(minLimit, maxLimit);
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Waits until a fetch can be sent. It doesn't wait for the host, its limit is only counted
+     *
+     * @param host key of the host, see {@link crawler.politeness.RobotsTxtCache#hostKey}
+     * @return fetches in flight including this one, to be passed to {@link #release}
+     * @throws CancellationException if the limiter was aborted before or while waiting
+     */
+    public int acquire(String host) throws InterruptedException {
+        final int acquiredInFlight;
+        lock.lockInterruptibly();
+        try {
+            while (!isAborted && inFlightNumber >= limit.limit()) {
+                isBelowLimit.await();
+            }
+            if (isAborted) {
+                throw new CancellationException("The fetches were aborted");
+            }
+            acquiredInFlight = ++inFlightNumber;
+        } finally {
+            lock.unlock();
+        }
+        if (maxConnectionsPerHost > 0) {
+            if (hostStates.size() > MAX_TRACKED_HOSTS_NUMBER) {
+                hostStates.clear();
+            }
+            hostStates.computeIfAbsent(host, key -> new HostState(maxConnectionsPerHost)).inFlightNumber
+                    .incrementAndGet();
+        }
+        return acquiredInFlight;
+    }
+
+    /**
+     * Called when a fetch which was let through is done
+     *
+     * @param acquiredInFlight what {@link #acquire} returned
+     * @param isDropped        if the fetch failed in a way which tells the server is overloaded
+     */
+    public void release(String host, int acquiredInFlight, long latencyInNanos, boolean isDropped) {
+        limit.onSample(latencyInNanos, acquiredInFlight, isDropped);
+        if (maxConnectionsPerHost > 0) {
+//            The state is new if the hosts were forgotten meanwhile
+            final HostState hostState = hostStates.computeIfAbsent(host, key -> new HostState(maxConnectionsPerHost));
+            hostState.limit.onSample(latencyInNanos,
+                                     Math.max(1, hostState.inFlightNumber.getAndUpdate(n -> Math.max(0, n - 1))),
+                                     isDropped);
+        }
+        lock.lock();
+        try {
+            inFlightNumber--;
+//            The limit may have grown by more than one
+            isBelowLimit.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fails the waiting and the future calls of {@link #acquire}, so a stopped crawl doesn't start new fetches
+     */
+    public void abort() {
+        lock.lock();
+        try {
+            isAborted = true;
+            isBelowLimit.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many fetches of the host may be in flight, Integer.MAX_VALUE if hosts aren't limited separately
+     */
+    public int hostLimit(String host) {
+        if (maxConnectionsPerHost == 0) {
+            return Integer.MAX_VALUE;
+        }
+        final HostState hostState = hostStates.get(host);
+        return hostState != null ? hostState.limit.limit() : 1;
+    }
+
+    public int limit() {
+        return limit.limit();
+    }
+
+    public int inFlightNumber() {
+        lock.lock();
+        try {
+            return inFlightNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class HostState {
+        private final AimdLimit limit;
+        private final AtomicInteger inFlightNumber = new AtomicInteger();
+
+        HostState(int maxConnectionsNumber) {
+            this.limit = new AimdLimit(1, maxConnectionsNumber);
+        }
+    }
+}
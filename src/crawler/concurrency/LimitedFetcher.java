@@ -0,0 +1,119 @@
+package crawler.concurrency;
+
+import crawler.fetching.FetchedPage;
+import crawler.fetching.PageFetcher;
+import crawler.fetching.Validators;
+import crawler.politeness.RobotsTxtCache;
+import crawler.utilities.HtmlPageScanner;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Fetcher which sends a request only when the {@link ConcurrencyLimiter} lets it through, and tells the limiter
+ * how long the request took and whether the server looked overloaded. The calling worker waits for its turn.
+ * After {@link #abortInFlight()} no request is sent anymore, and the aborted ones don't count as overload.
+ */
+public class LimitedFetcher implements PageFetcher {
+    private static final int TOO_MANY_REQUESTS_STATUS_CODE = 429;
+    private static final int SERVICE_UNAVAILABLE_STATUS_CODE = 503;
+
+    private final PageFetcher fetcher;
+    private final ConcurrencyLimiter limiter;
+    private volatile boolean isAborted;
+
+    public LimitedFetcher(PageFetcher fetcher, ConcurrencyLimiter limiter) {
+        this.fetcher = fetcher;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url) {
+        return limited(url, () -> fetcher.fetch(url));
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url, Predicate<HtmlPageScanner> hasEnough, boolean isBodyNeeded) {
+        return limited(url, () -> fetcher.fetch(url, hasEnough, isBodyNeeded));
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url,
+                                                Predicate<HtmlPageScanner> hasEnough,
+                                                boolean isBodyNeeded,
+                                                Validators cachedValidators) {
+        return limited(url, () -> fetcher.fetch(url, hasEnough, isBodyNeeded, cachedValidators));
+    }
+
+    @Override
+    public void abortInFlight() {
+        isAborted = true;
+        limiter.abort();
+        fetcher.abortInFlight();
+    }
+
+    @Override
+    public String toString() {
+        return fetcher + " with an adaptive concurrency limit";
+    }
+
+    private CompletableFuture<FetchedPage> limited(URL url, Supplier<CompletableFuture<FetchedPage>> fetch) {
+        final String host = RobotsTxtCache.hostKey(url);
+        final int acquiredInFlight;
+        try {
+            acquiredInFlight = limiter.acquire(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (CancellationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final long startTime = System.nanoTime();
+        final CompletableFuture<FetchedPage> page;
+        try {
+            page = fetch.get();
+        } catch (RuntimeException e) {
+            limiter.release(host, acquiredInFlight, System.nanoTime() - startTime, false);
+            throw e;
+        }
+//        An aborted fetch fails with a closed connection, which isn't the server's fault
+        return page.whenComplete((fetchedPage, failure) -> limiter.release(
+                host,
+                acquiredInFlight,
+                System.nanoTime() - startTime,
+                !isAborted && isOverloaded(fetchedPage, failure)));
+    }
+
+    /**
+     * Timeouts and refused or reset connections count as well as the status codes of an overloaded server.
+     * Other failures like 404 or 500 don't depend on the load.
+     */
+    private static boolean isOverloaded(FetchedPage page, Throwable failure) {
+        if (failure == null) {
+            return isOverloadStatusCode(page.statusCode);
+        }
+        final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                failure.getCause() :
+                failure;
+        if (cause instanceof SocketTimeoutException
+                || cause instanceof HttpTimeoutException
+                || cause instanceof SocketException) {
+            return true;
+        }
+//        HttpURLConnection fails on error pages with the status code only in the message
+        final String message = cause.getMessage();
+        return message != null && (message.contains("code: " + TOO_MANY_REQUESTS_STATUS_CODE)
+                || message.contains("code: " + SERVICE_UNAVAILABLE_STATUS_CODE));
+    }
+
+    private static boolean isOverloadStatusCode(int statusCode) {
+        return statusCode == TOO_MANY_REQUESTS_STATUS_CODE || statusCode == SERVICE_UNAVAILABLE_STATUS_CODE;
+    }
+}
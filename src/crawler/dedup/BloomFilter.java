@@ -0,0 +1,58 @@
+package crawler.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent Bloom filter over 64-bit fingerprints. A negative answer is always right, a positive one is wrong
+ * with roughly the configured probability as long as no more than the expected number of values is put.
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitsNumber;
+    private final int hashFunctionsNumber;
+
+    public BloomFilter(long expectedValuesNumber, double falsePositiveProbability) {
+        final long optimalBitsNumber = (long) Math.ceil(
+                -expectedValuesNumber * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        final int wordsNumber = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBitsNumber + 63) / 64));
+        this.bits = new AtomicLongArray(wordsNumber);
+        this.bitsNumber = wordsNumber * 64L;
+        this.hashFunctionsNumber = Math.max(1, (int) Math.round(
+                (double) bitsNumber / expectedValuesNumber * Math.log(2)));
+    }
+
+    public void put(long fingerprint) {
+        final long secondHash = secondHash(fingerprint);
+        for (int i = 0; i < hashFunctionsNumber; i++) {
+            final long bitIndex = bitIndex(fingerprint, secondHash, i);
+            final int wordIndex = (int) (bitIndex >>> 6);
+            final long mask = 1L << bitIndex;
+            long word;
+            while (((word = bits.get(wordIndex)) & mask) == 0 && !bits.compareAndSet(wordIndex, word, word | mask)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public boolean mightContain(long fingerprint) {
+        final long secondHash = secondHash(fingerprint);
+        for (int i = 0; i < hashFunctionsNumber; i++) {
+            final long bitIndex = bitIndex(fingerprint, secondHash, i);
+            if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double hashing: the k-th index is h1 + k * h2 where both hashes come from one fingerprint.
+     */
+    private long bitIndex(long fingerprint, long secondHash, int i) {
+        return Math.floorMod(fingerprint + i * secondHash, bitsNumber);
+    }
+
+    private static long secondHash(long fingerprint) {
+        return UrlFingerprint.mixed(fingerprint) | 1;
+    }
+}
@@ -0,0 +1,153 @@
+package crawler.dedup;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Set of non-zero longs in open-addressing tables without any per-entry objects. A slot takes 8 bytes
+ * and tables are kept at most 70% full, so an entry costs about 11 bytes in a full table and 23 right after
+ * it has grown. The set is split into segments, so writers of different segments
+ * don't block each other, and readers only validate an optimistic stamp.
+ */
+public class ConcurrentLongHashSet {
+    private static final int SEGMENTS_NUMBER = 64;
+    private static final float MAX_LOAD_FACTOR = 0.7f;
+
+    private final Segment[] segments = new Segment[SEGMENTS_NUMBER];
+
+    public ConcurrentLongHashSet() {
+        this(1 << 16);
+    }
+
+    public ConcurrentLongHashSet(int expectedSize) {
+        final int segmentCapacity = tableSizeFor((int) (expectedSize / SEGMENTS_NUMBER / MAX_LOAD_FACTOR) + 1);
+        for (int i = 0; i < SEGMENTS_NUMBER; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * @return true if the value wasn't in the set
+     */
+    public boolean add(long value) {
+        checkNotZero(value);
+        return segmentFor(value).add(value);
+    }
+
+    public boolean contains(long value) {
+        checkNotZero(value);
+        return segmentFor(value).contains(value);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Top bits choose the segment, bottom bits choose the slot, so both are independent.
+     */
+    private Segment segmentFor(long value) {
+        return segments[(int) (value >>> 58)];
+    }
+
+    private static void checkNotZero(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("0 can't be stored in the set");
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+    }
+
+    private static class Segment {
+        private final StampedLock lock = new StampedLock();
+        private long[] table;
+        private int size;
+
+        Segment(int capacity) {
+            table = new long[capacity];
+        }
+
+        boolean contains(long value) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                final boolean isFound = isIn(table, value);
+                if (lock.validate(stamp)) {
+                    return isFound;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return isIn(table, value);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        boolean add(long value) {
+            final long stamp = lock.writeLock();
+            try {
+                if (!insertedInto(table, value)) {
+                    return false;
+                }
+                size++;
+                if (size > table.length * MAX_LOAD_FACTOR) {
+                    grow();
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            final long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void grow() {
+            final long[] grownTable = new long[table.length * 2];
+            for (long value : table) {
+                if (value != 0) {
+                    insertedInto(grownTable, value);
+                }
+            }
+            table = grownTable;
+        }
+
+        private static boolean isIn(long[] table, long value) {
+            final int mask = table.length - 1;
+            for (int i = (int) value & mask; ; i = (i + 1) & mask) {
+                final long slot = table[i];
+                if (slot == value) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        private static boolean insertedInto(long[] table, long value) {
+            final int mask = table.length - 1;
+            for (int i = (int) value & mask; ; i = (i + 1) & mask) {
+                final long slot = table[i];
+                if (slot == value) {
+                    return false;
+                }
+                if (slot == 0) {
+                    table[i] = value;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package crawler.dedup;
+
+/**
+ * Seen-set which keeps 64-bit fingerprints of urls instead of the urls themselves.
+ * An optional Bloom filter in front answers most checks of new urls without touching the table.
+ * Crawls use the default constructor, without the filter; only the seen-set benchmark turns it on.
+ */
+public class FingerprintSeenUrls implements SeenUrls {
+    private final ConcurrentLongHashSet fingerprints;
+    private final BloomFilter bloomFilter;
+
+    public FingerprintSeenUrls() {
+        this(1 << 16, false);
+    }
+
+    /**
+     * @param expectedUrlsNumber used to size the table and the Bloom filter; the table grows if it's exceeded
+     */
+    public FingerprintSeenUrls(int expectedUrlsNumber, boolean useBloomFilter) {
+        this.fingerprints = new ConcurrentLongHashSet(expectedUrlsNumber);
+        this.bloomFilter = useBloomFilter ? new BloomFilter(expectedUrlsNumber, 0.01) : null;
+    }
+
+    @Override
+    public boolean markSeen(CharSequence url) {
+        final long fingerprint = UrlFingerprint.of(url);
+        if (isSeen(fingerprint)) {
+            return false;
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(fingerprint);
+        }
+        return fingerprints.add(fingerprint);
+    }
+
+    @Override
+    public boolean isSeen(CharSequence url) {
+        return isSeen(UrlFingerprint.of(url));
+    }
+
+    /**
+     * The table stays the source of truth: a concurrent add can be in the table before it's in the Bloom filter,
+     * but then the following add to the table reports it.
+     */
+    public boolean isSeen(long fingerprint) {
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        return fingerprints.contains(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        return fingerprints.size();
+    }
+}
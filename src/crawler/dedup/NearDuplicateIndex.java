@@ -0,0 +1,104 @@
+package crawler.dedup;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fingerprints of crawled pages, see {@link TextSimHash}, searchable by Hamming distance.
+ * A fingerprint is split into 4 bands of 16 bits and is kept in the bucket of every band value.
+ * Two fingerprints which differ in at most 3 bits have at least one band in common, so only
+ * the 4 buckets of a fingerprint are compared with it.
+ * <p>
+ * Safe to be used by many workers: lookups share a read lock, adding takes the write lock and checks again.
+ */
+public class NearDuplicateIndex {
+    public static final int DEFAULT_MAX_DISTANCE = 3;
+    private static final int BANDS_NUMBER = 4;
+    private static final int BAND_BITS = Long.SIZE / BANDS_NUMBER;
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+    private final int maxDistance;
+    private final long[][] buckets = new long[BANDS_NUMBER << BAND_BITS][];
+    private final int[] bucketSizes = new int[BANDS_NUMBER << BAND_BITS];
+    private final StampedLock lock = new StampedLock();
+    private long size;
+
+    public NearDuplicateIndex() {
+        this(DEFAULT_MAX_DISTANCE);
+    }
+
+    /**
+     * @param maxDistance pages whose fingerprints differ in at most that many bits are near duplicates, 0 to 3
+     */
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance >= BANDS_NUMBER) {
+            throw new IllegalArgumentException("Max distance must be between 0 and " + (BANDS_NUMBER - 1));
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return true if no near duplicate of the fingerprint was added before and the fingerprint is added now
+     */
+    public boolean markSeen(long fingerprint) {
+        long stamp = lock.readLock();
+        try {
+            if (hasNearDuplicate(fingerprint)) {
+                return false;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = lock.writeLock();
+        try {
+            if (hasNearDuplicate(fingerprint)) {
+                return false;
+            }
+            for (int band = 0; band < BANDS_NUMBER; band++) {
+                add(bucketIndex(fingerprint, band), fingerprint);
+            }
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean hasNearDuplicate(long fingerprint) {
+        for (int band = 0; band < BANDS_NUMBER; band++) {
+            final int bucketIndex = bucketIndex(fingerprint, band);
+            final long[] bucket = buckets[bucketIndex];
+            for (int i = 0, bucketSize = bucketSizes[bucketIndex]; i < bucketSize; i++) {
+                if (TextSimHash.distance(bucket[i], fingerprint) <= maxDistance) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public long size() {
+        final long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void add(int bucketIndex, long fingerprint) {
+        long[] bucket = buckets[bucketIndex];
+        final int bucketSize = bucketSizes[bucketIndex];
+        if (bucket == null) {
+            bucket = buckets[bucketIndex] = new long[INITIAL_BUCKET_CAPACITY];
+        } else if (bucketSize == bucket.length) {
+            bucket = buckets[bucketIndex] = Arrays.copyOf(bucket, bucketSize * 2);
+        }
+        bucket[bucketSize] = fingerprint;
+        bucketSizes[bucketIndex] = bucketSize + 1;
+    }
+
+    private static int bucketIndex(long fingerprint, int band) {
+        return (band << BAND_BITS) | (int) ((fingerprint >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1));
+    }
+}
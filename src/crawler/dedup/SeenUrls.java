@@ -0,0 +1,15 @@
+package crawler.dedup;
+
+/**
+ * Set of urls which were already handed out to the crawl. Implementations must be safe to use from several workers.
+ */
+public interface SeenUrls {
+    /**
+     * @return true if the url wasn't seen before and is marked as seen now
+     */
+    boolean markSeen(CharSequence url);
+
+    boolean isSeen(CharSequence url);
+
+    long size();
+}
@@ -0,0 +1,90 @@
+package crawler.dedup;
+
+/**
+ * Charikar's SimHash of the visible text of a page, built char by char while the page is scanned.
+ * Features are pairs of adjacent words weighted by how often they occur, so pages which share most of
+ * their text get fingerprints which differ in a few bits. Not thread-safe.
+ */
+public class TextSimHash {
+    /**
+     * Pages with fewer words don't get a fingerprint: short pages look alike without being copies
+     */
+    public static final int MIN_WORDS_NUMBER = 16;
+    private static final int MAX_HASHED_WORD_LENGTH = 64;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] bitWeights = new int[Long.SIZE];
+    private long wordHash = FNV_OFFSET_BASIS;
+    private int wordLength;
+    private long previousWordHash;
+    private int wordsNumber;
+
+    /**
+     * Words are runs of letters and digits, case is ignored
+     */
+    public void accept(char c) {
+        if (isWordChar(c)) {
+            if (wordLength < MAX_HASHED_WORD_LENGTH) {
+                wordHash ^= Character.toLowerCase(c);
+                wordHash *= FNV_PRIME;
+            }
+            wordLength++;
+        } else if (wordLength > 0) {
+            endWord();
+        }
+    }
+
+    /**
+     * Ends the current word, e.g. at a tag
+     */
+    public void breakWord() {
+        if (wordLength > 0) {
+            endWord();
+        }
+    }
+
+    /**
+     * @return 0 if the text has fewer than {@link #MIN_WORDS_NUMBER} words, a non-zero fingerprint otherwise
+     */
+    public long fingerprint() {
+        breakWord();
+        if (wordsNumber < MIN_WORDS_NUMBER) {
+            return 0;
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (bitWeights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint != 0 ? fingerprint : 1;
+    }
+
+    public static int distance(long fingerprint, long otherFingerprint) {
+        return Long.bitCount(fingerprint ^ otherFingerprint);
+    }
+
+    private void endWord() {
+        if (wordsNumber > 0) {
+            addFeature(UrlFingerprint.mixed(previousWordHash * FNV_PRIME + wordHash));
+        }
+        previousWordHash = wordHash;
+        wordsNumber++;
+        wordHash = FNV_OFFSET_BASIS;
+        wordLength = 0;
+    }
+
+    private void addFeature(long featureHash) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            bitWeights[bit] += (int) ((featureHash >>> bit) & 1) * 2 - 1;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        if (c < 128) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+        return Character.isLetterOrDigit(c);
+    }
+}
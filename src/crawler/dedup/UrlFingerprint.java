@@ -0,0 +1,36 @@
+package crawler.dedup;
+
+/**
+ * 64-bit fingerprints of urls. With 64 bits a collision among 100 million urls has a probability below 0.1%,
+ * so a fingerprint can stand in for the url itself.
+ */
+public class UrlFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * FNV-1a over the chars followed by the MurmurHash3 finalizer, which spreads the bits of similar urls.
+     * The result is never 0, so 0 can mark empty slots in hash tables.
+     */
+    public static long of(CharSequence url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, length = url.length(); i < length; i++) {
+            final char c = url.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        final long mixed = mixed(hash);
+        return mixed != 0 ? mixed : 1;
+    }
+
+    static long mixed(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,283 @@
+package crawler.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Crawler-owned host lookups with a TTL, negative caching and a pool of resolver threads, so workers
+ * don't block on slow resolvers. Hosts are meant to be prefetched when their urls enter the frontier,
+ * see {@link crawler.frontier.DnsPrefetchingFrontier}. A lookup of a host which is being resolved
+ * waits for the running lookup instead of starting another one.
+ * <p>
+ * Lookups a worker waits for run before prefetches, even if the host was already queued for a prefetch.
+ * At most maxQueuedPrefetchesNumber prefetches wait for a thread, the ones beyond that are dropped
+ * and the host is looked up when a worker needs it.
+ * <p>
+ * Connections are still opened by the JDK, which resolves the host again, but the system resolver
+ * keeps its own cache for a while (networkaddress.cache.ttl), so after a prefetch that lookup is a cache hit.
+ */
+public class DnsCache implements AutoCloseable {
+    public static final long DEFAULT_TTL_IN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_NEGATIVE_TTL_IN_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * Expired hosts are purged once the cache has more hosts than that
+     */
+    private static final int PURGE_THRESHOLD = 100_000;
+    private static final int DEFAULT_MAX_QUEUED_PREFETCHES_NUMBER = 10_000;
+
+    private final HostResolver resolver;
+    private final long ttlInMillis;
+    private final long negativeTtlInMillis;
+    private final LongSupplier clockInMillis;
+    private final int maxQueuedPrefetchesNumber;
+    private final ThreadPoolExecutor resolverThreads;
+    private final AtomicInteger queuedPrefetchesNumber = new AtomicInteger();
+    private final AtomicLong lookupsNumber = new AtomicLong();
+    private final Map<String, CachedHost> hosts = new ConcurrentHashMap<>();
+    private final LongAdder hitsNumber = new LongAdder();
+    private final LongAdder missesNumber = new LongAdder();
+    private final LongAdder droppedPrefetchesNumber = new LongAdder();
+
+    public DnsCache() {
+        this(HostResolver.SYSTEM, 16, DEFAULT_TTL_IN_MILLIS, DEFAULT_NEGATIVE_TTL_IN_MILLIS,
+             System::currentTimeMillis);
+    }
+
+    /**
+     * @param negativeTtlInMillis how long a host which couldn't be resolved isn't looked up again
+     * @param clockInMillis       current time, replaceable to test expiration
+     */
+    public DnsCache(HostResolver resolver,
+                    int resolverThreadsNumber,
+                    long ttlInMillis,
+                    long negativeTtlInMillis,
+                    LongSupplier clockInMillis) {
+        this(resolver, resolverThreadsNumber, ttlInMillis, negativeTtlInMillis, clockInMillis,
+             DEFAULT_MAX_QUEUED_PREFETCHES_NUMBER);
+    }
+
+    public DnsCache(HostResolver resolver,
+                    int resolverThreadsNumber,
+                    long ttlInMillis,
+                    long negativeTtlInMillis,
+                    LongSupplier clockInMillis,
+                    int maxQueuedPrefetchesNumber) {
+        this.resolver = resolver;
+        this.ttlInMillis = ttlInMillis;
+        this.negativeTtlInMillis = negativeTtlInMillis;
+        this.clockInMillis = clockInMillis;
+        this.maxQueuedPrefetchesNumber = maxQueuedPrefetchesNumber;
+        final AtomicInteger threadsNumber = new AtomicInteger();
+//        Lookups are ordered by their priority, so the queue is unbounded and the pool never grows
+        this.resolverThreads = new ThreadPoolExecutor(
+                resolverThreadsNumber, resolverThreadsNumber, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "dns-resolver-" + threadsNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts resolving the host in the background unless it's cached. Dropped if too many prefetches are queued
+     */
+    public void prefetch(String host) {
+        lookup(host, true);
+    }
+
+    /**
+     * Lookup a worker waits for, it goes before the queued prefetches
+     *
+     * @return addresses of the host, completed exceptionally with {@link UnknownHostException} if it can't be resolved
+     */
+    public CompletableFuture<InetAddress[]> resolution(String host) {
+        return lookup(host, false);
+    }
+
+    /**
+     * Waits for the host on the calling thread. Usually returns at once, as the host was prefetched.
+     *
+     * @return addresses of the host, null if it isn't resolved within the timeout. The caller can let
+     * the JDK resolve it then, a slow resolver isn't a reason to give up on the host
+     * @throws UnknownHostException if the host can't be resolved
+     */
+    public InetAddress[] resolved(String host, long timeoutInMillis) throws UnknownHostException {
+        try {
+            return resolution(host).get(timeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw unknownHost(host, e.getCause());
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw unknownHost(host, e);
+        }
+    }
+
+    public long hitsNumber() {
+        return hitsNumber.sum();
+    }
+
+    public long missesNumber() {
+        return missesNumber.sum();
+    }
+
+    /**
+     * Prefetches which weren't queued as too many were waiting
+     */
+    public long droppedPrefetchesNumber() {
+        return droppedPrefetchesNumber.sum();
+    }
+
+    public int size() {
+        return hosts.size();
+    }
+
+    @Override
+    public void close() {
+        resolverThreads.shutdownNow();
+    }
+
+    private CompletableFuture<InetAddress[]> lookup(String host, boolean isPrefetch) {
+        final String key = host.toLowerCase(Locale.ROOT);
+        final long now = clockInMillis.getAsLong();
+        final CachedHost cachedHost = hosts.get(key);
+        if (cachedHost != null && now < cachedHost.expirationTime) {
+            hitsNumber.increment();
+            return urgedIfNeeded(key, cachedHost, isPrefetch);
+        }
+        final CachedHost newHost = new CachedHost();
+        final CachedHost currentHost = hosts.compute(
+                key, (k, oldHost) -> oldHost != null && now < oldHost.expirationTime ? oldHost : newHost);
+        if (currentHost != newHost) {
+            hitsNumber.increment();
+            return urgedIfNeeded(key, currentHost, isPrefetch);
+        }
+        missesNumber.increment();
+        if (hosts.size() > PURGE_THRESHOLD) {
+            hosts.values().removeIf(cached -> cached.expirationTime <= now);
+        }
+        if (!isPrefetch) {
+            newHost.isUrgent.set(true);
+        } else if (queuedPrefetchesNumber.incrementAndGet() > maxQueuedPrefetchesNumber) {
+            queuedPrefetchesNumber.decrementAndGet();
+            droppedPrefetchesNumber.increment();
+//            A worker which already waits for the host has queued its own lookup
+            hosts.remove(key, newHost);
+            return newHost.addresses;
+        }
+        queued(key, newHost, isPrefetch);
+        return newHost.addresses;
+    }
+
+    /**
+     * A host which is only queued for a prefetch is queued again ahead of the prefetches once a worker needs it
+     */
+    private CompletableFuture<InetAddress[]> urgedIfNeeded(String host, CachedHost cachedHost, boolean isPrefetch) {
+        if (!isPrefetch && !cachedHost.isStarted.get() && cachedHost.isUrgent.compareAndSet(false, true)) {
+            queued(host, cachedHost, false);
+        }
+        return cachedHost.addresses;
+    }
+
+    private void queued(String host, CachedHost cachedHost, boolean isPrefetch) {
+        try {
+            resolverThreads.execute(new Lookup(host, cachedHost, isPrefetch, lookupsNumber.incrementAndGet()));
+        } catch (RejectedExecutionException e) {
+            if (isPrefetch) {
+                queuedPrefetchesNumber.decrementAndGet();
+            }
+            cachedHost.completeExceptionally(new UnknownHostException("DNS cache is closed: " + host), 0);
+        }
+    }
+
+    private void resolve(String host, CachedHost cachedHost) {
+        try {
+            final InetAddress[] addresses = resolver.resolved(host);
+            cachedHost.expirationTime = clockInMillis.getAsLong() + ttlInMillis;
+            cachedHost.addresses.complete(addresses);
+        } catch (UnknownHostException e) {
+            cachedHost.completeExceptionally(e, clockInMillis.getAsLong() + negativeTtlInMillis);
+        } catch (RuntimeException e) {
+            cachedHost.completeExceptionally(unknownHost(host, e), clockInMillis.getAsLong() + negativeTtlInMillis);
+        }
+    }
+
+    private static UnknownHostException unknownHost(String host, Throwable cause) {
+        final UnknownHostException exception = new UnknownHostException(host);
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /**
+     * Lookups a worker waits for go first, otherwise lookups are run in the order they were queued
+     */
+    private class Lookup implements Runnable, Comparable<Lookup> {
+        private final String host;
+        private final CachedHost cachedHost;
+        private final boolean isPrefetch;
+        private final long order;
+
+        Lookup(String host, CachedHost cachedHost, boolean isPrefetch, long order) {
+            this.host = host;
+            this.cachedHost = cachedHost;
+            this.isPrefetch = isPrefetch;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            if (isPrefetch) {
+                queuedPrefetchesNumber.decrementAndGet();
+            }
+//            A host can be queued twice, as a prefetch and as a lookup of a worker
+            if (cachedHost.isStarted.compareAndSet(false, true)) {
+                resolve(host, cachedHost);
+            }
+        }
+
+        @Override
+        public int compareTo(Lookup other) {
+            if (isPrefetch != other.isPrefetch) {
+                return isPrefetch ? 1 : -1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * Never expires while it's being resolved
+     */
+    private static class CachedHost {
+        final CompletableFuture<InetAddress[]> addresses = new CompletableFuture<>();
+        volatile long expirationTime = Long.MAX_VALUE;
+        final AtomicBoolean isStarted = new AtomicBoolean();
+        /**
+         * Set once a lookup ahead of the prefetches is queued
+         */
+        final AtomicBoolean isUrgent = new AtomicBoolean();
+
+        void completeExceptionally(UnknownHostException exception, long expirationTime) {
+            this.expirationTime = expirationTime;
+            addresses.completeExceptionally(exception);
+        }
+    }
+}
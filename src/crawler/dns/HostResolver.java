@@ -0,0 +1,14 @@
+package crawler.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Blocking name lookup. Replaced with a stub to test the cache without a network.
+ */
+@FunctionalInterface
+public interface HostResolver {
+    HostResolver SYSTEM = InetAddress::getAllByName;
+
+    InetAddress[] resolved(String host) throws UnknownHostException;
+}
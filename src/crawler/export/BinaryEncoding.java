@@ -0,0 +1,52 @@
+package crawler.export;
+
+import crawler.ExtractedPage;
+
+/**
+ * File starts with the MAGIC bytes and the VERSION byte. Every record is
+ * [int length of the rest of the record]
+ * [int status][byte flags][long bytes][long fetch start millis][long fetch nanos]
+ * [url][title][varint links number][links...][body]
+ * where strings are a varint of (UTF-8 length + 1) followed by the UTF-8 bytes, 0 meaning null.
+ * Ints and longs are big-endian. Flags: bit 0 is set for a near duplicate, whose links weren't extracted.
+ * Version 2 added the flags.
+ */
+class BinaryEncoding implements RecordEncoding {
+    static final String MAGIC = "WCRX";
+    static final int VERSION = 2;
+    static final int NEAR_DUPLICATE_FLAG = 1;
+
+    @Override
+    public void encodeHeader(ExportBuffer buffer) {
+        buffer.putAscii(MAGIC);
+        buffer.putByte(VERSION);
+    }
+
+    @Override
+    public void encode(ExtractedPage page, ExportBuffer buffer) {
+        final int lengthPosition = buffer.size();
+        buffer.putInt(0);
+        buffer.putInt(page.statusCode);
+        buffer.putByte(page.isNearDuplicate ? NEAR_DUPLICATE_FLAG : 0);
+        buffer.putLong(page.bytesNumber);
+        buffer.putLong(page.fetchStartTimeInMillis);
+        buffer.putLong(page.fetchDurationInNanos);
+        putString(page.url.toString(), buffer);
+        putString(page.title, buffer);
+        buffer.putVarInt(page.links.size());
+        for (String link : page.links) {
+            putString(link, buffer);
+        }
+        putString(page.rawBody, buffer);
+        buffer.setInt(lengthPosition, buffer.size() - lengthPosition - 4);
+    }
+
+    private static void putString(String s, ExportBuffer buffer) {
+        if (s == null) {
+            buffer.putVarInt(0);
+            return;
+        }
+        buffer.putVarInt(ExportBuffer.utf8Length(s) + 1);
+        buffer.putUtf8(s);
+    }
+}
@@ -0,0 +1,203 @@
+package crawler.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable byte array the records are encoded into. Strings are encoded to UTF-8 in place,
+ * so a record doesn't allocate anything except when the buffer grows.
+ */
+class ExportBuffer {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private byte[] bytes;
+    private int size = 0;
+
+    ExportBuffer(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void putByte(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void putInt(int value) {
+        ensureCapacity(4);
+        bytes[size++] = (byte) (value >>> 24);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Overwrites 4 bytes which were already put, e.g. a length reserved before the record was encoded
+     */
+    void setInt(int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+    }
+
+    void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * Unsigned LEB128, 1 byte for values below 128
+     */
+    void putVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void putAscii(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            bytes[size++] = (byte) s.charAt(i);
+        }
+    }
+
+    void putDecimal(long value) {
+        putAscii(Long.toString(value));
+    }
+
+    static int utf8Length(CharSequence s) {
+        final int length = s.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
+
+    /**
+     * @return number of bytes which were put. Unpaired surrogates are written as '?'
+     */
+    int putUtf8(CharSequence s) {
+        return putUtf8(s, 0, s.length());
+    }
+
+    int putUtf8(CharSequence s, int from, int to) {
+        final int start = size;
+        ensureCapacity(to - from);
+        for (int i = from; i < to; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                bytes[size++] = (byte) (0xC0 | c >> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                ensureCapacity(4);
+                bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                ensureCapacity(1);
+                bytes[size++] = '?';
+            } else {
+                ensureCapacity(3);
+                bytes[size++] = (byte) (0xE0 | c >> 12);
+                bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return size - start;
+    }
+
+    /**
+     * Puts the string quoted and escaped as a JSON string literal, or null
+     */
+    void putJsonString(CharSequence s) {
+        if (s == null) {
+            putAscii("null");
+            return;
+        }
+        putByte('"');
+        int unescapedStart = 0;
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20 || c == '\u2028' || c == '\u2029') {
+                putUtf8(s, unescapedStart, i);
+                unescapedStart = i + 1;
+                switch (c) {
+                    case '"':
+                        putAscii("\\\"");
+                        break;
+                    case '\\':
+                        putAscii("\\\\");
+                        break;
+                    case '\n':
+                        putAscii("\\n");
+                        break;
+                    case '\r':
+                        putAscii("\\r");
+                        break;
+                    case '\t':
+                        putAscii("\\t");
+                        break;
+                    default:
+                        putAscii("\\u");
+                        putByte(HEX_DIGITS[c >> 12 & 0xF]);
+                        putByte(HEX_DIGITS[c >> 8 & 0xF]);
+                        putByte(HEX_DIGITS[c >> 4 & 0xF]);
+                        putByte(HEX_DIGITS[c & 0xF]);
+                }
+            }
+        }
+        putUtf8(s, unescapedStart, length);
+        putByte('"');
+    }
+
+    void writeTo(WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    private void ensureCapacity(int bytesNumber) {
+        if (size + bytesNumber > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + bytesNumber));
+        }
+    }
+}
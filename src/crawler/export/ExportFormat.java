@@ -0,0 +1,5 @@
+package crawler.export;
+
+public enum ExportFormat {
+    JSON_LINES, GZIPPED_JSON_LINES, BINARY
+}
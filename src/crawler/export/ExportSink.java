@@ -0,0 +1,125 @@
+package crawler.export;
+
+import crawler.ExtractedPage;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appends crawled pages to a file while the crawl is running. Records are encoded into a batch
+ * which is written to the FileChannel once it's large enough, so nothing has to be kept in memory
+ * until the crawl ends. The export is complete after {@link #close()}.
+ * <p>
+ * Safe to be used by many workers. If writing fails, the following pages are dropped
+ * and the failure is thrown by {@link #close()}.
+ */
+public class ExportSink implements Consumer<ExtractedPage>, AutoCloseable {
+    public static final int BATCH_SIZE_IN_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    /**
+     * Null unless the export is compressed
+     */
+    private final GZIPOutputStream gzipOutputStream;
+    private final RecordEncoding encoding;
+    private final ExportBuffer batch = new ExportBuffer(BATCH_SIZE_IN_BYTES + BATCH_SIZE_IN_BYTES / 4);
+    private long exportedPagesNumber = 0;
+    private IOException failure;
+    private boolean isClosed = false;
+
+    public ExportSink(Path path, ExportFormat format) throws IOException {
+        channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+        try {
+            gzipOutputStream = format == ExportFormat.GZIPPED_JSON_LINES ?
+                    new GZIPOutputStream(Channels.newOutputStream(channel), BATCH_SIZE_IN_BYTES) :
+                    null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        encoding = format == ExportFormat.BINARY ? new BinaryEncoding() : new JsonLinesEncoding();
+        encoding.encodeHeader(batch);
+    }
+
+    @Override
+    public synchronized void accept(ExtractedPage page) {
+        if (isClosed || failure != null) {
+            return;
+        }
+        encoding.encode(page, batch);
+        exportedPagesNumber++;
+        if (batch.size() >= BATCH_SIZE_IN_BYTES) {
+            writeBatch();
+        }
+    }
+
+    public synchronized long exportedPagesNumber() {
+        return exportedPagesNumber;
+    }
+
+    /**
+     * Writes what's left and closes the file
+     *
+     * @throws IOException the first failure to write if there was one
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (failure == null) {
+            writeBatch();
+        }
+        try {
+            if (gzipOutputStream != null && failure == null) {
+                gzipOutputStream.finish();
+            }
+        } catch (IOException e) {
+            keepFirstFailure(e);
+        } finally {
+//            The gzip stream closes the channel as well, closing it again does nothing
+            if (gzipOutputStream != null) {
+                try {
+                    gzipOutputStream.close();
+                } catch (IOException e) {
+                    keepFirstFailure(e);
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                keepFirstFailure(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void keepFirstFailure(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private void writeBatch() {
+        try {
+            if (gzipOutputStream != null) {
+                batch.writeTo(gzipOutputStream);
+            } else {
+                batch.writeTo(channel);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            failure = e;
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package crawler.export;
+
+import crawler.ExtractedPage;
+
+/**
+ * One JSON object per line:
+ * {"url":..,"title":..,"status":..,"bytes":..,"fetchStartMillis":..,"fetchNanos":..,"links":[..]}
+ * plus "nearDuplicate":true for near duplicates and "body" when raw bodies are kept.
+ */
+class JsonLinesEncoding implements RecordEncoding {
+    @Override
+    public void encode(ExtractedPage page, ExportBuffer buffer) {
+        buffer.putAscii("{\"url\":");
+        buffer.putJsonString(page.url.toString());
+        buffer.putAscii(",\"title\":");
+        buffer.putJsonString(page.title);
+        buffer.putAscii(",\"status\":");
+        buffer.putDecimal(page.statusCode);
+        buffer.putAscii(",\"bytes\":");
+        buffer.putDecimal(page.bytesNumber);
+        buffer.putAscii(",\"fetchStartMillis\":");
+        buffer.putDecimal(page.fetchStartTimeInMillis);
+        buffer.putAscii(",\"fetchNanos\":");
+        buffer.putDecimal(page.fetchDurationInNanos);
+        buffer.putAscii(",\"links\":[");
+        boolean isFirst = true;
+        for (String link : page.links) {
+            if (!isFirst) {
+                buffer.putByte(',');
+            }
+            buffer.putJsonString(link);
+            isFirst = false;
+        }
+        buffer.putByte(']');
+        if (page.isNearDuplicate) {
+            buffer.putAscii(",\"nearDuplicate\":true");
+        }
+        if (page.rawBody != null) {
+            buffer.putAscii(",\"body\":");
+            buffer.putJsonString(page.rawBody);
+        }
+        buffer.putAscii("}\n");
+    }
+}
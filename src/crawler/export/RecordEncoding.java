@@ -0,0 +1,16 @@
+package crawler.export;
+
+import crawler.ExtractedPage;
+
+/**
+ * Turns a crawled page into the bytes of one export record.
+ */
+interface RecordEncoding {
+    /**
+     * Bytes written once at the beginning of the file
+     */
+    default void encodeHeader(ExportBuffer buffer) {
+    }
+
+    void encode(ExtractedPage page, ExportBuffer buffer);
+}
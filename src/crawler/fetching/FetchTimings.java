@@ -0,0 +1,35 @@
+package crawler.fetching;
+
+/**
+ * Where the time of a fetch went. A duration is -1 if the fetcher couldn't measure it.
+ */
+public class FetchTimings {
+    public static final FetchTimings UNKNOWN = new FetchTimings(-1, -1, -1, -1);
+
+    /**
+     * DNS lookup and connection establishment
+     */
+    public final long connectDurationInNanos;
+    /**
+     * From sending the request until the response headers arrived
+     */
+    public final long timeToFirstByteInNanos;
+    /**
+     * Reading the body, including the decoding and scanning which are done on the way
+     */
+    public final long downloadDurationInNanos;
+    /**
+     * Part of the download spent in the html scanner
+     */
+    public final long scanDurationInNanos;
+
+    public FetchTimings(long connectDurationInNanos,
+                        long timeToFirstByteInNanos,
+                        long downloadDurationInNanos,
+                        long scanDurationInNanos) {
+        this.connectDurationInNanos = connectDurationInNanos;
+        this.timeToFirstByteInNanos = timeToFirstByteInNanos;
+        this.downloadDurationInNanos = downloadDurationInNanos;
+        this.scanDurationInNanos = scanDurationInNanos;
+    }
+}
@@ -0,0 +1,73 @@
+package crawler.fetching;
+
+import crawler.utilities.HtmlBody;
+import crawler.utilities.ScannedHtml;
+
+import java.net.URL;
+
+public class FetchedPage {
+    public static final int NOT_MODIFIED_STATUS_CODE = 304;
+
+    public final URL url;
+    public final int statusCode;
+    public final String contentType;
+    /**
+     * Empty if the response isn't an html page
+     */
+    public final String htmlContent;
+    /**
+     * Null if the fetcher didn't scan the page while downloading it
+     */
+    public final ScannedHtml scannedHtml;
+    public final long bytesNumber;
+    public final boolean isTruncated;
+    public final FetchTimings timings;
+    public final Validators validators;
+
+    public FetchedPage(URL url, int statusCode, String contentType, String htmlContent) {
+        this(url, statusCode, contentType, htmlContent, null, htmlContent.length(), false, FetchTimings.UNKNOWN,
+             Validators.NONE);
+    }
+
+    public FetchedPage(URL url, int statusCode, String contentType, HtmlBody htmlBody) {
+        this(url, statusCode, contentType, htmlBody, FetchTimings.UNKNOWN);
+    }
+
+    public FetchedPage(URL url, int statusCode, String contentType, HtmlBody htmlBody, FetchTimings timings) {
+        this(url, statusCode, contentType, htmlBody, timings, Validators.NONE);
+    }
+
+    public FetchedPage(URL url,
+                       int statusCode,
+                       String contentType,
+                       HtmlBody htmlBody,
+                       FetchTimings timings,
+                       Validators validators) {
+        this(url, statusCode, contentType, htmlBody.text, htmlBody.scannedHtml, htmlBody.bytesNumber,
+             htmlBody.isTruncated, timings, validators);
+    }
+
+    public FetchedPage(URL url,
+                       int statusCode,
+                       String contentType,
+                       String htmlContent,
+                       ScannedHtml scannedHtml,
+                       long bytesNumber,
+                       boolean isTruncated,
+                       FetchTimings timings,
+                       Validators validators) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.htmlContent = htmlContent;
+        this.scannedHtml = scannedHtml;
+        this.bytesNumber = bytesNumber;
+        this.isTruncated = isTruncated;
+        this.timings = timings;
+        this.validators = validators;
+    }
+
+    public static boolean isHtml(String contentType) {
+        return contentType != null && contentType.contains("text/html");
+    }
+}
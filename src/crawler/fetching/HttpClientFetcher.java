@@ -0,0 +1,242 @@
+package crawler.fetching;
+
+import crawler.utilities.HtmlBody;
+import crawler.utilities.HtmlBodyDecoder;
+import crawler.utilities.HtmlBodyReader;
+import crawler.utilities.HtmlPageScanner;
+import crawler.utilities.WebCommunicationUtils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking fetcher based on {@link HttpClient}.
+ * The client keeps idle keep-alive connections per host and multiplexes requests over HTTP/2 when the server
+ * supports it, so one instance should be reused by all crawls of the session.
+ * Connection pool tuning is done through the jdk.httpclient.* system properties (e.g. jdk.httpclient.keepalive.timeout).
+ * Bodies are decoded and scanned chunk by chunk as they arrive, within the limits of the given {@link HtmlBodyReader}.
+ * {@link #abortInFlight()} cancels the exchanges in flight and the subscriptions of the html bodies being read.
+ * A cancelled exchange closes its stream only on JDK 16+, on older runtimes an exchange which is still waiting
+ * for the headers runs until its request timeout, but its body is cancelled as soon as the headers arrive.
+ */
+public class HttpClientFetcher implements PageFetcher {
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final HtmlBodyReader bodyLimits;
+    private final Set<CompletableFuture<?>> exchangesInFlight = ConcurrentHashMap.newKeySet();
+    private final Set<HtmlBodySubscriber> bodiesInFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * Fetches which started before the last abort are aborted
+     */
+    private final AtomicLong abortsNumber = new AtomicLong();
+
+    public HttpClientFetcher() {
+        this(Duration.ofSeconds(10), Duration.ofSeconds(30), HtmlBodyReader.DEFAULT);
+    }
+
+    /**
+     * @param requestTimeout how long to wait for the response headers
+     * @param bodyLimits     size limit and deadline of the body
+     */
+    public HttpClientFetcher(Duration connectTimeout, Duration requestTimeout, HtmlBodyReader bodyLimits) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.bodyLimits = bodyLimits;
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url) {
+        return fetch(url, scanner -> false, true);
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url, Predicate<HtmlPageScanner> hasEnough, boolean isBodyNeeded) {
+        return fetch(url, hasEnough, isBodyNeeded, Validators.NONE);
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url,
+                                                Predicate<HtmlPageScanner> hasEnough,
+                                                boolean isBodyNeeded,
+                                                Validators cachedValidators) {
+        final HttpRequest request;
+        try {
+            final HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(url.toURI())
+                    .timeout(requestTimeout)
+                    .header("User-Agent", WebCommunicationUtils.USER_AGENT)
+                    .GET();
+            if (cachedValidators.etag != null) {
+                requestBuilder.header("If-None-Match", cachedValidators.etag);
+            }
+            if (cachedValidators.lastModified != null) {
+                requestBuilder.header("If-Modified-Since", cachedValidators.lastModified);
+            }
+            request = requestBuilder.build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final long startTime = System.nanoTime();
+        final long abortsNumberAtStart = abortsNumber.get();
+//        The client doesn't tell when it connects, so connecting is a part of the time to the first byte
+        final AtomicLong headersTime = new AtomicLong();
+        final CompletableFuture<HttpResponse<HtmlBody>> exchange = httpClient.sendAsync(request, responseInfo -> {
+            headersTime.set(System.nanoTime());
+            return htmlBodySubscriber(responseInfo, hasEnough, isBodyNeeded, abortsNumberAtStart);
+        });
+        exchangesInFlight.add(exchange);
+        exchange.whenComplete((response, throwable) -> exchangesInFlight.remove(exchange));
+        return exchange
+                .thenApply(response -> new FetchedPage(url,
+                                                       response.statusCode(),
+                                                       contentType(response.headers()),
+                                                       response.body(),
+                                                       new FetchTimings(-1,
+                                                                        headersTime.get() - startTime,
+                                                                        System.nanoTime() - headersTime.get(),
+                                                                        response.body().scanDurationInNanos),
+                                                       new Validators(
+                                                               response.headers().firstValue("ETag").orElse(null),
+                                                               response.headers().firstValue("Last-Modified")
+                                                                       .orElse(null))));
+    }
+
+    /**
+     * Only html bodies are read, everything else is discarded without buffering.
+     * The body of a fetch which started before an abort is cancelled right away.
+     */
+    private HttpResponse.BodySubscriber<HtmlBody> htmlBodySubscriber(HttpResponse.ResponseInfo responseInfo,
+                                                                     Predicate<HtmlPageScanner> hasEnough,
+                                                                     boolean isBodyNeeded,
+                                                                     long abortsNumberAtStart) {
+        final String contentType = contentType(responseInfo.headers());
+        final boolean isAborted = abortsNumber.get() != abortsNumberAtStart;
+        if (!FetchedPage.isHtml(contentType) && !isAborted) {
+            return HttpResponse.BodySubscribers.replacing(HtmlBody.empty());
+        }
+        final HtmlBodySubscriber subscriber = new HtmlBodySubscriber(
+                new HtmlBodyDecoder(contentType, bodyLimits.maxBytesNumber, hasEnough, isBodyNeeded),
+                bodyLimits.readDeadlineInMillis);
+        bodiesInFlight.add(subscriber);
+        subscriber.body.whenComplete((htmlBody, throwable) -> bodiesInFlight.remove(subscriber));
+//        Checked after adding, so an abort either sees the subscriber or is seen here
+        if (abortsNumber.get() != abortsNumberAtStart) {
+            subscriber.abort();
+        }
+        return subscriber;
+    }
+
+    /**
+     * Only the futures returned by the client itself abort their exchanges when they're cancelled,
+     * and only on JDK 16+. Bodies are cancelled through their subscriptions, which works on every runtime.
+     */
+    @Override
+    public void abortInFlight() {
+        abortsNumber.incrementAndGet();
+        for (CompletableFuture<?> exchange : exchangesInFlight) {
+            exchange.cancel(true);
+        }
+        for (HtmlBodySubscriber subscriber : bodiesInFlight) {
+            subscriber.abort();
+        }
+    }
+
+    private static String contentType(HttpHeaders headers) {
+        return headers.firstValue("Content-Type").orElse(null);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClient";
+    }
+
+    /**
+     * Requests one list of buffers at a time and cancels the response as soon as the decoder needs nothing else
+     * or the deadline passes or the fetch is aborted.
+     */
+    private static class HtmlBodySubscriber implements HttpResponse.BodySubscriber<HtmlBody> {
+        private final HtmlBodyDecoder decoder;
+        private final CompletableFuture<HtmlBody> body = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+
+        HtmlBodySubscriber(HtmlBodyDecoder decoder, long readDeadlineInMillis) {
+            this.decoder = decoder;
+            body.orTimeout(readDeadlineInMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((htmlBody, throwable) -> {
+                        final Flow.Subscription currentSubscription = subscription;
+                        if (throwable != null && currentSubscription != null) {
+                            currentSubscription.cancel();
+                        }
+                    });
+        }
+
+        @Override
+        public CompletionStage<HtmlBody> getBody() {
+            return body;
+        }
+
+        /**
+         * Fails the body, which cancels the subscription
+         */
+        void abort() {
+            body.completeExceptionally(new IOException("Fetch was aborted"));
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+//            The body may have failed before there was a subscription to cancel
+            if (body.isDone()) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                if (!decoder.accept(buffer)) {
+                    subscription.cancel();
+                    body.complete(decoder.finish());
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (!body.isDone()) {
+                body.complete(decoder.finish());
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package crawler.fetching;
+
+import crawler.utilities.HtmlPageScanner;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Downloads pages. The returned future is completed exceptionally if the page couldn't be fetched.
+ */
+@FunctionalInterface
+public interface PageFetcher {
+    CompletableFuture<FetchedPage> fetch(URL url);
+
+    /**
+     * Lets fetchers which scan pages while downloading them stop reading early and skip keeping the body.
+     * By default the whole page is fetched and kept.
+     *
+     * @param hasEnough    tells when nothing else is needed from the page
+     * @param isBodyNeeded if it's false, {@link FetchedPage#htmlContent} may be empty as long as
+     *                     {@link FetchedPage#scannedHtml} is set
+     */
+    default CompletableFuture<FetchedPage> fetch(URL url, Predicate<HtmlPageScanner> hasEnough, boolean isBodyNeeded) {
+        return fetch(url);
+    }
+
+    /**
+     * Sends a conditional request if validators of a cached copy are given. If the page hasn't changed,
+     * the page is completed with {@link FetchedPage#NOT_MODIFIED_STATUS_CODE} and an empty body.
+     * By default the validators are ignored and the page is fetched in full.
+     */
+    default CompletableFuture<FetchedPage> fetch(URL url,
+                                                 Predicate<HtmlPageScanner> hasEnough,
+                                                 boolean isBodyNeeded,
+                                                 Validators cachedValidators) {
+        return fetch(url, hasEnough, isBodyNeeded);
+    }
+
+    /**
+     * Aborts the fetches which are in flight right now: their connections are closed and their pages are completed
+     * exceptionally as soon as possible. It's called from another thread when a crawl is stopped.
+     * By default nothing is aborted and the fetches run to the end.
+     */
+    default void abortInFlight() {
+    }
+}
@@ -0,0 +1,124 @@
+package crawler.fetching;
+
+import crawler.utilities.HtmlBody;
+import crawler.utilities.HtmlBodyReader;
+import crawler.utilities.HtmlPageScanner;
+import crawler.utilities.WebCommunicationUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static crawler.utilities.WebCommunicationUtils.establishedCustomConnection;
+
+/**
+ * Blocking fetcher based on {@link URLConnection}. The page is downloaded and scanned on the calling thread,
+ * so the returned future is always completed.
+ * Open connections are kept track of, so {@link #abortInFlight()} can close them. A read of the body which is
+ * already blocked can't be cut short by {@link HttpURLConnection}, it ends with the data or the read timeout,
+ * and the next read fails.
+ */
+public class UrlConnectionFetcher implements PageFetcher {
+    private final HtmlBodyReader bodyReader;
+    private final Set<HttpURLConnection> openConnections = ConcurrentHashMap.newKeySet();
+    /**
+     * Fetches which started before the last abort are aborted
+     */
+    private final AtomicLong abortsNumber = new AtomicLong();
+
+    public UrlConnectionFetcher() {
+        this(HtmlBodyReader.DEFAULT);
+    }
+
+    public UrlConnectionFetcher(HtmlBodyReader bodyReader) {
+        this.bodyReader = bodyReader;
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url) {
+        return fetch(url, scanner -> false, true);
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url, Predicate<HtmlPageScanner> hasEnough, boolean isBodyNeeded) {
+        return fetch(url, hasEnough, isBodyNeeded, Validators.NONE);
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(URL url,
+                                                Predicate<HtmlPageScanner> hasEnough,
+                                                boolean isBodyNeeded,
+                                                Validators cachedValidators) {
+        final long abortsNumberAtStart = abortsNumber.get();
+        HttpURLConnection httpConnection = null;
+        try {
+            final long startTime = System.nanoTime();
+            final URLConnection connection = establishedCustomConnection(url);
+            if (connection instanceof HttpURLConnection) {
+                httpConnection = (HttpURLConnection) connection;
+                openConnections.add(httpConnection);
+            }
+            if (cachedValidators.etag != null) {
+                connection.setRequestProperty("If-None-Match", cachedValidators.etag);
+            }
+            if (cachedValidators.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cachedValidators.lastModified);
+            }
+            connection.connect();
+            final long connectedTime = System.nanoTime();
+//            Sends the request and waits for the response headers
+            final String contentType = connection.getContentType();
+            final long headersTime = System.nanoTime();
+            final int statusCode = connection instanceof HttpURLConnection ?
+                    ((HttpURLConnection) connection).getResponseCode() :
+                    -1;
+            final HtmlBody htmlBody = statusCode == FetchedPage.NOT_MODIFIED_STATUS_CODE ?
+                    HtmlBody.empty() :
+                    WebCommunicationUtils.fetchedHtmlBody(connection, bodyReader, hasEnough, isBodyNeeded,
+                                                          () -> abortsNumber.get() != abortsNumberAtStart);
+            final FetchTimings timings = new FetchTimings(connectedTime - startTime,
+                                                          headersTime - connectedTime,
+                                                          System.nanoTime() - headersTime,
+                                                          htmlBody.scanDurationInNanos);
+            final Validators validators = new Validators(connection.getHeaderField("ETag"),
+                                                         connection.getHeaderField("Last-Modified"));
+            return CompletableFuture.completedFuture(
+                    new FetchedPage(url, statusCode, contentType, htmlBody, timings, validators));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            if (httpConnection != null) {
+                openConnections.remove(httpConnection);
+            }
+        }
+    }
+
+    /**
+     * Disconnecting closes the socket, so a worker waiting for the connection or the headers fails right away.
+     * During the body it waits for the read in progress, that's why it's done on its own thread.
+     */
+    @Override
+    public void abortInFlight() {
+        abortsNumber.incrementAndGet();
+        final List<HttpURLConnection> connections = List.copyOf(openConnections);
+        if (connections.isEmpty()) {
+            return;
+        }
+        final Thread disconnectingThread = new Thread(
+                () -> connections.forEach(HttpURLConnection::disconnect), "fetch-abort");
+        disconnectingThread.setDaemon(true);
+        disconnectingThread.start();
+    }
+
+    @Override
+    public String toString() {
+        return "URLConnection";
+    }
+}
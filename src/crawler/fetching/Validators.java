@@ -0,0 +1,26 @@
+package crawler.fetching;
+
+/**
+ * ETag and Last-Modified of a response, sent back as If-None-Match and If-Modified-Since to revalidate the page
+ */
+public class Validators {
+    public static final Validators NONE = new Validators(null, null);
+
+    /**
+     * Null if the response didn't have it
+     */
+    public final String etag;
+    /**
+     * Null if the response didn't have it
+     */
+    public final String lastModified;
+
+    public Validators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+}
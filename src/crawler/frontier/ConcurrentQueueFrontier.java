@@ -0,0 +1,33 @@
+package crawler.frontier;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded FIFO frontier. Urls are handed out in the order they were discovered.
+ */
+public class ConcurrentQueueFrontier implements Frontier {
+    private final Queue<UrlWithDepth> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public void offer(UrlWithDepth urlWithDepth) {
+        queue.offer(urlWithDepth);
+        size.incrementAndGet();
+    }
+
+    @Override
+    public UrlWithDepth poll() {
+        final UrlWithDepth polled = queue.poll();
+        if (polled != null) {
+            size.decrementAndGet();
+        }
+        return polled;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,47 @@
+package crawler.frontier;
+
+import crawler.dns.DnsCache;
+
+/**
+ * Starts resolving the host of every offered url, so the lookup is usually done by the time a worker polls the url
+ */
+public class DnsPrefetchingFrontier implements Frontier {
+    private final Frontier frontier;
+    private final DnsCache dnsCache;
+
+    public DnsPrefetchingFrontier(Frontier frontier, DnsCache dnsCache) {
+        this.frontier = frontier;
+        this.dnsCache = dnsCache;
+    }
+
+    @Override
+    public void offer(UrlWithDepth urlWithDepth) {
+        dnsCache.prefetch(urlWithDepth.url.getHost());
+        frontier.offer(urlWithDepth);
+    }
+
+    @Override
+    public UrlWithDepth poll() {
+        return frontier.poll();
+    }
+
+    @Override
+    public int size() {
+        return frontier.size();
+    }
+
+    @Override
+    public void rediscovered(String url) {
+        frontier.rediscovered(url);
+    }
+
+    @Override
+    public void completed(UrlWithDepth urlWithDepth) {
+        frontier.completed(urlWithDepth);
+    }
+
+    @Override
+    public void close() {
+        frontier.close();
+    }
+}
@@ -0,0 +1,37 @@
+package crawler.frontier;
+
+/**
+ * Urls which are waiting to be crawled. Implementations must be safe to use from several workers at once.
+ */
+public interface Frontier extends AutoCloseable {
+    void offer(UrlWithDepth urlWithDepth);
+
+    /**
+     * @return next url to crawl or null if there is nothing to hand out right now
+     */
+    UrlWithDepth poll();
+
+    int size();
+
+    /**
+     * Called for a link to a url which was already seen. Frontiers which order urls by their in-links
+     * can move the url up if it's still waiting
+     *
+     * @param url canonical url, see {@link crawler.utilities.UrlCanonicalizer}
+     */
+    default void rediscovered(String url) {
+    }
+
+    /**
+     * Called when the url returned by {@link #poll()} has been crawled
+     */
+    default void completed(UrlWithDepth urlWithDepth) {
+    }
+
+    /**
+     * Releases resources which are held by the frontier. It's called once the crawl is over.
+     */
+    @Override
+    default void close() {
+    }
+}
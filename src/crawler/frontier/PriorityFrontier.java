@@ -0,0 +1,121 @@
+package crawler.frontier;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Best-first frontier: always hands out the waiting url with the highest {@link UrlScorer} score,
+ * urls with equal scores in the order they were offered. So a crawl which is cut short has crawled
+ * the best urls it found.
+ * <p>
+ * When a waiting url is linked again, it's scored again. The better entry is added to the queue and
+ * the old one is skipped when it's polled, so the queue never has to be searched.
+ */
+public class PriorityFrontier implements Frontier {
+    private static final Comparator<Entry> BEST_FIRST = Comparator.comparingDouble((Entry entry) -> -entry.score)
+            .thenComparingLong(entry -> entry.sequenceNumber);
+
+    private final UrlScorer scorer;
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>(1024, BEST_FIRST);
+    /**
+     * Waiting urls by their canonical form
+     */
+    private final Map<String, WaitingUrl> waitingUrls = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hostUrlsNumbers = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequenceNumber = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PriorityFrontier(UrlScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void offer(UrlWithDepth urlWithDepth) {
+        final int hostUrlsNumber = hostUrlsNumbers
+                .computeIfAbsent(urlWithDepth.url.getHost(), host -> new AtomicInteger())
+                .incrementAndGet();
+        final WaitingUrl waitingUrl = new WaitingUrl(urlWithDepth, hostUrlsNumber);
+        waitingUrl.entry = newEntry(waitingUrl);
+        if (waitingUrls.putIfAbsent(waitingUrl.key, waitingUrl) != null) {
+//            Already waiting, it's crawled once
+            return;
+        }
+        size.incrementAndGet();
+        queue.add(waitingUrl.entry);
+    }
+
+    @Override
+    public UrlWithDepth poll() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            final Entry polledEntry = entry;
+            final boolean[] isCurrent = new boolean[1];
+            waitingUrls.computeIfPresent(polledEntry.waitingUrl.key, (key, waitingUrl) -> {
+                isCurrent[0] = waitingUrl.entry == polledEntry;
+                return isCurrent[0] ? null : waitingUrl;
+            });
+            if (isCurrent[0]) {
+                size.decrementAndGet();
+                return polledEntry.waitingUrl.urlWithDepth;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void rediscovered(String url) {
+        waitingUrls.computeIfPresent(url, (key, waitingUrl) -> {
+            waitingUrl.inLinksNumber++;
+            final Entry entry = newEntry(waitingUrl);
+            if (entry.score != waitingUrl.entry.score) {
+                waitingUrl.entry = entry;
+                queue.add(entry);
+            }
+            return waitingUrl;
+        });
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    private Entry newEntry(WaitingUrl waitingUrl) {
+        return new Entry(waitingUrl,
+                         scorer.score(waitingUrl.urlWithDepth, waitingUrl.inLinksNumber, waitingUrl.hostUrlsNumber),
+                         nextSequenceNumber.getAndIncrement());
+    }
+
+    /**
+     * Changed only inside of a map computation of its url
+     */
+    private static class WaitingUrl {
+        private final UrlWithDepth urlWithDepth;
+        private final String key;
+        private final int hostUrlsNumber;
+        private int inLinksNumber = 1;
+        private Entry entry;
+
+        WaitingUrl(UrlWithDepth urlWithDepth, int hostUrlsNumber) {
+            this.urlWithDepth = urlWithDepth;
+            this.key = urlWithDepth.url.toString();
+            this.hostUrlsNumber = hostUrlsNumber;
+        }
+    }
+
+    private static class Entry {
+        private final WaitingUrl waitingUrl;
+        private final double score;
+        private final long sequenceNumber;
+
+        Entry(WaitingUrl waitingUrl, double score, long sequenceNumber) {
+            this.waitingUrl = waitingUrl;
+            this.score = score;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+}
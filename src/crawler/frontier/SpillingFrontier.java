@@ -0,0 +1,246 @@
+package crawler.frontier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * FIFO frontier which keeps at most inMemoryCapacity urls on the heap. The rest is written to memory-mapped
+ * segment files as records of [int length][int depth][utf-8 url bytes] and read back in the same order,
+ * so the heap usage doesn't depend on the number of waiting urls.
+ * <p>
+ * A mapping can't be released before it's garbage collected, and a mapped file can't be deleted on Windows,
+ * so segments which were read out are kept and written again instead of being deleted. Their files are deleted
+ * when the frontier is closed. The temporary directory is only created when something is spilled.
+ */
+public class SpillingFrontier implements Frontier {
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final int inMemoryCapacity;
+    /**
+     * Null until the first spill if the frontier creates its own directory
+     */
+    private Path directory;
+    private final boolean ownsDirectory;
+    private final int segmentSize;
+    private final Deque<UrlWithDepth> head = new ArrayDeque<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    /**
+     * Segments which were read out and can be written again
+     */
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    private int spilledUrlsNumber;
+
+    public SpillingFrontier() {
+        this(100_000, null, true, 64 * 1024 * 1024);
+    }
+
+    /**
+     * @param directory where segment files are created. Files are deleted when the frontier is closed
+     */
+    public SpillingFrontier(int inMemoryCapacity, Path directory, int segmentSize) {
+        this(inMemoryCapacity, directory, false, segmentSize);
+    }
+
+    private SpillingFrontier(int inMemoryCapacity, Path directory, boolean ownsDirectory, int segmentSize) {
+        this.inMemoryCapacity = Math.max(1, inMemoryCapacity);
+        this.directory = directory;
+        this.ownsDirectory = ownsDirectory;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public synchronized void offer(UrlWithDepth urlWithDepth) {
+//        Once something is spilled, new urls go to disk as well, otherwise they would overtake the spilled ones
+        if (spilledUrlsNumber == 0 && head.size() < inMemoryCapacity) {
+            head.addLast(urlWithDepth);
+        } else {
+            spilled(urlWithDepth);
+        }
+    }
+
+    @Override
+    public synchronized UrlWithDepth poll() {
+        if (head.isEmpty() && spilledUrlsNumber > 0) {
+            refillHead();
+        }
+        return head.pollFirst();
+    }
+
+    @Override
+    public synchronized int size() {
+        return head.size() + spilledUrlsNumber;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        for (Segment segment : freeSegments) {
+            segment.delete();
+        }
+        segments.clear();
+        freeSegments.clear();
+        head.clear();
+        spilledUrlsNumber = 0;
+        if (ownsDirectory && directory != null) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void spilled(UrlWithDepth urlWithDepth) {
+        final byte[] urlBytes = urlWithDepth.url.toString().getBytes(StandardCharsets.UTF_8);
+        final int recordSize = RECORD_HEADER_SIZE + urlBytes.length;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.freeSpace() < recordSize) {
+            segment = freeSegment(recordSize);
+            segments.addLast(segment);
+        }
+        segment.write(urlWithDepth.depth, urlBytes);
+        spilledUrlsNumber++;
+    }
+
+    private void refillHead() {
+        while (head.size() < inMemoryCapacity && spilledUrlsNumber > 0) {
+            final Segment segment = segments.peekFirst();
+            if (!segment.hasUnreadRecords()) {
+                freed(segments.pollFirst());
+                continue;
+            }
+            final int depth = segment.readDepth();
+            final String url = segment.readUrl();
+            spilledUrlsNumber--;
+            try {
+                head.addLast(new UrlWithDepth(new URL(url), depth));
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
+        }
+//        Keep the last segment for the next writes, but start it from the beginning
+        if (spilledUrlsNumber == 0) {
+            while (segments.size() > 1) {
+                freed(segments.pollFirst());
+            }
+            if (!segments.isEmpty()) {
+                segments.peekFirst().reset();
+            }
+        }
+    }
+
+    private void freed(Segment segment) {
+        segment.reset();
+        freeSegments.addLast(segment);
+    }
+
+    private Segment freeSegment(int recordSize) {
+        for (Segment segment : freeSegments) {
+            if (segment.freeSpace() >= recordSize) {
+                freeSegments.remove(segment);
+                return segment;
+            }
+        }
+        return newSegment(Math.max(segmentSize, recordSize));
+    }
+
+    private Segment newSegment(int size) {
+        if (directory == null) {
+            directory = createdTemporaryDirectory();
+        }
+        try {
+//            Unique names let several frontiers share one directory
+            final Path file = Files.createTempFile(directory, "frontier-", ".segment");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+//                The mapping stays valid after the channel is closed
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path createdTemporaryDirectory() {
+        try {
+            final Path directory = Files.createTempDirectory("crawler-frontier");
+//            Registered before any segment, so at exit it's deleted after segments which couldn't be deleted earlier
+            directory.toFile().deleteOnExit();
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int freeSpace() {
+            return buffer.capacity() - writePosition;
+        }
+
+        boolean hasUnreadRecords() {
+            return readPosition < writePosition;
+        }
+
+        void write(int depth, byte[] urlBytes) {
+            buffer.putInt(writePosition, urlBytes.length);
+            buffer.putInt(writePosition + Integer.BYTES, depth);
+            final ByteBuffer view = buffer.duplicate();
+            view.position(writePosition + RECORD_HEADER_SIZE);
+            view.put(urlBytes);
+            writePosition += RECORD_HEADER_SIZE + urlBytes.length;
+        }
+
+        int readDepth() {
+            return buffer.getInt(readPosition + Integer.BYTES);
+        }
+
+        String readUrl() {
+            final int length = buffer.getInt(readPosition);
+            final byte[] urlBytes = new byte[length];
+            final ByteBuffer view = buffer.duplicate();
+            view.position(readPosition + RECORD_HEADER_SIZE);
+            view.get(urlBytes);
+            readPosition += RECORD_HEADER_SIZE + length;
+            return new String(urlBytes, StandardCharsets.UTF_8);
+        }
+
+        void reset() {
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        /**
+         * The file stays mapped until the buffer is garbage collected. Where a mapped file can't be deleted,
+         * it's deleted when the JVM exits
+         */
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
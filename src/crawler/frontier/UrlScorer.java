@@ -0,0 +1,60 @@
+package crawler.frontier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tells how much a url is worth crawling, see {@link PriorityFrontier}. Higher scores are crawled first.
+ * Scorers can be added up, e.g. {@code UrlScorer.IN_LINKS.plus(UrlScorer.hostBudget(1000))}.
+ */
+@FunctionalInterface
+public interface UrlScorer {
+    /**
+     * Shallower urls first, which is breadth-first order
+     */
+    UrlScorer BREADTH_FIRST = (urlWithDepth, inLinksNumber, hostUrlsNumber) -> -urlWithDepth.depth;
+    /**
+     * Urls linked from more crawled pages first, a level deeper costs as much as one link
+     */
+    UrlScorer IN_LINKS = (urlWithDepth, inLinksNumber, hostUrlsNumber) -> inLinksNumber - urlWithDepth.depth;
+
+    /**
+     * @param inLinksNumber  links to the url found so far
+     * @param hostUrlsNumber urls of the url's host which were offered so far, including this one
+     */
+    double score(UrlWithDepth urlWithDepth, int inLinksNumber, int hostUrlsNumber);
+
+    default UrlScorer plus(UrlScorer other) {
+        return (urlWithDepth, inLinksNumber, hostUrlsNumber) ->
+                score(urlWithDepth, inLinksNumber, hostUrlsNumber)
+                        + other.score(urlWithDepth, inLinksNumber, hostUrlsNumber);
+    }
+
+    /**
+     * @param weights weight of every regular expression which is found in the url, e.g. -10 for "/print/"
+     */
+    static UrlScorer patternWeights(Map<String, Double> weights) {
+        final Map<Pattern, Double> patterns = new LinkedHashMap<>();
+        weights.forEach((regex, weight) -> patterns.put(Pattern.compile(regex), weight));
+        return (urlWithDepth, inLinksNumber, hostUrlsNumber) -> {
+            final String url = urlWithDepth.url.toString();
+            double score = 0;
+            for (Map.Entry<Pattern, Double> pattern : patterns.entrySet()) {
+                if (pattern.getKey().matcher(url).find()) {
+                    score += pattern.getValue();
+                }
+            }
+            return score;
+        };
+    }
+
+    /**
+     * Urls of a host beyond the first urlsPerHost lose a point for every further budget's worth of urls,
+     * so one big host can't crowd out the others
+     */
+    static UrlScorer hostBudget(int urlsPerHost) {
+        return (urlWithDepth, inLinksNumber, hostUrlsNumber) ->
+                -(double) ((hostUrlsNumber - 1) / Math.max(1, urlsPerHost));
+    }
+}
@@ -0,0 +1,18 @@
+package crawler.frontier;
+
+import java.net.URL;
+
+public class UrlWithDepth {
+    public final URL url;
+    public final int depth;
+
+    public UrlWithDepth(URL url, int depth) {
+        this.url = url;
+        this.depth = depth;
+    }
+
+    @Override
+    public String toString() {
+        return url + " (depth " + depth + ")";
+    }
+}
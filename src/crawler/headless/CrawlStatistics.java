@@ -0,0 +1,36 @@
+package crawler.headless;
+
+import crawler.ExtractedPage;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counts crawled pages and bytes. Workers only increment striped counters, so counting doesn't make them contend.
+ */
+public class CrawlStatistics implements Consumer<ExtractedPage> {
+    private final LongAdder pagesNumber = new LongAdder();
+    private final LongAdder bytesNumber = new LongAdder();
+    private final LongAdder nearDuplicatesNumber = new LongAdder();
+
+    @Override
+    public void accept(ExtractedPage page) {
+        pagesNumber.increment();
+        bytesNumber.add(page.bytesNumber);
+        if (page.isNearDuplicate) {
+            nearDuplicatesNumber.increment();
+        }
+    }
+
+    public long pagesNumber() {
+        return pagesNumber.sum();
+    }
+
+    public long bytesNumber() {
+        return bytesNumber.sum();
+    }
+
+    public long nearDuplicatesNumber() {
+        return nearDuplicatesNumber.sum();
+    }
+}
@@ -0,0 +1,366 @@
+package crawler.headless;
+
+import crawler.actions.CrawlMode;
+import crawler.cache.CacheMode;
+import crawler.actions.ThreadingMode;
+import crawler.export.ExportFormat;
+import crawler.frontier.UrlScorer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parameters of a crawl run without the GUI. They're read from a properties file given by --config
+ * and from the command line, which overrides the file. Keys of the file are the option names without dashes.
+ */
+public class HeadlessConfiguration {
+    public static final String USAGE = String.join(
+            System.lineSeparator(),
+            "Options:",
+            "  --seed <url>                 seed url, may be repeated",
+            "  --seeds-file <path>          file with a seed url per line",
+            "  --workers <number>           default 10",
+            "  --depth <number>             default 3",
+            "  --time-limit <seconds>       default no limit",
+            "  --mode level|continuous      default continuous",
+            "  --virtual-threads            run workers on virtual threads",
+            "  --http2                      fetch with the HTTP/2 client",
+            "  --polite                     obey robots.txt and per-host limits",
+            "  --output <path>              file the pages are exported to",
+            "  --format json_lines|gzipped_json_lines|binary   default json_lines",
+            "  --stats-interval <seconds>   default 5",
+            "  --cache-dir <path>           keep pages on disk and revalidate them on the next crawl",
+            "  --replay                     crawl only the pages of the cache, requires --cache-dir",
+            "  --journal <path>             directory the progress is logged to",
+            "  --resume                     resume the crawl of the journal, requires --journal, same seeds and depth",
+            "  --cluster <host:port,...>    addresses of all processes of a crawl split by host",
+            "  --node <number>              index of this process in --cluster, default 0",
+            "  --skip-near-duplicates       don't follow links of pages whose text was already crawled",
+            "  --adaptive                   tune fetches in flight between --min-workers and --workers",
+            "                               by latency and errors",
+            "  --min-workers <number>       default 1",
+            "  --adaptive-per-host <number> tune fetches in flight of every host up to the number as well,",
+            "                               requires --adaptive and --polite",
+            "  --best-first                 crawl the most linked urls first instead of breadth-first,",
+            "                               with --polite the urls of every host are crawled in that order",
+            "  --url-weights <path>         file with a '<weight> <regex>' per line, urls matching the regex",
+            "                               get the weight added to their score, requires --best-first",
+            "  --host-budget <number>       urls per host before the host's urls are pushed back,",
+            "                               requires --best-first",
+            "  --config <path>              properties file with the options above");
+
+    private static final List<String> FLAGS = List.of("virtual-threads", "http2", "polite", "replay", "resume",
+                                                      "skip-near-duplicates", "adaptive",
+                                                      "best-first");
+
+    public final List<URL> seedUrls;
+    public final int workersNumber;
+    public final int crawlDepth;
+    /**
+     * Integer.MAX_VALUE if there's no limit
+     */
+    public final int timeLimitInSeconds;
+    public final CrawlMode crawlMode;
+    public final ThreadingMode threadingMode;
+    public final boolean useHttpClient;
+    public final boolean isPolite;
+    /**
+     * Null if pages aren't exported
+     */
+    public final Path outputPath;
+    public final ExportFormat exportFormat;
+    public final int statsIntervalInSeconds;
+    /**
+     * Null if pages aren't cached
+     */
+    public final Path cacheDirectory;
+    public final CacheMode cacheMode;
+    /**
+     * Null if the progress isn't logged
+     */
+    public final Path journalDirectory;
+    public final boolean resumes;
+    /**
+     * Empty unless the crawl is split between processes
+     */
+    public final List<InetSocketAddress> clusterNodes;
+    public final int nodeIndex;
+    public final boolean skipsNearDuplicates;
+    /**
+     * Lower bound of the adaptive limit of fetches in flight, 0 if it isn't adaptive
+     */
+    public final int minWorkersNumber;
+    /**
+     * Upper bound of the adaptive per-host limits, 0 if hosts aren't limited adaptively
+     */
+    public final int maxConnectionsPerHost;
+    /**
+     * Null if urls are crawled in the order they were found
+     */
+    public final UrlScorer urlScorer;
+
+    public HeadlessConfiguration(List<URL> seedUrls,
+                                 int workersNumber,
+                                 int crawlDepth,
+                                 int timeLimitInSeconds,
+                                 CrawlMode crawlMode,
+                                 ThreadingMode threadingMode,
+                                 boolean useHttpClient,
+                                 boolean isPolite,
+                                 Path outputPath,
+                                 ExportFormat exportFormat,
+                                 int statsIntervalInSeconds,
+                                 Path cacheDirectory,
+                                 CacheMode cacheMode,
+                                 Path journalDirectory,
+                                 boolean resumes,
+                                 List<InetSocketAddress> clusterNodes,
+                                 int nodeIndex,
+                                 boolean skipsNearDuplicates,
+                                 int minWorkersNumber,
+                                 int maxConnectionsPerHost,
+                                 UrlScorer urlScorer) {
+        this.seedUrls = seedUrls;
+        this.workersNumber = workersNumber;
+        this.crawlDepth = crawlDepth;
+        this.timeLimitInSeconds = timeLimitInSeconds;
+        this.crawlMode = crawlMode;
+        this.threadingMode = threadingMode;
+        this.useHttpClient = useHttpClient;
+        this.isPolite = isPolite;
+        this.outputPath = outputPath;
+        this.exportFormat = exportFormat;
+        this.statsIntervalInSeconds = statsIntervalInSeconds;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheMode = cacheMode;
+        this.journalDirectory = journalDirectory;
+        this.resumes = resumes;
+        this.clusterNodes = clusterNodes;
+        this.nodeIndex = nodeIndex;
+        this.skipsNearDuplicates = skipsNearDuplicates;
+        this.minWorkersNumber = minWorkersNumber;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.urlScorer = urlScorer;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an option is unknown or has an invalid value
+     * @throws IOException              if the config or the seeds file can't be read
+     */
+    public static HeadlessConfiguration parsed(String[] args) throws IOException {
+        final Properties commandLine = new Properties();
+        final List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            final String name = args[i].substring(2);
+            if (FLAGS.contains(name)) {
+                commandLine.setProperty(name, "true");
+            } else if (i + 1 < args.length) {
+                if (name.equals("seed")) {
+                    seeds.add(args[++i]);
+                } else {
+                    commandLine.setProperty(name, args[++i]);
+                }
+            } else {
+                throw new IllegalArgumentException("Option " + args[i] + " requires a value");
+            }
+        }
+
+        final Properties properties = new Properties();
+        if (commandLine.getProperty("config") != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(commandLine.getProperty("config")),
+                                                         StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        properties.putAll(commandLine);
+
+        final List<URL> seedUrls = new ArrayList<>();
+        for (String seed : properties.getProperty("seeds", "").split("[\\s,]+")) {
+            addSeed(seed, seedUrls);
+        }
+        for (String seed : seeds) {
+            addSeed(seed, seedUrls);
+        }
+        if (properties.getProperty("seeds-file") != null) {
+            for (String line : Files.readAllLines(Paths.get(properties.getProperty("seeds-file")),
+                                                  StandardCharsets.UTF_8)) {
+                if (!line.startsWith("#")) {
+                    addSeed(line, seedUrls);
+                }
+            }
+        }
+        if (seedUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one seed url is required");
+        }
+
+        final String output = properties.getProperty("output");
+        final String cacheDirectory = properties.getProperty("cache-dir");
+        final boolean isReplay = Boolean.parseBoolean(properties.getProperty("replay"));
+        if (isReplay && cacheDirectory == null) {
+            throw new IllegalArgumentException("Option --replay requires --cache-dir");
+        }
+        final String journalDirectory = properties.getProperty("journal");
+        final boolean resumes = Boolean.parseBoolean(properties.getProperty("resume"));
+        if (resumes && journalDirectory == null) {
+            throw new IllegalArgumentException("Option --resume requires --journal");
+        }
+        final List<InetSocketAddress> clusterNodes = clusterNodesProperty(properties);
+        final int nodeIndex = intProperty(properties, "node", 0);
+        if (!clusterNodes.isEmpty() && nodeIndex >= clusterNodes.size()) {
+            throw new IllegalArgumentException("Option --node requires an index of --cluster: " + nodeIndex);
+        }
+        final int workersNumber = intProperty(properties, "workers", 10);
+        final boolean isAdaptive = Boolean.parseBoolean(properties.getProperty("adaptive"));
+        final int minWorkersNumber = isAdaptive ? intProperty(properties, "min-workers", 1) : 0;
+        if (isAdaptive && (minWorkersNumber < 1 || minWorkersNumber > workersNumber)) {
+            throw new IllegalArgumentException("Option --min-workers requires a number from 1 to --workers: "
+                                                       + minWorkersNumber);
+        }
+        final int maxConnectionsPerHost = intProperty(properties, "adaptive-per-host", 0);
+        if (maxConnectionsPerHost > 0 && (!isAdaptive || !Boolean.parseBoolean(properties.getProperty("polite")))) {
+            throw new IllegalArgumentException("Option --adaptive-per-host requires --adaptive and --polite");
+        }
+        return new HeadlessConfiguration(
+                seedUrls,
+                workersNumber,
+                intProperty(properties, "depth", 3),
+                intProperty(properties, "time-limit", Integer.MAX_VALUE),
+                crawlModeProperty(properties),
+                Boolean.parseBoolean(properties.getProperty("virtual-threads")) ?
+                        ThreadingMode.VIRTUAL :
+                        ThreadingMode.PLATFORM,
+                Boolean.parseBoolean(properties.getProperty("http2")),
+                Boolean.parseBoolean(properties.getProperty("polite")),
+                output != null ? Paths.get(output) : null,
+                exportFormatProperty(properties),
+                Math.max(1, intProperty(properties, "stats-interval", 5)),
+                cacheDirectory != null ? Paths.get(cacheDirectory) : null,
+                isReplay ? CacheMode.REPLAY : CacheMode.REVALIDATE,
+                journalDirectory != null ? Paths.get(journalDirectory) : null,
+                resumes,
+                clusterNodes,
+                nodeIndex,
+                Boolean.parseBoolean(properties.getProperty("skip-near-duplicates")),
+                minWorkersNumber,
+                maxConnectionsPerHost,
+                urlScorerProperty(properties));
+    }
+
+    private static void addSeed(String seed, List<URL> seedUrls) {
+        final String trimmedSeed = seed.trim();
+        if (trimmedSeed.isEmpty()) {
+            return;
+        }
+        try {
+            seedUrls.add(new URL(trimmedSeed));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Incorrect seed url: " + trimmedSeed, e);
+        }
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        final String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int parsedValue = Integer.parseInt(value.trim());
+            if (parsedValue >= 0) {
+                return parsedValue;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Option --" + name + " requires a non-negative number: " + value);
+    }
+
+    private static List<InetSocketAddress> clusterNodesProperty(Properties properties) {
+        final List<InetSocketAddress> nodes = new ArrayList<>();
+        for (String node : properties.getProperty("cluster", "").split("[\\s,]+")) {
+            if (node.isEmpty()) {
+                continue;
+            }
+            final int portStart = node.lastIndexOf(':');
+            try {
+                nodes.add(new InetSocketAddress(node.substring(0, portStart),
+                                                Integer.parseInt(node.substring(portStart + 1))));
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Option --cluster requires host:port addresses: " + node, e);
+            }
+        }
+        return nodes;
+    }
+
+    private static UrlScorer urlScorerProperty(Properties properties) throws IOException {
+        final boolean isBestFirst = Boolean.parseBoolean(properties.getProperty("best-first"));
+        final String urlWeights = properties.getProperty("url-weights");
+        final int hostBudget = intProperty(properties, "host-budget", 0);
+        if (!isBestFirst) {
+            if (urlWeights != null || hostBudget > 0) {
+                throw new IllegalArgumentException("Options --url-weights and --host-budget require --best-first");
+            }
+            return null;
+        }
+        UrlScorer scorer = UrlScorer.IN_LINKS;
+        if (urlWeights != null) {
+            final Map<String, Double> weights = new LinkedHashMap<>();
+            for (String line : Files.readAllLines(Paths.get(urlWeights), StandardCharsets.UTF_8)) {
+                final String trimmedLine = line.trim();
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+                final String[] weightAndRegex = trimmedLine.split("\\s+", 2);
+                try {
+                    weights.put(weightAndRegex[1], Double.parseDouble(weightAndRegex[0]));
+                } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Url weights require '<weight> <regex>' lines: " + line, e);
+                }
+            }
+            try {
+                scorer = scorer.plus(UrlScorer.patternWeights(weights));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Incorrect url weight regex: " + e.getPattern(), e);
+            }
+        }
+        if (hostBudget > 0) {
+            scorer = scorer.plus(UrlScorer.hostBudget(hostBudget));
+        }
+        return scorer;
+    }
+
+    private static CrawlMode crawlModeProperty(Properties properties) {
+        final String value = properties.getProperty("mode", "continuous").trim();
+        if (value.equalsIgnoreCase("level")) {
+            return CrawlMode.LEVEL_BY_LEVEL;
+        }
+        if (value.equalsIgnoreCase("continuous")) {
+            return CrawlMode.CONTINUOUS_FRONTIER;
+        }
+        throw new IllegalArgumentException("Option --mode requires level or continuous: " + value);
+    }
+
+    private static ExportFormat exportFormatProperty(Properties properties) {
+        final String value = properties.getProperty("format", "json_lines").trim();
+        try {
+            return ExportFormat.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown export format: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package crawler.headless;
+
+import crawler.ExtractedPage;
+import crawler.actions.CrawlExecutor;
+import crawler.actions.CrawlHtmlPages;
+import crawler.actions.CrawlOptions;
+import crawler.cache.CacheMode;
+import crawler.cache.CachingFetcher;
+import crawler.cache.PageCache;
+import crawler.checkpoint.CrawlJournal;
+import crawler.cluster.ClusterShard;
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.dedup.NearDuplicateIndex;
+import crawler.dns.DnsCache;
+import crawler.export.ExportSink;
+import crawler.fetching.HttpClientFetcher;
+import crawler.fetching.PageFetcher;
+import crawler.fetching.UrlConnectionFetcher;
+import crawler.frontier.PriorityFrontier;
+import crawler.frontier.SpillingFrontier;
+import crawler.metrics.CrawlMetrics;
+import crawler.politeness.PolitenessPolicy;
+import crawler.politeness.RobotsTxtCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a crawl without Swing: pages go straight from the workers to the export sink,
+ * and throughput is printed periodically.
+ */
+public class HeadlessCrawler {
+    private final HeadlessConfiguration configuration;
+    private final CrawlStatistics statistics = new CrawlStatistics();
+    private final CrawlMetrics metrics = new CrawlMetrics().registeredAsMBean("headless");
+
+    public HeadlessCrawler(HeadlessConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public static void main(String[] args) {
+        final HeadlessConfiguration configuration;
+        try {
+            configuration = HeadlessConfiguration.parsed(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(HeadlessConfiguration.USAGE);
+            System.exit(2);
+            return;
+        }
+        try {
+            new HeadlessCrawler(configuration).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            System.err.println(e.getMessage() + ", run without --resume to start a new crawl");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Blocks until the crawl ends or the time limit is reached
+     *
+     * @throws IOException if the export file couldn't be written or a file of the crawl couldn't be opened
+     */
+    public void run() throws IOException {
+        final PageFetcher networkFetcher = configuration.useHttpClient ?
+                new HttpClientFetcher() :
+                new UrlConnectionFetcher();
+//        Resources are closed in reverse order, the export last. If one can't be opened, the ones before are closed
+        try (ExportSink exportSink = configuration.outputPath != null ?
+                     new ExportSink(configuration.outputPath, configuration.exportFormat) :
+                     null;
+             PageCache pageCache = configuration.cacheDirectory != null ?
+                     new PageCache(configuration.cacheDirectory) :
+                     null;
+             CrawlJournal journal = configuration.journalDirectory != null ?
+                     new CrawlJournal(configuration.journalDirectory, configuration.resumes) :
+                     null;
+             ClusterShard shard = !configuration.clusterNodes.isEmpty() ?
+                     new ClusterShard(configuration.clusterNodes, configuration.nodeIndex) :
+                     null;
+//             A replay doesn't touch the network, not even to resolve hosts
+             DnsCache dnsCache = pageCache == null || configuration.cacheMode != CacheMode.REPLAY ?
+                     new DnsCache() :
+                     null;
+             CrawlExecutor crawlExecutor = new CrawlExecutor(configuration.threadingMode)) {
+            final Consumer<ExtractedPage> pagesConsumer = exportSink != null ?
+                    statistics.andThen(exportSink) :
+                    statistics;
+            final CachingFetcher cachingFetcher = pageCache != null ?
+                    new CachingFetcher(networkFetcher, pageCache, configuration.cacheMode) :
+                    null;
+            final CrawlHtmlPages crawl = new CrawlHtmlPages(
+                    configuration.seedUrls,
+                    configuration.crawlDepth,
+                    new CrawlOptions()
+                            .withWorkersNumber(configuration.workersNumber)
+                            .withCrawlMode(configuration.crawlMode)
+                            .withTimeLimitInSeconds(configuration.timeLimitInSeconds)
+                            .withCrawlExecutor(crawlExecutor)
+                            .withPageFetcher(cachingFetcher != null ? cachingFetcher : networkFetcher)
+                            .withPolitenessPolicy(configuration.isPolite ?
+                                                          new PolitenessPolicy(configuration.maxConnectionsPerHost > 0 ?
+                                                                                       configuration.maxConnectionsPerHost :
+                                                                                       2,
+                                                                               250,
+                                                                               new RobotsTxtCache("web-crawler")) :
+                                                          null)
+                            .withMetrics(metrics)
+                            .withDnsCache(dnsCache)
+                            .withJournal(journal)
+                            .withShard(shard)
+                            .withNearDuplicateIndex(configuration.skipsNearDuplicates ? new NearDuplicateIndex() : null)
+                            .withFrontierFactory(configuration.urlScorer != null ?
+                                                         () -> new PriorityFrontier(configuration.urlScorer) :
+                                                         SpillingFrontier::new)
+                            .withConcurrencyLimiter(configuration.minWorkersNumber > 0 ?
+                                                            new ConcurrencyLimiter(configuration.minWorkersNumber,
+                                                                                   configuration.workersNumber,
+                                                                                   configuration.maxConnectionsPerHost) :
+                                                            null),
+                    pagesConsumer);
+
+            final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "crawl-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long startTime = System.nanoTime();
+            final StatsPrinter statsPrinter = new StatsPrinter(crawl, startTime);
+            scheduler.scheduleAtFixedRate(statsPrinter,
+                                          configuration.statsIntervalInSeconds,
+                                          configuration.statsIntervalInSeconds,
+                                          TimeUnit.SECONDS);
+            try {
+                crawl.execute();
+            } finally {
+                scheduler.shutdownNow();
+            }
+            final double elapsedSeconds = Math.max(1e-9, (System.nanoTime() - startTime) * 1e-9);
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "Done in %.1f s: %d pages (%.1f pages/s), %d bytes (%.1f KB/s)",
+                    elapsedSeconds,
+                    statistics.pagesNumber(),
+                    statistics.pagesNumber() / elapsedSeconds,
+                    statistics.bytesNumber(),
+                    statistics.bytesNumber() / elapsedSeconds / 1024));
+            if (configuration.skipsNearDuplicates) {
+                System.out.println("Near duplicates: " + statistics.nearDuplicatesNumber() + " pages");
+            }
+            if (shard != null) {
+                System.out.println(String.format(
+                        Locale.ROOT,
+                        "Node %d of %d: %d urls forwarded, %d urls received",
+                        configuration.nodeIndex,
+                        shard.nodesNumber(),
+                        shard.sentUrlsNumber(),
+                        shard.receivedUrlsNumber()));
+            }
+            if (cachingFetcher != null) {
+                System.out.println(String.format(
+                        Locale.ROOT,
+                        "Page cache: %d pages, %d not modified (%d bytes saved), %d misses",
+                        pageCache.size(),
+                        cachingFetcher.notModifiedPagesNumber(),
+                        cachingFetcher.savedBytesNumber(),
+                        cachingFetcher.missesNumber()));
+            }
+            System.out.println(metrics.formatted());
+        }
+    }
+
+    /**
+     * Prints the rates over the last interval and the totals. Failed fetches are only counted here,
+     * their types are printed at the end
+     */
+    private class StatsPrinter implements Runnable {
+        private final CrawlHtmlPages crawl;
+        private long previousTime;
+        private long previousPagesNumber = 0;
+        private long previousBytesNumber = 0;
+
+        StatsPrinter(CrawlHtmlPages crawl, long startTime) {
+            this.crawl = crawl;
+            this.previousTime = startTime;
+        }
+
+        @Override
+        public void run() {
+            final long time = System.nanoTime();
+            final long pagesNumber = statistics.pagesNumber();
+            final long bytesNumber = statistics.bytesNumber();
+            final double intervalInSeconds = Math.max(1e-9, (time - previousTime) * 1e-9);
+            System.out.println(String.format(
+                    Locale.ROOT,
+                    "pages: %d, %.1f pages/s, %.1f KB/s, frontier: %d, errors: %d",
+                    pagesNumber,
+                    (pagesNumber - previousPagesNumber) / intervalInSeconds,
+                    (bytesNumber - previousBytesNumber) / intervalInSeconds / 1024,
+                    crawl.frontierSize(),
+                    metrics.getErrorsNumber()));
+            previousTime = time;
+            previousPagesNumber = pagesNumber;
+            previousBytesNumber = bytesNumber;
+        }
+    }
+}
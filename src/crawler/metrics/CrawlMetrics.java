@@ -0,0 +1,185 @@
+package crawler.metrics;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Latencies of the crawl stages and crawl counters. Workers record into striped counters and histograms,
+ * so instrumentation doesn't serialize them. Readers get a consistent enough snapshot at any time.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+    private final Map<CrawlStage, LatencyHistogram> stageLatencies = new EnumMap<>(CrawlStage.class);
+    private final LongAdder pagesNumber = new LongAdder();
+    private final LongAdder bytesNumber = new LongAdder();
+    private final LongAdder timeoutsNumber = new LongAdder();
+    private final Map<String, LongAdder> errorsByType = new ConcurrentHashMap<>();
+    private volatile IntSupplier frontierSize = () -> 0;
+    private volatile IntSupplier concurrencyLimit = () -> 0;
+
+    public CrawlMetrics() {
+        for (CrawlStage stage : CrawlStage.values()) {
+            stageLatencies.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public void record(CrawlStage stage, long durationInNanos) {
+        stageLatencies.get(stage).record(durationInNanos);
+    }
+
+    public void recordPage(long bytesNumber) {
+        pagesNumber.increment();
+        this.bytesNumber.add(bytesNumber);
+    }
+
+    /**
+     * Counts a failed fetch by the type of its cause. Timeouts are counted separately as well
+     */
+    public void recordError(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        errorsByType.computeIfAbsent(cause.getClass().getSimpleName(), type -> new LongAdder()).increment();
+        if (cause instanceof SocketTimeoutException
+                || cause instanceof HttpTimeoutException
+                || cause instanceof TimeoutException) {
+            timeoutsNumber.increment();
+        }
+    }
+
+    /**
+     * @param frontierSize polled whenever the frontier size is read
+     */
+    public void trackFrontierSize(IntSupplier frontierSize) {
+        this.frontierSize = frontierSize;
+    }
+
+    /**
+     * @param concurrencyLimit polled whenever the limit of fetches in flight is read
+     */
+    public void trackConcurrencyLimit(IntSupplier concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public LatencyHistogram stageLatency(CrawlStage stage) {
+        return stageLatencies.get(stage);
+    }
+
+    @Override
+    public long getPagesNumber() {
+        return pagesNumber.sum();
+    }
+
+    @Override
+    public long getBytesNumber() {
+        return bytesNumber.sum();
+    }
+
+    @Override
+    public long getErrorsNumber() {
+        long errorsNumber = 0;
+        for (LongAdder errors : errorsByType.values()) {
+            errorsNumber += errors.sum();
+        }
+        return errorsNumber;
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByType() {
+        final Map<String, Long> errors = new TreeMap<>();
+        errorsByType.forEach((type, number) -> errors.put(type, number.sum()));
+        return errors;
+    }
+
+    @Override
+    public long getTimeoutsNumber() {
+        return timeoutsNumber.sum();
+    }
+
+    @Override
+    public int getFrontierSize() {
+        return frontierSize.getAsInt();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getAsInt();
+    }
+
+    @Override
+    public Map<String, LatencySummary> getStageLatencies() {
+        final Map<String, LatencySummary> latencies = new LinkedHashMap<>();
+        stageLatencies.forEach((stage, histogram) -> latencies.put(stage.name(), histogram.summary()));
+        return latencies;
+    }
+
+    @Override
+    public void reset() {
+        stageLatencies.values().forEach(LatencyHistogram::reset);
+        pagesNumber.reset();
+        bytesNumber.reset();
+        timeoutsNumber.reset();
+        errorsByType.clear();
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server as crawler:type=CrawlMetrics,name=&lt;name&gt;,
+     * replacing metrics registered under the same name
+     */
+    public CrawlMetrics registeredAsMBean(String name) {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName("crawler:type=CrawlMetrics,name=" + ObjectName.quote(name));
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (InstanceNotFoundException ignored) {
+            }
+            mBeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        return this;
+    }
+
+    /**
+     * Table of the stage latencies and the counters
+     */
+    public String formatted() {
+        final StringBuilder text = new StringBuilder(String.format(
+                Locale.ROOT, "%-19s %9s %9s %9s %9s %9s%n", "stage, ms", "count", "mean", "p50", "p99", "max"));
+        stageLatencies.forEach((stage, histogram) -> {
+            final LatencySummary summary = histogram.summary();
+            text.append(String.format(Locale.ROOT, "%-19s %9d %9.2f %9.2f %9.2f %9.2f%n",
+                                      stage.name().toLowerCase(Locale.ROOT),
+                                      summary.getCount(),
+                                      summary.getMeanInNanos() * 1e-6,
+                                      summary.getP50InNanos() * 1e-6,
+                                      summary.getP99InNanos() * 1e-6,
+                                      summary.getMaxInNanos() * 1e-6));
+        });
+        text.append(String.format(Locale.ROOT, "pages: %d, bytes: %d, frontier: %d, timeouts: %d, errors: %d %s",
+                                  getPagesNumber(), getBytesNumber(), getFrontierSize(), getTimeoutsNumber(),
+                                  getErrorsNumber(), getErrorsByType()));
+        if (getConcurrencyLimit() > 0) {
+            text.append(", fetches limit: ").append(getConcurrencyLimit());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package crawler.metrics;
+
+import java.util.Map;
+
+public interface CrawlMetricsMXBean {
+    long getPagesNumber();
+
+    long getBytesNumber();
+
+    long getErrorsNumber();
+
+    /**
+     * Failed fetches by the simple class name of the error
+     */
+    Map<String, Long> getErrorsByType();
+
+    long getTimeoutsNumber();
+
+    int getFrontierSize();
+
+    /**
+     * Fetches allowed in flight by the adaptive limit, 0 if the crawl isn't limited
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * Latencies by {@link CrawlStage} name
+     */
+    Map<String, LatencySummary> getStageLatencies();
+
+    void reset();
+}
@@ -0,0 +1,21 @@
+package crawler.metrics;
+
+public enum CrawlStage {
+    /**
+     * Waiting for the crawler's DNS cache before fetching. Close to zero when the host was prefetched
+     */
+    DNS,
+    /**
+     * DNS lookup and TCP/TLS handshake. Not measured by fetchers which pool connections internally
+     */
+    CONNECT,
+    TIME_TO_FIRST_BYTE,
+    DOWNLOAD,
+    LINK_PARSING,
+    URL_RESOLUTION,
+    /**
+     * Marking the links as seen and adding the new ones to the frontier
+     */
+    DEDUP,
+    CONSUMER_DELIVERY
+}
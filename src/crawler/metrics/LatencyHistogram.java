@@ -0,0 +1,100 @@
+package crawler.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of durations in nanoseconds. Every power of two is split into 16 buckets,
+ * so a percentile is off by at most 1/16 of its value. Recording is a few atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS_NUMBER = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS_NUMBER = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS_NUMBER;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_NUMBER);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Negative durations mean that the duration is unknown, they aren't recorded
+     */
+    public void record(long durationInNanos) {
+        if (durationInNanos < 0) {
+            return;
+        }
+        buckets.incrementAndGet(bucketIndex(durationInNanos));
+        count.increment();
+        sum.add(durationInNanos);
+        max.accumulate(durationInNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public LatencySummary summary() {
+        final long[] counts = new long[BUCKETS_NUMBER];
+        long total = 0;
+        for (int i = 0; i < BUCKETS_NUMBER; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        final long maxValue = max.get();
+//        The middle of the last bucket may be above the largest recorded value
+        return new LatencySummary(total,
+                                  total == 0 ? 0 : sum.sum() / total,
+                                  Math.min(maxValue, percentile(counts, total, 0.5)),
+                                  Math.min(maxValue, percentile(counts, total, 0.9)),
+                                  Math.min(maxValue, percentile(counts, total, 0.99)),
+                                  maxValue);
+    }
+
+    /**
+     * Not atomic with concurrent recording, a few values recorded meanwhile may be lost or kept
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS_NUMBER; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_NUMBER; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketMiddle(i);
+            }
+        }
+        return bucketMiddle(BUCKETS_NUMBER - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS_NUMBER) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS_NUMBER - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS_NUMBER + subBucket;
+    }
+
+    private static long bucketMiddle(int index) {
+        if (index < SUB_BUCKETS_NUMBER) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS_NUMBER + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS_NUMBER;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS_NUMBER + subBucket) << (exponent - SUB_BUCKET_BITS)) + width / 2;
+    }
+}
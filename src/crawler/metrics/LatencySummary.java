@@ -0,0 +1,50 @@
+package crawler.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of a {@link LatencyHistogram}. Getters make it an open type, so JMX clients show it without the class.
+ */
+public class LatencySummary {
+    private final long count;
+    private final long meanInNanos;
+    private final long p50InNanos;
+    private final long p90InNanos;
+    private final long p99InNanos;
+    private final long maxInNanos;
+
+    @ConstructorProperties({"count", "meanInNanos", "p50InNanos", "p90InNanos", "p99InNanos", "maxInNanos"})
+    public LatencySummary(long count, long meanInNanos, long p50InNanos, long p90InNanos, long p99InNanos,
+                          long maxInNanos) {
+        this.count = count;
+        this.meanInNanos = meanInNanos;
+        this.p50InNanos = p50InNanos;
+        this.p90InNanos = p90InNanos;
+        this.p99InNanos = p99InNanos;
+        this.maxInNanos = maxInNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanInNanos() {
+        return meanInNanos;
+    }
+
+    public long getP50InNanos() {
+        return p50InNanos;
+    }
+
+    public long getP90InNanos() {
+        return p90InNanos;
+    }
+
+    public long getP99InNanos() {
+        return p99InNanos;
+    }
+
+    public long getMaxInNanos() {
+        return maxInNanos;
+    }
+}
@@ -0,0 +1,227 @@
+package crawler.politeness;
+
+import crawler.concurrency.ConcurrencyLimiter;
+import crawler.frontier.Frontier;
+import crawler.frontier.UrlWithDepth;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Per-host limits on top of another frontier, which keeps the waiting urls and decides their order.
+ * A url is handed out only if its host has a free connection and the minimal delay (or the robots.txt crawl delay)
+ * has passed since both the start and the end of the previous request to the host.
+ * With a {@link ConcurrencyLimiter} the connections of a host are limited by its adaptive per-host limit as well.
+ * <p>
+ * Urls are taken from the wrapped frontier in its order and buffered in a queue per host until their host is ready.
+ * Hosts which can be served are kept in a set ordered by the time of their next allowed request, and ties
+ * by the time they were served last, so ready hosts are served round-robin and a poll takes O(log hosts).
+ * At most maxBufferedUrls urls are buffered, so most urls stay in the wrapped frontier, e.g. on disk.
+ * When the buffer is full of urls of hosts which have to wait, nothing more is taken until one of them is served.
+ */
+public class PoliteFrontier implements Frontier {
+    private static final int DEFAULT_MAX_BUFFERED_URLS = 10_000;
+
+    private final Frontier frontier;
+    private final PolitenessPolicy policy;
+    /**
+     * Null if only the policy limits connections
+     */
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final int maxBufferedUrls;
+    private final Map<String, HostQueue> hostQueues = new HashMap<>();
+    /**
+     * Hosts which have buffered urls and a free connection
+     */
+    private final NavigableSet<HostQueue> readyHosts = new TreeSet<>(
+            Comparator.<HostQueue>comparingLong(hostQueue -> hostQueue.nextRequestTime)
+                    .thenComparingLong(hostQueue -> hostQueue.servedOrder));
+    /**
+     * Hosts which became idle before their delay was over, roughly in the order their delays end.
+     * They're forgotten by {@link #poll()} once the delay is over
+     */
+    private final Deque<HostQueue> idleHostsInDelay = new ArrayDeque<>();
+    private long servedNumber;
+    private int bufferedUrlsNumber;
+
+    public PoliteFrontier(Frontier frontier, PolitenessPolicy policy) {
+        this(frontier, policy, null);
+    }
+
+    public PoliteFrontier(Frontier frontier, PolitenessPolicy policy, ConcurrencyLimiter concurrencyLimiter) {
+        this(frontier, policy, concurrencyLimiter, DEFAULT_MAX_BUFFERED_URLS);
+    }
+
+    public PoliteFrontier(Frontier frontier,
+                          PolitenessPolicy policy,
+                          ConcurrencyLimiter concurrencyLimiter,
+                          int maxBufferedUrls) {
+        this.frontier = frontier;
+        this.policy = policy;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.maxBufferedUrls = Math.max(1, maxBufferedUrls);
+    }
+
+    /**
+     * Keeps the delays of the hosts crawled by the previous level, so the first requests of this level
+     * don't come right after the last ones of the previous level. Called once the previous level is crawled
+     */
+    public synchronized void continuedFrom(PoliteFrontier previousLevel) {
+        final long now = System.currentTimeMillis();
+        synchronized (previousLevel) {
+            for (HostQueue previousHostQueue : previousLevel.hostQueues.values()) {
+                if (previousHostQueue.nextRequestTime > now && !hostQueues.containsKey(previousHostQueue.host)) {
+                    final HostQueue hostQueue = new HostQueue(previousHostQueue.host, ++servedNumber);
+                    hostQueue.nextRequestTime = previousHostQueue.nextRequestTime;
+                    hostQueues.put(hostQueue.host, hostQueue);
+                    hostQueue.isWaitingToBeForgotten = true;
+                    idleHostsInDelay.addLast(hostQueue);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void offer(UrlWithDepth urlWithDepth) {
+        frontier.offer(urlWithDepth);
+    }
+
+    @Override
+    public synchronized UrlWithDepth poll() {
+        final long now = System.currentTimeMillis();
+        forgetIdleHosts(now);
+        while (true) {
+            final HostQueue hostQueue = readyHosts.isEmpty() ? null : readyHosts.first();
+            if (hostQueue != null && hostQueue.nextRequestTime <= now) {
+                readyHosts.pollFirst();
+                hostQueue.isReady = false;
+//                The adaptive limit could have shrunk, the host is ready again once a request completes
+                if (hostQueue.connectionsNumber >= maxConnectionsNumber(hostQueue.host)) {
+                    continue;
+                }
+                final UrlWithDepth next = hostQueue.urls.pollFirst();
+                bufferedUrlsNumber--;
+                hostQueue.connectionsNumber++;
+                hostQueue.nextRequestTime = now + delayInMillis(hostQueue.host);
+                hostQueue.servedOrder = ++servedNumber;
+                updateReadiness(hostQueue);
+                return next;
+            }
+//            No buffered url can be handed out, so take the next ones from the wrapped frontier
+            final UrlWithDepth next;
+            if (bufferedUrlsNumber >= maxBufferedUrls || (next = frontier.poll()) == null) {
+                return null;
+            }
+            final HostQueue nextHostQueue = hostQueues.computeIfAbsent(
+                    RobotsTxtCache.hostKey(next.url), host -> new HostQueue(host, ++servedNumber));
+            nextHostQueue.urls.addLast(next);
+            bufferedUrlsNumber++;
+            updateReadiness(nextHostQueue);
+        }
+    }
+
+    @Override
+    public synchronized void completed(UrlWithDepth urlWithDepth) {
+        frontier.completed(urlWithDepth);
+        final HostQueue hostQueue = hostQueues.get(RobotsTxtCache.hostKey(urlWithDepth.url));
+        if (hostQueue == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+//        The time is a part of the ordering, so it's changed only while the host isn't in the set
+        if (hostQueue.isReady) {
+            readyHosts.remove(hostQueue);
+            hostQueue.isReady = false;
+        }
+        hostQueue.connectionsNumber--;
+        hostQueue.nextRequestTime = Math.max(hostQueue.nextRequestTime, now + delayInMillis(hostQueue.host));
+        updateReadiness(hostQueue);
+//        Idle hosts are forgotten only when their delay is over, otherwise a new url could skip it
+        if (hostQueue.connectionsNumber == 0 && hostQueue.urls.isEmpty()) {
+            if (hostQueue.nextRequestTime <= now) {
+                hostQueues.remove(hostQueue.host);
+            } else if (!hostQueue.isWaitingToBeForgotten) {
+                hostQueue.isWaitingToBeForgotten = true;
+                idleHostsInDelay.addLast(hostQueue);
+            }
+        }
+    }
+
+    @Override
+    public void rediscovered(String url) {
+        frontier.rediscovered(url);
+    }
+
+    /**
+     * Synchronized, so a url which is being moved to the buffer isn't missed
+     */
+    @Override
+    public synchronized int size() {
+        return bufferedUrlsNumber + frontier.size();
+    }
+
+    @Override
+    public void close() {
+        frontier.close();
+    }
+
+    private void updateReadiness(HostQueue hostQueue) {
+        if (!hostQueue.isReady
+                && !hostQueue.urls.isEmpty()
+                && hostQueue.connectionsNumber < maxConnectionsNumber(hostQueue.host)) {
+            hostQueue.isReady = true;
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    /**
+     * Stops at the first host whose delay isn't over, the hosts behind it are checked by a later poll
+     */
+    private void forgetIdleHosts(long now) {
+        HostQueue hostQueue;
+        while ((hostQueue = idleHostsInDelay.peekFirst()) != null && hostQueue.nextRequestTime <= now) {
+            idleHostsInDelay.pollFirst();
+            hostQueue.isWaitingToBeForgotten = false;
+//            The host could have got new urls meanwhile
+            if (hostQueue.connectionsNumber == 0 && hostQueue.urls.isEmpty()) {
+                hostQueues.remove(hostQueue.host, hostQueue);
+            }
+        }
+    }
+
+    private int maxConnectionsNumber(String host) {
+        return concurrencyLimiter != null ?
+                Math.min(policy.maxConnectionsPerHost, concurrencyLimiter.hostLimit(host)) :
+                policy.maxConnectionsPerHost;
+    }
+
+    private long delayInMillis(String host) {
+        final long crawlDelay = policy.robotsTxtCache != null ?
+                policy.robotsTxtCache.cachedCrawlDelayInMillis(host) :
+                0;
+        return Math.max(policy.minDelayBetweenRequestsInMillis, crawlDelay);
+    }
+
+    private static class HostQueue {
+        private final String host;
+        private final Deque<UrlWithDepth> urls = new ArrayDeque<>();
+        private int connectionsNumber;
+        private long nextRequestTime;
+        /**
+         * Unique, so hosts with the same next request time are different elements of the ready set
+         */
+        private long servedOrder;
+        private boolean isReady;
+        private boolean isWaitingToBeForgotten;
+
+        HostQueue(String host, long servedOrder) {
+            this.host = host;
+            this.servedOrder = servedOrder;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package crawler.politeness;
+
+public class PolitenessPolicy {
+    public final int maxConnectionsPerHost;
+    public final long minDelayBetweenRequestsInMillis;
+    /**
+     * Null if robots.txt files shouldn't be fetched and respected
+     */
+    public final RobotsTxtCache robotsTxtCache;
+
+    public PolitenessPolicy(int maxConnectionsPerHost, long minDelayBetweenRequestsInMillis, RobotsTxtCache robotsTxtCache) {
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        this.minDelayBetweenRequestsInMillis = Math.max(0, minDelayBetweenRequestsInMillis);
+        this.robotsTxtCache = robotsTxtCache;
+    }
+}
@@ -0,0 +1,166 @@
+package crawler.politeness;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rules of one robots.txt group. The longest matching pattern decides, Allow wins a tie.
+ * Patterns may contain '*' (any characters) and end with '$' (end of the path).
+ */
+public class RobotsRules {
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(Collections.emptyList(), 0);
+
+    private final List<Rule> rules;
+    private final long crawlDelayInMillis;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayInMillis) {
+        this.rules = rules;
+        this.crawlDelayInMillis = crawlDelayInMillis;
+    }
+
+    /**
+     * Uses the group of the given user-agent token if there is one, otherwise the '*' group.
+     */
+    public static RobotsRules parsed(String robotsTxt, String userAgentToken) {
+        final String token = userAgentToken.toLowerCase(Locale.ROOT);
+        final Group specificGroup = new Group();
+        final Group wildcardGroup = new Group();
+        final List<Group> currentGroups = new ArrayList<>();
+        boolean isReadingUserAgents = false;
+        for (String line : robotsTxt.split("\r?\n|\r")) {
+            final int commentIndex = line.indexOf('#');
+            final String content = (commentIndex >= 0 ? line.substring(0, commentIndex) : line).trim();
+            final int colonIndex = content.indexOf(':');
+            if (colonIndex < 0) {
+                continue;
+            }
+            final String field = content.substring(0, colonIndex).trim().toLowerCase(Locale.ROOT);
+            final String value = content.substring(colonIndex + 1).trim();
+            if (field.equals("user-agent")) {
+                if (!isReadingUserAgents) {
+                    currentGroups.clear();
+                    isReadingUserAgents = true;
+                }
+                final String agent = value.toLowerCase(Locale.ROOT);
+                if (agent.equals("*")) {
+                    currentGroups.add(wildcardGroup);
+                } else if (!token.isEmpty() && agent.equals(token)) {
+                    currentGroups.add(specificGroup);
+                }
+                continue;
+            }
+            isReadingUserAgents = false;
+            for (Group group : currentGroups) {
+                switch (field) {
+                    case "allow":
+                        group.add(value, true);
+                        break;
+                    case "disallow":
+                        group.add(value, false);
+                        break;
+                    case "crawl-delay":
+                        group.setCrawlDelay(value);
+                        break;
+                }
+            }
+        }
+        final Group group = specificGroup.isDeclared ? specificGroup : wildcardGroup;
+        return new RobotsRules(group.rules, group.crawlDelayInMillis);
+    }
+
+    public boolean isAllowed(URL url) {
+        final String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        Rule decidingRule = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (decidingRule == null
+                    || rule.pattern.length() > decidingRule.pattern.length()
+                    || (rule.pattern.length() == decidingRule.pattern.length() && rule.isAllowing))) {
+                decidingRule = rule;
+            }
+        }
+        return decidingRule == null || decidingRule.isAllowing;
+    }
+
+    public long crawlDelayInMillis() {
+        return crawlDelayInMillis;
+    }
+
+    private static class Group {
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayInMillis;
+        private boolean isDeclared;
+
+        void add(String pattern, boolean isAllowing) {
+            isDeclared = true;
+//            An empty Disallow allows everything
+            if (!pattern.isEmpty()) {
+                rules.add(new Rule(pattern, isAllowing));
+            }
+        }
+
+        void setCrawlDelay(String value) {
+            isDeclared = true;
+            try {
+                crawlDelayInMillis = (long) (Double.parseDouble(value) * 1000);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Path prefix pattern, where '*' matches any characters and a trailing '$' anchors the pattern
+     * to the end of the path. Only the last '*' is backtracked to, so matching takes O(path * pattern) time
+     * in the worst case and never recurses, and a hostile robots.txt can't make it exponential.
+     */
+    private static class Rule {
+        private final String pattern;
+        private final boolean isAllowing;
+        private final boolean isAnchored;
+        /**
+         * Length of the pattern without the anchor
+         */
+        private final int patternLength;
+
+        Rule(String pattern, boolean isAllowing) {
+            this.pattern = pattern;
+            this.isAllowing = isAllowing;
+            this.isAnchored = pattern.endsWith("$");
+            this.patternLength = isAnchored ? pattern.length() - 1 : pattern.length();
+        }
+
+        /**
+         * After a mismatch the pattern goes back to the character after the last '*', which takes one more character
+         * of the path. Earlier stars never have to be retried, as the last one can take whatever they would.
+         */
+        boolean matches(String path) {
+            int pathIndex = 0;
+            int patternIndex = 0;
+            int lastStarIndex = -1;
+            int pathIndexAfterLastStar = 0;
+            while (pathIndex < path.length()) {
+                if (patternIndex == patternLength && !isAnchored) {
+                    return true;
+                }
+                if (patternIndex < patternLength && pattern.charAt(patternIndex) == '*') {
+                    lastStarIndex = patternIndex++;
+                    pathIndexAfterLastStar = pathIndex;
+                } else if (patternIndex < patternLength && pattern.charAt(patternIndex) == path.charAt(pathIndex)) {
+                    patternIndex++;
+                    pathIndex++;
+                } else if (lastStarIndex >= 0) {
+                    patternIndex = lastStarIndex + 1;
+                    pathIndex = ++pathIndexAfterLastStar;
+                } else {
+                    return false;
+                }
+            }
+            while (patternIndex < patternLength && pattern.charAt(patternIndex) == '*') {
+                patternIndex++;
+            }
+            return patternIndex == patternLength;
+        }
+    }
+}
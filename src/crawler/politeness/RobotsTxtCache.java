@@ -0,0 +1,84 @@
+package crawler.politeness;
+
+import crawler.utilities.WebCommunicationUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetches robots.txt once per host and keeps the parsed rules. A robots.txt which can't be loaded allows everything.
+ */
+public class RobotsTxtCache {
+    private final String userAgentToken;
+    private final RobotsTxtLoader loader;
+    private final Map<String, CompletableFuture<RobotsRules>> rulesByHost = new ConcurrentHashMap<>();
+
+    public RobotsTxtCache(String userAgentToken) {
+        this(userAgentToken, RobotsTxtCache::loadedWithUrlConnection);
+    }
+
+    public RobotsTxtCache(String userAgentToken, RobotsTxtLoader loader) {
+        this.userAgentToken = userAgentToken;
+        this.loader = loader;
+    }
+
+    /**
+     * Loads robots.txt on the calling thread if it's the first url of the host.
+     * Other threads asking for the same host wait for that load.
+     */
+    public RobotsRules rulesFor(URL url) {
+        final String host = hostKey(url);
+        final CompletableFuture<RobotsRules> loadedRules = new CompletableFuture<>();
+        final CompletableFuture<RobotsRules> cachedRules = rulesByHost.putIfAbsent(host, loadedRules);
+        if (cachedRules != null) {
+            return cachedRules.join();
+        }
+        RobotsRules rules = RobotsRules.ALLOW_ALL;
+        try {
+            final String robotsTxt = loader.loaded(new URL(url.getProtocol(), url.getHost(), url.getPort(), "/robots.txt"));
+            if (robotsTxt != null) {
+                rules = RobotsRules.parsed(robotsTxt, userAgentToken);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Failed to load robots.txt of " + host + ": " + e);
+        }
+        loadedRules.complete(rules);
+        return rules;
+    }
+
+    /**
+     * Doesn't load anything, so it's safe to call while holding locks.
+     *
+     * @return crawl delay of the host or 0 if its robots.txt isn't loaded yet
+     */
+    public long cachedCrawlDelayInMillis(String host) {
+        final CompletableFuture<RobotsRules> rules = rulesByHost.get(host);
+        return rules != null && rules.isDone() ? rules.join().crawlDelayInMillis() : 0;
+    }
+
+    public static String hostKey(URL url) {
+        final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    /**
+     * @return robots.txt content or null if the server doesn't have it
+     */
+    private static String loadedWithUrlConnection(URL robotsTxtUrl) throws IOException {
+        final URLConnection connection = WebCommunicationUtils.establishedCustomConnection(robotsTxtUrl);
+        if (connection instanceof HttpURLConnection && ((HttpURLConnection) connection).getResponseCode() >= 400) {
+            return null;
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            return new String(inputStream.readNBytes(512 * 1024), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package crawler.politeness;
+
+import java.io.IOException;
+import java.net.URL;
+
+@FunctionalInterface
+public interface RobotsTxtLoader {
+    /**
+     * @return robots.txt content or null if the server doesn't have it
+     */
+    String loaded(URL robotsTxtUrl) throws IOException;
+}
@@ -2,67 +2,175 @@ package crawler.statemachine.guistatemachine;
 
 import crawler.actions.Action;
 
+import java.lang.reflect.Array;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Events can be sent from any thread, sending never blocks. They're queued in a lock-free queue and handled
+ * one by one in the order they were sent by a single dispatcher thread, which also executes the actions.
+ * So actions mustn't block for long, long work like a crawl should be handed to another thread.
+ * <p>
+ * Transitions are compiled into an array of every state indexed by the event ordinal, so finding
+ * the transition of an event doesn't depend on the number of transitions.
+ */
 public class StateMachine<
         St extends Enum<St>,
         Ev extends Enum<Ev>> {
-    private final Map<Transition<St, Ev>, Action> mappedActions;
-    private final ExecutorService serviceForActionsExecution;
+    private final EnumMap<St, MappedTransition<St, Ev>[]> transitionsBySourceState;
+    private final Queue<Ev> events = new ConcurrentLinkedQueue<>();
+    /**
+     * Coalesced events which are waiting in the queue, by event ordinal: 1 if the event is waiting
+     */
+    private final AtomicIntegerArray waitingCoalescedEvents;
+    private final boolean[] isCoalesced;
+    private final Thread dispatcher;
+    private volatile boolean isDispatcherIdle = false;
 
+    /**
+     * Changed only by the dispatcher
+     */
     private St currentState;
 
     public StateMachine(St initState, Map<Transition<St, Ev>, Action> mappedActions) {
-        this.serviceForActionsExecution = Executors.newFixedThreadPool(2);
+        this(initState, mappedActions, Set.of());
+    }
+
+    /**
+     * @param coalescedEvents events which aren't queued again while they're still waiting in the queue,
+     *                        e.g. the ones sent on every click of a button
+     * @throws IllegalArgumentException if there's more than one transition for a state and an event
+     */
+    public StateMachine(St initState, Map<Transition<St, Ev>, Action> mappedActions, Set<Ev> coalescedEvents) {
         this.currentState = initState;
-        this.mappedActions = mappedActions;
+        final int eventsNumber = eventsNumber(mappedActions, coalescedEvents);
+        this.transitionsBySourceState = compiledTransitions(initState.getDeclaringClass(), eventsNumber, mappedActions);
+        this.waitingCoalescedEvents = new AtomicIntegerArray(eventsNumber);
+        this.isCoalesced = new boolean[eventsNumber];
+        for (Ev event : coalescedEvents) {
+            isCoalesced[event.ordinal()] = true;
+        }
 
 //        FOR LOGGING
-        printTransitions();
-    }
+        printTransitions(mappedActions);
 
-    public synchronized void handleEvent(Ev event) {
-        correspondingTransition(currentState, event)
-                .ifPresent(tr -> {
-                    currentState = tr.targetState;
+        this.dispatcher = new Thread(this::dispatchEvents, "gui-state-machine");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
 
-                    //                   FOR LOGGING
-                    System.out.println(tr);
-                    System.out.println();
+    public void handleEvent(Ev event) {
+        final int ordinal = event.ordinal();
+        if (ordinal < isCoalesced.length
+                && isCoalesced[ordinal]
+                && !waitingCoalescedEvents.compareAndSet(ordinal, 0, 1)) {
+            return;
+        }
+        events.offer(event);
+//        The dispatcher checks the queue after it's marked as idle, so it either sees the event or gets unparked
+        if (isDispatcherIdle) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
 
-                    executeActions(mappedActions, tr);
-                });
+    private void dispatchEvents() {
+        while (true) {
+            Ev event;
+            while ((event = events.poll()) != null) {
+                dispatched(event);
+            }
+            isDispatcherIdle = true;
+            if (events.isEmpty()) {
+                LockSupport.park(this);
+            }
+            isDispatcherIdle = false;
+        }
     }
 
-    private Optional<Transition<St, Ev>> correspondingTransition(St sourceState, Ev event) {
-        Transition<St, Ev> out = null;
-        final Set<Transition<St, Ev>> transitions = mappedActions.keySet();
-        for (Transition<St, Ev> cur : transitions) {
-            if (cur.sourceState.equals(sourceState) && cur.event.equals(event)) {
-                out = cur;
-                break;
+    private void dispatched(Ev event) {
+        final int ordinal = event.ordinal();
+        if (ordinal < isCoalesced.length && isCoalesced[ordinal]) {
+            waitingCoalescedEvents.set(ordinal, 0);
+        }
+        final MappedTransition<St, Ev> mappedTransition = correspondingTransition(currentState, event);
+        if (mappedTransition == null) {
+            return;
+        }
+        currentState = mappedTransition.transition.targetState;
+
+//        FOR LOGGING
+        System.out.println(mappedTransition.transition);
+        System.out.println();
+
+        if (mappedTransition.action != null) {
+            try {
+                mappedTransition.action.execute();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
             }
         }
-        return Optional.ofNullable(out);
     }
 
-    private void executeActions(Map<Transition<St, Ev>, Action> mappedActionsForTransitions,
-                                Transition<St, Ev> transition) {
-        final Action act = mappedActionsForTransitions.get(transition);
-        if (act != null) {
-            serviceForActionsExecution.execute(act::execute);
+    private MappedTransition<St, Ev> correspondingTransition(St sourceState, Ev event) {
+        final MappedTransition<St, Ev>[] transitions = transitionsBySourceState.get(sourceState);
+        return transitions != null && event.ordinal() < transitions.length ? transitions[event.ordinal()] : null;
+    }
+
+    private static <St extends Enum<St>, Ev extends Enum<Ev>>
+    EnumMap<St, MappedTransition<St, Ev>[]> compiledTransitions(Class<St> stateClass,
+                                                                int eventsNumber,
+                                                                Map<Transition<St, Ev>, Action> mappedActions) {
+        final EnumMap<St, MappedTransition<St, Ev>[]> transitionsBySourceState = new EnumMap<>(stateClass);
+        mappedActions.forEach((transition, action) -> {
+            final MappedTransition<St, Ev>[] transitions = transitionsBySourceState.computeIfAbsent(
+                    transition.sourceState, state -> newTransitions(eventsNumber));
+            final int ordinal = transition.event.ordinal();
+            if (transitions[ordinal] != null) {
+                throw new IllegalArgumentException("Transitions " + transitions[ordinal].transition
+                                                           + " and " + transition + " have the same event");
+            }
+            transitions[ordinal] = new MappedTransition<>(transition, action);
+        });
+        return transitionsBySourceState;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <St extends Enum<St>, Ev extends Enum<Ev>> MappedTransition<St, Ev>[] newTransitions(int eventsNumber) {
+        return (MappedTransition<St, Ev>[]) Array.newInstance(MappedTransition.class, eventsNumber);
+    }
+
+    private static <St extends Enum<St>, Ev extends Enum<Ev>> int eventsNumber(
+            Map<Transition<St, Ev>, Action> mappedActions,
+            Set<Ev> coalescedEvents) {
+        for (Transition<St, Ev> transition : mappedActions.keySet()) {
+            return transition.event.getDeclaringClass().getEnumConstants().length;
         }
+        for (Ev event : coalescedEvents) {
+            return event.getDeclaringClass().getEnumConstants().length;
+        }
+        return 0;
     }
 
-    private void printTransitions() {
+    private void printTransitions(Map<Transition<St, Ev>, Action> mappedActions) {
         int i = 1;
         for (Transition<St, Ev> t : mappedActions.keySet()) {
             System.out.println(i + ": " + t);
             i++;
         }
     }
+
+    private static class MappedTransition<St extends Enum<St>, Ev extends Enum<Ev>> {
+        private final Transition<St, Ev> transition;
+        private final Action action;
+
+        MappedTransition(Transition<St, Ev> transition, Action action) {
+            this.transition = transition;
+            this.action = action;
+        }
+    }
 }
\ No newline at end of file
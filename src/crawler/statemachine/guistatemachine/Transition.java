@@ -1,5 +1,7 @@
 package crawler.statemachine.guistatemachine;
 
+import java.util.Objects;
+
 public class Transition<St extends Enum<St>, Ev extends Enum<Ev>> {
     public final St sourceState;
     public final St targetState;
@@ -11,6 +13,23 @@ public class Transition<St extends Enum<St>, Ev extends Enum<Ev>> {
         this.targetState = targetState;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Transition<?, ?> that = (Transition<?, ?>) o;
+        return sourceState == that.sourceState && targetState == that.targetState && event == that.event;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sourceState, targetState, event);
+    }
+
     @Override
     public String toString() {
         return sourceState + " --- " + event + " --> " + targetState;
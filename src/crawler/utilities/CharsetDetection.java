@@ -0,0 +1,77 @@
+package crawler.utilities;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Charset of a page: byte order mark, then the Content-Type header, then a meta tag, then UTF-8.
+ */
+public class CharsetDetection {
+    /**
+     * How many first bytes of a page are searched for a meta tag
+     */
+    public static final int SNIFFED_BYTES_NUMBER = 1024;
+
+    private static final Pattern CHARSET_PATTERN =
+            Pattern.compile("charset\\s*=\\s*[\"']?\\s*([A-Za-z0-9_.:\\-]+)", Pattern.CASE_INSENSITIVE);
+
+    public static Charset detectedCharset(String contentType, byte[] firstBytes, int length) {
+        return charsetOfByteOrderMark(firstBytes, length)
+                .or(() -> charsetOfContentType(contentType))
+                .or(() -> charsetOfMetaTag(firstBytes, length))
+                .orElse(StandardCharsets.UTF_8);
+    }
+
+    public static Optional<Charset> charsetOfContentType(String contentType) {
+        return contentType == null ? Optional.empty() : charsetNamedIn(contentType);
+    }
+
+    static Optional<Charset> charsetOfByteOrderMark(byte[] bytes, int length) {
+        switch (byteOrderMarkLength(bytes, length)) {
+            case 3:
+                return Optional.of(StandardCharsets.UTF_8);
+            case 2:
+                return Optional.of((bytes[0] & 0xff) == 0xfe ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE);
+            default:
+                return Optional.empty();
+        }
+    }
+
+    /**
+     * @return 3 for the UTF-8 byte order mark, 2 for the UTF-16 ones and 0 if there is no mark
+     */
+    public static int byteOrderMarkLength(byte[] bytes, int length) {
+        if (length >= 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+            return 3;
+        }
+        if (length >= 2 && (((bytes[0] & 0xff) == 0xfe && (bytes[1] & 0xff) == 0xff)
+                || ((bytes[0] & 0xff) == 0xff && (bytes[1] & 0xff) == 0xfe))) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Covers both meta charset and meta http-equiv content-type, which are ASCII-compatible in practice.
+     */
+    static Optional<Charset> charsetOfMetaTag(byte[] bytes, int length) {
+        final String prefix = new String(bytes, 0, Math.min(length, SNIFFED_BYTES_NUMBER), StandardCharsets.ISO_8859_1);
+        final int metaIndex = prefix.toLowerCase(Locale.ROOT).indexOf("<meta");
+        return metaIndex < 0 ? Optional.empty() : charsetNamedIn(prefix.substring(metaIndex));
+    }
+
+    private static Optional<Charset> charsetNamedIn(String text) {
+        final Matcher matcher = CHARSET_PATTERN.matcher(text);
+        if (matcher.find()) {
+            try {
+                return Optional.of(Charset.forName(matcher.group(1)));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return Optional.empty();
+    }
+}
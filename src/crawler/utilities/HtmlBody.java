@@ -0,0 +1,41 @@
+package crawler.utilities;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class HtmlBody {
+    public final String text;
+    public final ScannedHtml scannedHtml;
+    public final Charset charset;
+    public final long bytesNumber;
+    /**
+     * True if reading was stopped early, either because of the size limit or because the scanner had enough
+     */
+    public final boolean isTruncated;
+    /**
+     * Time spent scanning the body while reading it
+     */
+    public final long scanDurationInNanos;
+
+    public HtmlBody(String text, ScannedHtml scannedHtml, Charset charset, long bytesNumber, boolean isTruncated) {
+        this(text, scannedHtml, charset, bytesNumber, isTruncated, 0);
+    }
+
+    public HtmlBody(String text,
+                    ScannedHtml scannedHtml,
+                    Charset charset,
+                    long bytesNumber,
+                    boolean isTruncated,
+                    long scanDurationInNanos) {
+        this.text = text;
+        this.scannedHtml = scannedHtml;
+        this.charset = charset;
+        this.bytesNumber = bytesNumber;
+        this.isTruncated = isTruncated;
+        this.scanDurationInNanos = scanDurationInNanos;
+    }
+
+    public static HtmlBody empty() {
+        return new HtmlBody("", HtmlPageScanner.scanned(""), StandardCharsets.UTF_8, 0, false);
+    }
+}
@@ -0,0 +1,136 @@
+package crawler.utilities;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Predicate;
+
+/**
+ * Decodes a page body chunk by chunk while it's being downloaded and scans it on the way.
+ * The first bytes are held back until the charset is detected. Not thread-safe.
+ */
+public class HtmlBodyDecoder {
+    private static final int DECODED_CHUNK_SIZE = 8192;
+
+    private final String contentType;
+    private final long maxBytesNumber;
+    private final Predicate<HtmlPageScanner> hasEnough;
+    private final boolean keepsText;
+    private final HtmlPageScanner scanner = new HtmlPageScanner();
+    private final StringBuilder text = new StringBuilder();
+    private final CharBuffer decodedChars = CharBuffer.allocate(DECODED_CHUNK_SIZE);
+    private byte[] sniffedBytes = new byte[CharsetDetection.SNIFFED_BYTES_NUMBER];
+    private int sniffedBytesNumber;
+    private CharsetDecoder decoder;
+    private ByteBuffer undecodedBytes;
+    private long bytesNumber;
+    private boolean isTruncated;
+    private long scanDurationInNanos;
+
+    /**
+     * @param contentType Content-Type header or null
+     * @param hasEnough   tells when nothing else is needed from the page, e.g. when the title is found
+     */
+    public HtmlBodyDecoder(String contentType, long maxBytesNumber, Predicate<HtmlPageScanner> hasEnough) {
+        this(contentType, maxBytesNumber, hasEnough, true);
+    }
+
+    /**
+     * @param keepsText if it's false, the body is only scanned and {@link HtmlBody#text} is empty
+     */
+    public HtmlBodyDecoder(String contentType,
+                           long maxBytesNumber,
+                           Predicate<HtmlPageScanner> hasEnough,
+                           boolean keepsText) {
+        this.contentType = contentType;
+        this.maxBytesNumber = maxBytesNumber;
+        this.hasEnough = hasEnough;
+        this.keepsText = keepsText;
+    }
+
+    /**
+     * @return false if no more bytes are needed
+     */
+    public boolean accept(ByteBuffer chunk) {
+        if (isTruncated) {
+            return false;
+        }
+        if (bytesNumber + chunk.remaining() > maxBytesNumber) {
+            chunk = chunk.duplicate().limit(chunk.position() + (int) (maxBytesNumber - bytesNumber));
+            isTruncated = true;
+        }
+        bytesNumber += chunk.remaining();
+        if (decoder == null) {
+            final int sniffedNow = Math.min(chunk.remaining(), sniffedBytes.length - sniffedBytesNumber);
+            chunk.get(sniffedBytes, sniffedBytesNumber, sniffedNow);
+            sniffedBytesNumber += sniffedNow;
+            if (sniffedBytesNumber < sniffedBytes.length && !isTruncated) {
+                return true;
+            }
+            startDecoding();
+        }
+        decoded(chunk, false);
+        if (!isTruncated && hasEnough.test(scanner)) {
+            isTruncated = true;
+        }
+        return !isTruncated;
+    }
+
+    public HtmlBody finish() {
+        if (decoder == null) {
+            startDecoding();
+        }
+        decoded(ByteBuffer.allocate(0), true);
+        return new HtmlBody(text.toString(), scanner.result(), decoder.charset(), bytesNumber, isTruncated,
+                            scanDurationInNanos);
+    }
+
+    private void startDecoding() {
+        final Charset charset = CharsetDetection.detectedCharset(contentType, sniffedBytes, sniffedBytesNumber);
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final int byteOrderMarkLength = CharsetDetection.byteOrderMarkLength(sniffedBytes, sniffedBytesNumber);
+        final ByteBuffer sniffed = ByteBuffer.wrap(sniffedBytes,
+                                                   byteOrderMarkLength,
+                                                   sniffedBytesNumber - byteOrderMarkLength);
+        sniffedBytes = null;
+        decoded(sniffed, false);
+    }
+
+    private void decoded(ByteBuffer chunk, boolean isLastChunk) {
+        ByteBuffer input = chunk;
+        if (undecodedBytes != null) {
+            input = ByteBuffer.allocate(undecodedBytes.remaining() + chunk.remaining());
+            input.put(undecodedBytes).put(chunk).flip();
+            undecodedBytes = null;
+        }
+        CoderResult coderResult;
+        do {
+            coderResult = decoder.decode(input, decodedChars, isLastChunk);
+            flushDecodedChars();
+        } while (coderResult.isOverflow());
+        if (isLastChunk) {
+            while (decoder.flush(decodedChars).isOverflow()) {
+                flushDecodedChars();
+            }
+            flushDecodedChars();
+        } else if (input.hasRemaining()) {
+            undecodedBytes = ByteBuffer.allocate(input.remaining()).put(input).flip();
+        }
+    }
+
+    private void flushDecodedChars() {
+        decodedChars.flip();
+        if (keepsText) {
+            text.append(decodedChars.array(), 0, decodedChars.remaining());
+        }
+        final long scanStartTime = System.nanoTime();
+        scanner.feed(decodedChars.array(), 0, decodedChars.remaining());
+        scanDurationInNanos += System.nanoTime() - scanStartTime;
+        decodedChars.clear();
+    }
+}
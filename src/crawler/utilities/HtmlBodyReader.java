@@ -0,0 +1,55 @@
+package crawler.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Reads a page body with a size cap and a deadline for the whole body.
+ * The deadline is checked between reads, so a single blocking read is bounded by the socket read timeout.
+ */
+public class HtmlBodyReader {
+    public static final HtmlBodyReader DEFAULT = new HtmlBodyReader(10 * 1024 * 1024, TimeUnit.SECONDS.toMillis(30));
+
+    private static final int READ_CHUNK_SIZE = 16 * 1024;
+
+    public final long maxBytesNumber;
+    public final long readDeadlineInMillis;
+
+    public HtmlBodyReader(long maxBytesNumber, long readDeadlineInMillis) {
+        this.maxBytesNumber = maxBytesNumber;
+        this.readDeadlineInMillis = readDeadlineInMillis;
+    }
+
+    public HtmlBody read(InputStream inputStream, String contentType, Predicate<HtmlPageScanner> hasEnough)
+            throws IOException {
+        return read(inputStream, contentType, hasEnough, true);
+    }
+
+    /**
+     * @param hasEnough reading stops as soon as it returns true
+     * @param keepsText if it's false, the body is only scanned
+     * @throws SocketTimeoutException if the body isn't read before the deadline
+     */
+    public HtmlBody read(InputStream inputStream,
+                         String contentType,
+                         Predicate<HtmlPageScanner> hasEnough,
+                         boolean keepsText) throws IOException {
+        final long deadline = System.currentTimeMillis() + readDeadlineInMillis;
+        final HtmlBodyDecoder decoder = new HtmlBodyDecoder(contentType, maxBytesNumber, hasEnough, keepsText);
+        final byte[] chunk = new byte[READ_CHUNK_SIZE];
+        int readBytesNumber;
+        while ((readBytesNumber = inputStream.read(chunk)) != -1) {
+            if (!decoder.accept(ByteBuffer.wrap(chunk, 0, readBytesNumber))) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new SocketTimeoutException("Body wasn't read within " + readDeadlineInMillis + " ms");
+            }
+        }
+        return decoder.finish();
+    }
+}
@@ -0,0 +1,489 @@
+package crawler.utilities;
+
+import crawler.dedup.TextSimHash;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass html tokenizer which collects the title, a href, base href and link rel=canonical,
+ * and fingerprints the text between tags.
+ * Every character is looked at once and nothing is backtracked, so the input can be fed in chunks
+ * while it's still being downloaded. Contents of script, style and textarea elements are skipped.
+ * Not thread-safe: one scanner is used for one page.
+ */
+public class HtmlPageScanner {
+    private enum ScannerState {
+        TEXT, TAG_OPEN, MARKUP_DECLARATION, MARKUP_DECLARATION_DASH, COMMENT, BOGUS_COMMENT,
+        TAG_NAME, END_TAG_NAME, AFTER_END_TAG_NAME,
+        BEFORE_ATTRIBUTE_NAME, ATTRIBUTE_NAME, AFTER_ATTRIBUTE_NAME, BEFORE_ATTRIBUTE_VALUE,
+        DOUBLE_QUOTED_ATTRIBUTE_VALUE, SINGLE_QUOTED_ATTRIBUTE_VALUE, UNQUOTED_ATTRIBUTE_VALUE,
+        RAW_TEXT
+    }
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final List<String> links = new ArrayList<>();
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+    private final StringBuilder titleText = new StringBuilder();
+    private final TextSimHash textSimHash = new TextSimHash();
+    private final CharsetDecoder decoder;
+    private CharBuffer decodedChars;
+    private ByteBuffer undecodedBytes;
+
+    private ScannerState state = ScannerState.TEXT;
+    private boolean isEndTag;
+    private int commentDashesNumber;
+    private String href;
+    private String rel;
+    private String baseHref;
+    private String canonicalHref;
+    private String title;
+    private String rawTextEndTag;
+    private int rawTextEndTagMatchedLength;
+    private boolean isCapturingTitle;
+
+    public HtmlPageScanner() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param charset used to decode bytes passed to {@link #feed(ByteBuffer)}
+     */
+    public HtmlPageScanner(Charset charset) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public static ScannedHtml scanned(CharSequence htmlContent) {
+        return new HtmlPageScanner().feed(htmlContent).result();
+    }
+
+    public HtmlPageScanner feed(CharSequence chunk) {
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            accept(chunk.charAt(i));
+        }
+        return this;
+    }
+
+    public HtmlPageScanner feed(char[] chunk, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            accept(chunk[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Decodes and scans the remaining bytes of the buffer. A multi-byte character split between
+     * two chunks is kept until the next call.
+     */
+    public HtmlPageScanner feed(ByteBuffer chunk) {
+        if (decodedChars == null) {
+            decodedChars = CharBuffer.allocate(CHUNK_SIZE);
+        }
+        ByteBuffer input = chunk;
+        if (undecodedBytes != null && undecodedBytes.hasRemaining()) {
+            input = ByteBuffer.allocate(undecodedBytes.remaining() + chunk.remaining());
+            input.put(undecodedBytes).put(chunk).flip();
+        }
+        CoderResult coderResult;
+        do {
+            coderResult = decoder.decode(input, decodedChars, false);
+            decodedChars.flip();
+            feed(decodedChars.array(), decodedChars.position(), decodedChars.remaining());
+            decodedChars.clear();
+        } while (coderResult.isOverflow());
+        undecodedBytes = input.hasRemaining() ? ByteBuffer.allocate(input.remaining()).put(input).flip() : null;
+        return this;
+    }
+
+    /**
+     * @return true when the whole title element has been scanned
+     */
+    public boolean hasTitle() {
+        return title != null;
+    }
+
+    public ScannedHtml result() {
+        final String pageTitle = title != null ?
+                title :
+                isCapturingTitle ? decodedEntities(titleText).trim() : "";
+        return new ScannedHtml(pageTitle, links, baseHref, canonicalHref, textSimHash.fingerprint());
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    textSimHash.breakWord();
+                    state = ScannerState.TAG_OPEN;
+                } else {
+                    textSimHash.accept(c);
+                }
+                break;
+            case TAG_OPEN:
+                if (c == '!') {
+                    state = ScannerState.MARKUP_DECLARATION;
+                } else if (c == '/') {
+                    startTag(true);
+                    state = ScannerState.END_TAG_NAME;
+                } else if (isAsciiLetter(c)) {
+                    startTag(false);
+                    tagName.append(lowerCased(c));
+                    state = ScannerState.TAG_NAME;
+                } else if (c == '?') {
+                    state = ScannerState.BOGUS_COMMENT;
+                } else if (c != '<') {
+                    state = ScannerState.TEXT;
+                }
+                break;
+            case MARKUP_DECLARATION:
+                state = c == '-' ? ScannerState.MARKUP_DECLARATION_DASH : c == '>' ?
+                        ScannerState.TEXT :
+                        ScannerState.BOGUS_COMMENT;
+                break;
+            case MARKUP_DECLARATION_DASH:
+                if (c == '-') {
+                    commentDashesNumber = 0;
+                    state = ScannerState.COMMENT;
+                } else {
+                    state = c == '>' ? ScannerState.TEXT : ScannerState.BOGUS_COMMENT;
+                }
+                break;
+            case COMMENT:
+                if (c == '-') {
+                    commentDashesNumber++;
+                } else {
+                    if (c == '>' && commentDashesNumber >= 2) {
+                        state = ScannerState.TEXT;
+                    }
+                    commentDashesNumber = 0;
+                }
+                break;
+            case BOGUS_COMMENT:
+                if (c == '>') {
+                    state = ScannerState.TEXT;
+                }
+                break;
+            case TAG_NAME:
+                if (isWhitespace(c) || c == '/') {
+                    state = ScannerState.BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    emitTag();
+                } else {
+                    tagName.append(lowerCased(c));
+                }
+                break;
+            case END_TAG_NAME:
+                if (c == '>') {
+                    emitTag();
+                } else if (isWhitespace(c) || c == '/') {
+                    state = ScannerState.AFTER_END_TAG_NAME;
+                } else {
+                    tagName.append(lowerCased(c));
+                }
+                break;
+            case AFTER_END_TAG_NAME:
+                if (c == '>') {
+                    emitTag();
+                }
+                break;
+            case BEFORE_ATTRIBUTE_NAME:
+                if (c == '>') {
+                    emitTag();
+                } else if (!isWhitespace(c) && c != '/') {
+                    startAttribute(c);
+                }
+                break;
+            case ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = ScannerState.BEFORE_ATTRIBUTE_VALUE;
+                } else if (isWhitespace(c)) {
+                    state = ScannerState.AFTER_ATTRIBUTE_NAME;
+                } else if (c == '/') {
+                    finishAttribute();
+                    state = ScannerState.BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    finishAttribute();
+                    emitTag();
+                } else {
+                    attributeName.append(lowerCased(c));
+                }
+                break;
+            case AFTER_ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = ScannerState.BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    finishAttribute();
+                    emitTag();
+                } else if (c == '/') {
+                    finishAttribute();
+                    state = ScannerState.BEFORE_ATTRIBUTE_NAME;
+                } else if (!isWhitespace(c)) {
+                    finishAttribute();
+                    startAttribute(c);
+                }
+                break;
+            case BEFORE_ATTRIBUTE_VALUE:
+                if (c == '"') {
+                    state = ScannerState.DOUBLE_QUOTED_ATTRIBUTE_VALUE;
+                } else if (c == '\'') {
+                    state = ScannerState.SINGLE_QUOTED_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    finishAttribute();
+                    emitTag();
+                } else if (!isWhitespace(c)) {
+                    appendToAttributeValue(c);
+                    state = ScannerState.UNQUOTED_ATTRIBUTE_VALUE;
+                }
+                break;
+            case DOUBLE_QUOTED_ATTRIBUTE_VALUE:
+                acceptQuotedAttributeValue(c, '"');
+                break;
+            case SINGLE_QUOTED_ATTRIBUTE_VALUE:
+                acceptQuotedAttributeValue(c, '\'');
+                break;
+            case UNQUOTED_ATTRIBUTE_VALUE:
+                if (isWhitespace(c)) {
+                    finishAttribute();
+                    state = ScannerState.BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    finishAttribute();
+                    emitTag();
+                } else {
+                    appendToAttributeValue(c);
+                }
+                break;
+            case RAW_TEXT:
+                acceptRawText(c);
+                break;
+        }
+    }
+
+    private void acceptQuotedAttributeValue(char c, char quote) {
+        if (c == quote) {
+            finishAttribute();
+            state = ScannerState.BEFORE_ATTRIBUTE_NAME;
+        } else {
+            appendToAttributeValue(c);
+        }
+    }
+
+    /**
+     * Looks for the closing tag of a raw text element. A title is collected on the way.
+     */
+    private void acceptRawText(char c) {
+        if (rawTextEndTagMatchedLength < rawTextEndTag.length()
+                && lowerCased(c) == rawTextEndTag.charAt(rawTextEndTagMatchedLength)) {
+            rawTextEndTagMatchedLength++;
+            return;
+        }
+        if (rawTextEndTagMatchedLength == rawTextEndTag.length() && (c == '>' || isWhitespace(c) || c == '/')) {
+            if (isCapturingTitle) {
+                title = decodedEntities(titleText).trim();
+                isCapturingTitle = false;
+            }
+            rawTextEndTag = null;
+            state = c == '>' ? ScannerState.TEXT : ScannerState.AFTER_END_TAG_NAME;
+            isEndTag = true;
+            tagName.setLength(0);
+            return;
+        }
+        if (isCapturingTitle) {
+            titleText.append(rawTextEndTag, 0, rawTextEndTagMatchedLength);
+        }
+        rawTextEndTagMatchedLength = 0;
+        if (c == '<') {
+            rawTextEndTagMatchedLength = 1;
+        } else if (isCapturingTitle) {
+            titleText.append(c);
+        }
+    }
+
+    private void startTag(boolean isEndTag) {
+        this.isEndTag = isEndTag;
+        tagName.setLength(0);
+        href = null;
+        rel = null;
+    }
+
+    private void startAttribute(char firstChar) {
+        attributeName.setLength(0);
+        attributeValue.setLength(0);
+        attributeName.append(lowerCased(firstChar));
+        state = ScannerState.ATTRIBUTE_NAME;
+    }
+
+    /**
+     * Values are kept only for the attributes the scanner is interested in.
+     */
+    private void appendToAttributeValue(char c) {
+        if (!isEndTag && isInterestingTag()) {
+            attributeValue.append(c);
+        }
+    }
+
+    private void finishAttribute() {
+        if (!isEndTag && isInterestingTag()) {
+            if (contentEquals(attributeName, "href") && href == null) {
+                href = decodedEntities(attributeValue).trim();
+            } else if (contentEquals(attributeName, "rel") && rel == null) {
+                rel = attributeValue.toString();
+            }
+        }
+        attributeName.setLength(0);
+        attributeValue.setLength(0);
+    }
+
+    private void emitTag() {
+        state = ScannerState.TEXT;
+        if (isEndTag) {
+            return;
+        }
+        if (contentEquals(tagName, "a")) {
+            if (href != null && !href.isEmpty()) {
+                links.add(href);
+            }
+        } else if (contentEquals(tagName, "base")) {
+            if (baseHref == null && href != null) {
+                baseHref = href;
+            }
+        } else if (contentEquals(tagName, "link")) {
+            if (canonicalHref == null && href != null && rel != null && isCanonical(rel)) {
+                canonicalHref = href;
+            }
+        } else if (contentEquals(tagName, "title")) {
+            isCapturingTitle = title == null;
+            titleText.setLength(0);
+            startRawText("</title");
+        } else if (contentEquals(tagName, "script")) {
+            startRawText("</script");
+        } else if (contentEquals(tagName, "style")) {
+            startRawText("</style");
+        } else if (contentEquals(tagName, "textarea")) {
+            startRawText("</textarea");
+        }
+    }
+
+    private void startRawText(String endTag) {
+        rawTextEndTag = endTag;
+        rawTextEndTagMatchedLength = 0;
+        state = ScannerState.RAW_TEXT;
+    }
+
+    private boolean isInterestingTag() {
+        return contentEquals(tagName, "a") || contentEquals(tagName, "base") || contentEquals(tagName, "link");
+    }
+
+    private static boolean isCanonical(String rel) {
+        for (String token : rel.trim().split("\\s+")) {
+            if (token.equalsIgnoreCase("canonical")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contentEquals(StringBuilder builder, String value) {
+        if (builder.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (builder.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the character references which appear in urls and titles most often.
+     */
+    static String decodedEntities(CharSequence text) {
+        final int ampersandIndex = indexOf(text, '&');
+        if (ampersandIndex < 0) {
+            return text.toString();
+        }
+        final StringBuilder decoded = new StringBuilder(text.length());
+        decoded.append(text, 0, ampersandIndex);
+        int i = ampersandIndex;
+        while (i < text.length()) {
+            final char c = text.charAt(i);
+            if (c == '&') {
+                final int semicolonIndex = indexOf(text, ';', i + 1, Math.min(text.length(), i + 10));
+                if (semicolonIndex > 0) {
+                    final int codePoint = codePointOfEntity(text.subSequence(i + 1, semicolonIndex).toString());
+                    if (Character.isValidCodePoint(codePoint)) {
+                        decoded.appendCodePoint(codePoint);
+                        i = semicolonIndex + 1;
+                        continue;
+                    }
+                }
+            }
+            decoded.append(c);
+            i++;
+        }
+        return decoded.toString();
+    }
+
+    private static int codePointOfEntity(String entity) {
+        switch (entity) {
+            case "amp":
+                return '&';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "nbsp":
+                return ' ';
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return Integer.parseInt(entity.substring(2), 16);
+            } else if (entity.startsWith("#")) {
+                return Integer.parseInt(entity.substring(1));
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        return indexOf(text, c, 0, text.length());
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char lowerCased(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
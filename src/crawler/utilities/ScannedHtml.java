@@ -0,0 +1,31 @@
+package crawler.utilities;
+
+import java.util.List;
+
+/**
+ * Everything the crawler needs from a page, collected by {@link HtmlPageScanner} in one pass.
+ */
+public class ScannedHtml {
+    public final String title;
+    public final List<String> links;
+    /**
+     * Value of the first base href or null if the page doesn't have it
+     */
+    public final String baseHref;
+    /**
+     * Value of the link rel=canonical href or null if the page doesn't have it
+     */
+    public final String canonicalHref;
+    /**
+     * SimHash of the text between tags, see {@link crawler.dedup.TextSimHash}. 0 if the page has too little text
+     */
+    public final long textFingerprint;
+
+    public ScannedHtml(String title, List<String> links, String baseHref, String canonicalHref, long textFingerprint) {
+        this.title = title;
+        this.links = links;
+        this.baseHref = baseHref;
+        this.canonicalHref = canonicalHref;
+        this.textFingerprint = textFingerprint;
+    }
+}
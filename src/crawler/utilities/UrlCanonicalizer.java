@@ -0,0 +1,439 @@
+package crawler.utilities;
+
+import java.net.IDN;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Resolves links against the page url (RFC 3986, section 5.2) and normalizes the result in one pass,
+ * so every page has one string which can be used as its dedup key:
+ * scheme and host are lowercased, default ports, fragments and empty queries are removed, dot segments are resolved,
+ * percent-encodings are uppercased, encoded unreserved characters are decoded and characters which aren't allowed
+ * in urls are percent-encoded. Query parameters are sorted if it's enabled.
+ * <p>
+ * Only http and https urls are produced. Nothing but the resulting string is allocated, no {@link java.net.URL}
+ * or exception is created for a link. Thread-safe.
+ */
+public class UrlCanonicalizer {
+    public static final UrlCanonicalizer DEFAULT = new UrlCanonicalizer(false);
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final boolean sortsQueryParameters;
+
+    public UrlCanonicalizer(boolean sortsQueryParameters) {
+        this.sortsQueryParameters = sortsQueryParameters;
+    }
+
+    /**
+     * @return canonical form of an absolute http(s) url or null if it isn't one
+     */
+    public String canonicalized(CharSequence absoluteUrl) {
+        return resolved(null, absoluteUrl);
+    }
+
+    /**
+     * @return base for resolving the links of a page or null if the url isn't an absolute http(s) url
+     */
+    public Base base(CharSequence absoluteUrl) {
+        final String canonicalUrl = canonicalized(absoluteUrl);
+        return canonicalUrl != null ? new Base(canonicalUrl) : null;
+    }
+
+    /**
+     * @param base null if the reference must be absolute
+     * @return canonical absolute url or null if the reference can't be resolved to an http(s) url,
+     * e.g. for mailto: and javascript: links
+     */
+    public String resolved(Base base, CharSequence reference) {
+        int start = 0;
+        int end = reference.length();
+        while (start < end && reference.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && reference.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        final int fragmentStart = indexOf(reference, '#', start, end);
+        if (fragmentStart >= 0) {
+            end = fragmentStart;
+        }
+
+        final StringBuilder out = BUFFERS.get();
+        out.setLength(0);
+
+//        Scheme
+        int position = start;
+        final boolean isHttps;
+        final int schemeEnd = schemeEnd(reference, start, end);
+        if (schemeEnd >= 0) {
+            isHttps = regionEqualsIgnoreCase(reference, start, schemeEnd, "https");
+            if (!isHttps && !regionEqualsIgnoreCase(reference, start, schemeEnd, "http")) {
+                return null;
+            }
+            position = schemeEnd + 1;
+            if (!startsWithTwoSlashes(reference, position, end)) {
+//                "http:path" is relative to a base of the same scheme
+                if (base == null || base.isHttps() != isHttps) {
+                    return null;
+                }
+            }
+            out.append(isHttps ? "https" : "http");
+        } else if (base != null) {
+            isHttps = base.isHttps();
+            out.append(base.url, 0, base.schemeEnd);
+        } else {
+            return null;
+        }
+        out.append("://");
+
+//        Authority
+        final int pathStart;
+        final boolean hasOwnAuthority = startsWithTwoSlashes(reference, position, end);
+        if (hasOwnAuthority) {
+            final int authorityStart = position + 2;
+            int authorityEnd = authorityStart;
+            while (authorityEnd < end && "/\\?".indexOf(reference.charAt(authorityEnd)) < 0) {
+                authorityEnd++;
+            }
+            if (!appendedAuthority(out, reference, authorityStart, authorityEnd, isHttps)) {
+                return null;
+            }
+            pathStart = authorityEnd;
+        } else {
+            out.append(base.url, base.authorityStart, base.pathStart);
+            pathStart = position;
+        }
+
+//        Path
+        final int queryStart = indexOf(reference, '?', pathStart, end);
+        final int pathEnd = queryStart >= 0 ? queryStart : end;
+        final int outPathStart = out.length();
+        if (hasOwnAuthority || (pathStart < pathEnd && isSlash(reference.charAt(pathStart)))) {
+            appendEncoded(out, reference, pathStart, pathEnd, true);
+        } else if (pathStart == pathEnd) {
+            out.append(base.url, base.pathStart, base.pathEnd);
+            if (queryStart < 0) {
+                out.append(base.url, base.pathEnd, base.url.length());
+            }
+        } else {
+            out.append(base.url, base.pathStart, base.lastSlashIndex + 1);
+            appendEncoded(out, reference, pathStart, pathEnd, true);
+        }
+        final int outPathEnd = out.length();
+        if (outPathEnd == outPathStart) {
+            out.append('/');
+        } else if (!(pathStart == pathEnd && !hasOwnAuthority && queryStart < 0)) {
+            removeDotSegments(out, outPathStart);
+        }
+
+//        Query
+        if (queryStart >= 0 && queryStart + 1 < end) {
+            final int outQueryStart = out.length();
+            out.append('?');
+            appendEncoded(out, reference, queryStart + 1, end, false);
+            if (sortsQueryParameters) {
+                sortQueryParameters(out, outQueryStart + 1);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean appendedAuthority(StringBuilder out,
+                                             CharSequence reference,
+                                             int start,
+                                             int end,
+                                             boolean isHttps) {
+        final int userInfoEnd = lastIndexOf(reference, '@', start, end);
+        if (userInfoEnd >= 0) {
+            appendEncoded(out, reference, start, userInfoEnd, false);
+            out.append('@');
+            start = userInfoEnd + 1;
+        }
+        int hostEnd = end;
+        if (start < end && reference.charAt(start) == '[') {
+            final int literalEnd = indexOf(reference, ']', start, end);
+            if (literalEnd < 0) {
+                return false;
+            }
+            hostEnd = literalEnd + 1;
+            if (hostEnd < end && reference.charAt(hostEnd) != ':') {
+                return false;
+            }
+        } else {
+            final int portStart = indexOf(reference, ':', start, end);
+            if (portStart >= 0) {
+                hostEnd = portStart;
+            }
+        }
+        if (hostEnd == start || !appendedHost(out, reference, start, hostEnd)) {
+            return false;
+        }
+        if (hostEnd < end) {
+//            Port without leading zeros, omitted if it's the default one
+            int port = 0;
+            for (int i = hostEnd + 1; i < end; i++) {
+                final char c = reference.charAt(i);
+                if (c < '0' || c > '9' || (port = port * 10 + (c - '0')) > 65535) {
+                    return false;
+                }
+            }
+            if (hostEnd + 1 < end && port != (isHttps ? 443 : 80)) {
+                out.append(':').append(port);
+            }
+        }
+        return true;
+    }
+
+    private static boolean appendedHost(StringBuilder out, CharSequence reference, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = reference.charAt(i);
+            if (c >= 0x80 || c == '%') {
+                return appendedInternationalHost(out, reference.subSequence(start, end).toString());
+            }
+        }
+        for (int i = start; i < end; i++) {
+            final char c = Character.toLowerCase(reference.charAt(i));
+            if (!isHostChar(c)) {
+                return false;
+            }
+            out.append(c);
+        }
+        return true;
+    }
+
+    /**
+     * Rare enough to allocate: the host is decoded and converted to punycode
+     */
+    private static boolean appendedInternationalHost(StringBuilder out, String host) {
+        try {
+            final String asciiHost = IDN.toASCII(URLDecoder.decode(host, StandardCharsets.UTF_8), IDN.ALLOW_UNASSIGNED);
+            for (int i = 0; i < asciiHost.length(); i++) {
+                final char c = Character.toLowerCase(asciiHost.charAt(i));
+                if (!isHostChar(c)) {
+                    return false;
+                }
+                out.append(c);
+            }
+            return !asciiHost.isEmpty();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+                || c == ':' || c == '[' || c == ']';
+    }
+
+    /**
+     * Appends the characters percent-encoding those which aren't allowed in urls and normalizing existing
+     * percent-encodings. Tabs and newlines are dropped, backslashes in paths are slashes as browsers treat them.
+     */
+    private static void appendEncoded(StringBuilder out, CharSequence s, int start, int end, boolean isPath) {
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c == '%') {
+                final int high = i + 2 < end ? Character.digit(s.charAt(i + 1), 16) : -1;
+                final int low = high >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+                if (low < 0) {
+                    out.append("%25");
+                    continue;
+                }
+                final char decoded = (char) (high << 4 | low);
+                if (isUnreserved(decoded)) {
+                    out.append(decoded);
+                } else {
+                    appendPercentEncoded(out, decoded);
+                }
+                i += 2;
+            } else if (c == '\t' || c == '\n' || c == '\r') {
+                continue;
+            } else if (c == '\\' && isPath) {
+                out.append('/');
+            } else if (c < 0x80) {
+                if (c <= ' ' || c == 0x7F || "\"<>\\^`{|}".indexOf(c) >= 0) {
+                    appendPercentEncoded(out, c);
+                } else {
+                    out.append(c);
+                }
+            } else {
+                final int codePoint;
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, s.charAt(++i));
+                } else if (Character.isSurrogate(c)) {
+                    codePoint = 0xFFFD;
+                } else {
+                    codePoint = c;
+                }
+                appendUtf8PercentEncoded(out, codePoint);
+            }
+        }
+    }
+
+    private static void appendUtf8PercentEncoded(StringBuilder out, int codePoint) {
+        if (codePoint < 0x800) {
+            appendPercentEncoded(out, 0xC0 | codePoint >> 6);
+        } else if (codePoint < 0x10000) {
+            appendPercentEncoded(out, 0xE0 | codePoint >> 12);
+            appendPercentEncoded(out, 0x80 | codePoint >> 6 & 0x3F);
+        } else {
+            appendPercentEncoded(out, 0xF0 | codePoint >> 18);
+            appendPercentEncoded(out, 0x80 | codePoint >> 12 & 0x3F);
+            appendPercentEncoded(out, 0x80 | codePoint >> 6 & 0x3F);
+        }
+        appendPercentEncoded(out, 0x80 | codePoint & 0x3F);
+    }
+
+    private static void appendPercentEncoded(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[b >> 4 & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * remove_dot_segments of RFC 3986 done in place on the path which starts at pathStart and ends the builder
+     */
+    private static void removeDotSegments(StringBuilder out, int pathStart) {
+        final int end = out.length();
+        int read = pathStart;
+        int write = pathStart;
+        while (read < end) {
+//            Every segment starts with a slash here
+            int segmentEnd = read + 1;
+            while (segmentEnd < end && out.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            final int segmentLength = segmentEnd - read - 1;
+            final boolean isLastSegment = segmentEnd == end;
+            if (segmentLength == 1 && out.charAt(read + 1) == '.') {
+                if (isLastSegment) {
+                    out.setCharAt(write++, '/');
+                }
+            } else if (segmentLength == 2 && out.charAt(read + 1) == '.' && out.charAt(read + 2) == '.') {
+                while (write > pathStart && out.charAt(--write) != '/') {
+                }
+                if (isLastSegment) {
+                    out.setCharAt(write++, '/');
+                }
+            } else {
+                for (int i = read; i < segmentEnd; i++) {
+                    out.setCharAt(write++, out.charAt(i));
+                }
+            }
+            read = segmentEnd;
+        }
+        out.setLength(write == pathStart ? pathStart : write);
+        if (write == pathStart) {
+            out.append('/');
+        }
+    }
+
+    /**
+     * Stable sort of the &amp;-separated parameters, so "b=1&amp;a=2" and "a=2&amp;b=1" are one page
+     */
+    private static void sortQueryParameters(StringBuilder out, int queryStart) {
+        if (indexOf(out, '&', queryStart, out.length()) < 0) {
+            return;
+        }
+        final String[] parameters = out.substring(queryStart).split("&");
+        Arrays.sort(parameters);
+        out.setLength(queryStart);
+        for (String parameter : parameters) {
+            if (!parameter.isEmpty()) {
+                out.append(parameter).append('&');
+            }
+        }
+        out.setLength(out.length() - 1);
+        if (out.charAt(out.length() - 1) == '?') {
+            out.setLength(out.length() - 1);
+        }
+    }
+
+    private static int schemeEnd(CharSequence s, int start, int end) {
+        if (start >= end || !Character.isLetter(s.charAt(start)) || s.charAt(start) >= 0x80) {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '-' || c == '.')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWithTwoSlashes(CharSequence s, int start, int end) {
+        return start + 1 < end && isSlash(s.charAt(start)) && isSlash(s.charAt(start + 1));
+    }
+
+    private static boolean isSlash(char c) {
+        return c == '/' || c == '\\';
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence s, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (Character.toLowerCase(s.charAt(start + i)) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence s, char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Canonical url of a page with the positions of its parts, so links of the page are resolved
+     * without parsing the page url again
+     */
+    public static class Base {
+        public final String url;
+        private final int schemeEnd;
+        private final int authorityStart;
+        private final int pathStart;
+        private final int pathEnd;
+        private final int lastSlashIndex;
+
+        private Base(String canonicalUrl) {
+            url = canonicalUrl;
+            schemeEnd = canonicalUrl.indexOf(':');
+            authorityStart = schemeEnd + 3;
+            pathStart = canonicalUrl.indexOf('/', authorityStart);
+            final int queryStart = canonicalUrl.indexOf('?', pathStart);
+            pathEnd = queryStart >= 0 ? queryStart : canonicalUrl.length();
+            lastSlashIndex = canonicalUrl.lastIndexOf('/', pathEnd - 1);
+        }
+
+        private boolean isHttps() {
+            return schemeEnd == 5;
+        }
+    }
+}
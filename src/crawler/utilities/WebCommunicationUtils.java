@@ -1,29 +1,84 @@
 package crawler.utilities;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 public class WebCommunicationUtils {
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64;" +
+            " rv:63.0) Gecko/20100101 Firefox/63.0";
+    public static final int CONNECT_TIMEOUT_IN_MILLIS = 10_000;
+    public static final int READ_TIMEOUT_IN_MILLIS = 10_000;
+
     public static String fetchedHtmlContent(URLConnection connection) {
-        String siteText = "";
+        try {
+            return fetchedHtmlBody(connection, HtmlBodyReader.DEFAULT, scanner -> false, true, () -> false).text;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+
+    /**
+     * Reads the body only if it's an html page. The body is decoded with the charset of the page,
+     * is cut at the reader's size limit and isn't read further once hasEnough returns true.
+     * If keepsText is false, the body is only scanned.
+     *
+     * @param isAborted checked before every read, reading fails once it returns true
+     * @return empty body if the page isn't an html page
+     */
+    public static HtmlBody fetchedHtmlBody(URLConnection connection,
+                                           HtmlBodyReader reader,
+                                           Predicate<HtmlPageScanner> hasEnough,
+                                           boolean keepsText,
+                                           BooleanSupplier isAborted) throws IOException {
         final String contentType = connection.getContentType();
         if (contentType != null && contentType.contains("text/html")) {
-            try (final BufferedInputStream inputStream = new BufferedInputStream(connection.getInputStream())) {
-                siteText = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-            } catch (IOException e) {
-                e.printStackTrace();
+            try (final BufferedInputStream inputStream = new BufferedInputStream(
+                    new AbortableInputStream(connection.getInputStream(), isAborted))) {
+                return reader.read(inputStream, contentType, hasEnough, keepsText);
             }
         }
-        return siteText;
+        return HtmlBody.empty();
     }
 
     public static URLConnection establishedCustomConnection(URL url) throws IOException {
         final URLConnection connection = url.openConnection();
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64;" +
-                " rv:63.0) Gecko/20100101 Firefox/63.0");
+        connection.setRequestProperty("User-Agent", USER_AGENT);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_IN_MILLIS);
         return connection;
     }
-}
\ No newline at end of file
+
+    private static class AbortableInputStream extends FilterInputStream {
+        private final BooleanSupplier isAborted;
+
+        AbortableInputStream(InputStream inputStream, BooleanSupplier isAborted) {
+            super(inputStream);
+            this.isAborted = isAborted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkAborted();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkAborted();
+            return super.read(buffer, offset, length);
+        }
+
+        private void checkAborted() throws IOException {
+            if (isAborted.getAsBoolean()) {
+                throw new IOException("Fetch was aborted");
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package crawler.dns;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsCacheTest {
+    private static final long TIMEOUT_IN_MILLIS = 5_000;
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final StubResolver resolver = new StubResolver();
+
+    @Test
+    void resolvedHostIsCachedUntilItsTtlIsOver() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 2, 100, 100, clock::get)) {
+            final InetAddress[] addresses = dnsCache.resolved("Example.com", TIMEOUT_IN_MILLIS);
+            assertArrayEquals(StubResolver.addresses("example.com"), addresses);
+            dnsCache.resolved("example.com", TIMEOUT_IN_MILLIS);
+            assertEquals(List.of("example.com"), resolver.resolvedHosts());
+            assertEquals(1, dnsCache.hitsNumber());
+
+            clock.addAndGet(100);
+            dnsCache.resolved("example.com", TIMEOUT_IN_MILLIS);
+            assertEquals(List.of("example.com", "example.com"), resolver.resolvedHosts());
+        }
+    }
+
+    @Test
+    void unknownHostIsCachedUntilItsNegativeTtlIsOver() throws Exception {
+        resolver.unknownHost = "missing.test";
+        try (DnsCache dnsCache = new DnsCache(resolver, 2, 100, 500, clock::get)) {
+            assertThrows(UnknownHostException.class, () -> dnsCache.resolved("missing.test", TIMEOUT_IN_MILLIS));
+            clock.addAndGet(499);
+            assertThrows(UnknownHostException.class, () -> dnsCache.resolved("missing.test", TIMEOUT_IN_MILLIS));
+            assertEquals(1, resolver.resolvedHosts().size());
+
+            clock.addAndGet(1);
+            assertThrows(UnknownHostException.class, () -> dnsCache.resolved("missing.test", TIMEOUT_IN_MILLIS));
+            assertEquals(2, resolver.resolvedHosts().size());
+        }
+    }
+
+    @Test
+    void prefetchedHostIsResolvedOnce() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 2, 100, 100, clock::get)) {
+            dnsCache.prefetch("example.com");
+            dnsCache.prefetch("example.com");
+            assertNotNull(dnsCache.resolved("example.com", TIMEOUT_IN_MILLIS));
+            assertEquals(List.of("example.com"), resolver.resolvedHosts());
+        }
+    }
+
+    @Test
+    void lookupOfWorkerGoesBeforeQueuedPrefetches() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 1, 100, 100, clock::get)) {
+            blockResolverThread(dnsCache);
+            dnsCache.prefetch("first.test");
+            dnsCache.prefetch("second.test");
+            final var urgentLookup = dnsCache.resolution("urgent.test");
+            resolver.release.countDown();
+            urgentLookup.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(List.of("blocker.test", "urgent.test"), resolver.resolvedHosts().subList(0, 2));
+        }
+    }
+
+    @Test
+    void queuedPrefetchIsMovedAheadOnceWorkerNeedsTheHost() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 1, 100, 100, clock::get)) {
+            blockResolverThread(dnsCache);
+            dnsCache.prefetch("first.test");
+            dnsCache.prefetch("second.test");
+            final var secondLookup = dnsCache.resolution("second.test");
+            resolver.release.countDown();
+            secondLookup.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            dnsCache.resolved("first.test", TIMEOUT_IN_MILLIS);
+            assertEquals(List.of("blocker.test", "second.test", "first.test"), resolver.resolvedHosts());
+        }
+    }
+
+    @Test
+    void prefetchesBeyondTheLimitAreDropped() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 1, 100, 100, clock::get, 2)) {
+            blockResolverThread(dnsCache);
+            dnsCache.prefetch("first.test");
+            dnsCache.prefetch("second.test");
+            dnsCache.prefetch("third.test");
+            dnsCache.prefetch("fourth.test");
+            assertEquals(2, dnsCache.droppedPrefetchesNumber());
+            resolver.release.countDown();
+
+//            A dropped host is looked up when a worker needs it
+            assertNotNull(dnsCache.resolved("third.test", TIMEOUT_IN_MILLIS));
+            assertTrue(resolver.resolvedHosts().contains("third.test"));
+        }
+    }
+
+    @Test
+    void slowLookupReturnsNullAfterTimeout() throws Exception {
+        try (DnsCache dnsCache = new DnsCache(resolver, 1, 100, 100, clock::get)) {
+            blockResolverThread(dnsCache);
+            assertNull(dnsCache.resolved("slow.test", 50));
+            resolver.release.countDown();
+            assertNotNull(dnsCache.resolved("slow.test", TIMEOUT_IN_MILLIS));
+        }
+    }
+
+    /**
+     * Occupies the only resolver thread until {@link StubResolver#release} is counted down
+     */
+    private void blockResolverThread(DnsCache dnsCache) throws InterruptedException {
+        resolver.blockedHost = "blocker.test";
+        dnsCache.prefetch("blocker.test");
+        assertTrue(resolver.blocked.await(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    private static class StubResolver implements HostResolver {
+        private final List<String> resolvedHosts = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile String blockedHost;
+        private volatile String unknownHost;
+
+        @Override
+        public InetAddress[] resolved(String host) throws UnknownHostException {
+            resolvedHosts.add(host);
+            if (host.equals(blockedHost)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (host.equals(unknownHost)) {
+                throw new UnknownHostException(host);
+            }
+            return addresses(host);
+        }
+
+        List<String> resolvedHosts() {
+            synchronized (resolvedHosts) {
+                return new ArrayList<>(resolvedHosts);
+            }
+        }
+
+        static InetAddress[] addresses(String host) throws UnknownHostException {
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, (byte) host.length()})};
+        }
+    }
+}
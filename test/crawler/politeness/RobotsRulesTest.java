@@ -0,0 +1,131 @@
+package crawler.politeness;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RobotsRulesTest {
+    @Test
+    void patternWithoutWildcardsMatchesPathPrefix() {
+        final RobotsRules rules = rules("Disallow: /private");
+        assertFalse(rules.isAllowed(url("/private")));
+        assertFalse(rules.isAllowed(url("/private/page.html")));
+        assertFalse(rules.isAllowed(url("/privateer")));
+        assertTrue(rules.isAllowed(url("/public/private")));
+        assertTrue(rules.isAllowed(url("/")));
+    }
+
+    @Test
+    void starMatchesAnyCharacters() {
+        final RobotsRules rules = rules("Disallow: /*.php");
+        assertFalse(rules.isAllowed(url("/index.php")));
+        assertFalse(rules.isAllowed(url("/a/b/c.php?x=1")));
+        assertFalse(rules.isAllowed(url("/.php")));
+        assertTrue(rules.isAllowed(url("/index.html")));
+    }
+
+    @Test
+    void trailingStarIsTheSameAsPrefix() {
+        final RobotsRules rules = rules("Disallow: /fish*");
+        assertFalse(rules.isAllowed(url("/fish")));
+        assertFalse(rules.isAllowed(url("/fishheads/yummy.html")));
+        assertTrue(rules.isAllowed(url("/Fish.asp")));
+    }
+
+    @Test
+    void dollarAnchorsPatternToEndOfPath() {
+        final RobotsRules rules = rules("Disallow: /*.php$");
+        assertFalse(rules.isAllowed(url("/index.php")));
+        assertTrue(rules.isAllowed(url("/index.php?x=1")));
+        assertTrue(rules.isAllowed(url("/index.php5")));
+    }
+
+    @Test
+    void rootAnchorMatchesOnlyRoot() {
+        final RobotsRules rules = rules("Disallow: /$");
+        assertFalse(rules.isAllowed(url("/")));
+        assertFalse(rules.isAllowed(url("")));
+        assertTrue(rules.isAllowed(url("/page")));
+    }
+
+    @Test
+    void starBacktracksWhenFirstOccurrenceDoesNotMatch() {
+        final RobotsRules rules = rules("Disallow: /*ab\nDisallow: /x*y*z$");
+        assertFalse(rules.isAllowed(url("/aab")));
+        assertFalse(rules.isAllowed(url("/xayybzyz")));
+        assertTrue(rules.isAllowed(url("/xayybzy")));
+        assertTrue(rules.isAllowed(url("/bba")));
+    }
+
+    @Test
+    void anchoredPatternBacktracksToMatchLastOccurrence() {
+        final RobotsRules rules = rules("Disallow: /*a$");
+        assertFalse(rules.isAllowed(url("/aba")));
+        assertTrue(rules.isAllowed(url("/ab")));
+    }
+
+    @Test
+    void longestMatchingPatternDecides() {
+        final RobotsRules rules = rules("Disallow: /shop\nAllow: /shop/public\nDisallow: /shop/public/drafts");
+        assertFalse(rules.isAllowed(url("/shop/cart")));
+        assertTrue(rules.isAllowed(url("/shop/public/item")));
+        assertFalse(rules.isAllowed(url("/shop/public/drafts/1")));
+    }
+
+    @Test
+    void allowWinsTie() {
+        final RobotsRules rules = rules("Disallow: /page\nAllow: /page");
+        assertTrue(rules.isAllowed(url("/page")));
+    }
+
+    @Test
+    void emptyDisallowAllowsEverything() {
+        final RobotsRules rules = rules("Disallow:");
+        assertTrue(rules.isAllowed(url("/anything")));
+    }
+
+    @Test
+    void groupOfUserAgentIsPreferredToWildcardGroup() {
+        final RobotsRules rules = RobotsRules.parsed("User-agent: *\nDisallow: /\n\n"
+                                                             + "User-agent: TestBot\nDisallow: /private\nCrawl-delay: 1.5",
+                                                     "testbot");
+        assertTrue(rules.isAllowed(url("/page")));
+        assertFalse(rules.isAllowed(url("/private")));
+        assertEquals(1500, rules.crawlDelayInMillis());
+    }
+
+    @Test
+    void wildcardGroupIsUsedForOtherUserAgents() {
+        final RobotsRules rules = RobotsRules.parsed("User-agent: OtherBot\nDisallow: /\n\n"
+                                                             + "User-agent: *\nDisallow: /private # comment",
+                                                     "testbot");
+        assertTrue(rules.isAllowed(url("/page")));
+        assertFalse(rules.isAllowed(url("/private")));
+    }
+
+    @Test
+    void hostilePatternIsMatchedInPolynomialTime() {
+        final RobotsRules rules = rules("Disallow: /" + "*a".repeat(50) + "b");
+        final String path = "/" + "a".repeat(20_000);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertTrue(rules.isAllowed(url(path))));
+    }
+
+    private static RobotsRules rules(String directives) {
+        return RobotsRules.parsed("User-agent: *\n" + directives, "testbot");
+    }
+
+    private static URL url(String path) {
+        try {
+            return new URL("http://example.com" + path);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}